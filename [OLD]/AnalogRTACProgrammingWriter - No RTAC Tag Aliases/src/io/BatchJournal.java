@@ -0,0 +1,232 @@
+package io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import mapObjects.IEDMapCatalog;
+
+/**
+ * Write-ahead journal of a batch, so a batch that stopped part way through can be run again without redoing the jobs that finished.
+ * A job is recorded as started before it writes anything & as done, with the hash of its inputs & of its output text file,
+ * only once the output has been committed. Every record is forced to disk before the batch carries on.
+ * A job is finished when it was recorded as done, its inputs still have the same hash & its output is still the one it wrote
+ * @author Hannah Layton
+ */
+public class BatchJournal implements AutoCloseable {
+	/** Record of a job that started */
+	private static final String STARTED = "STARTED";
+	/** Record of a job whose output was committed */
+	private static final String DONE = "DONE";
+
+	/** Journal file */
+	private final File journalFile;
+	/** Channel records are appended to */
+	private final FileChannel channel;
+	/** Hashes of the inputs & output of every job recorded as done, by job */
+	private final Map<String, String[]> doneJobs = new HashMap<String, String[]>();
+	/** Jobs recorded as started & not as done since */
+	private final Set<String> startedJobs = new HashSet<String>();
+
+	/**
+	 * Opens a journal, reading the records of earlier runs
+	 * @param journalFile - journal file, which is created if it does not exist
+	 * @throws IOException - if the journal could not be read or opened
+	 */
+	public BatchJournal(File journalFile) throws IOException {
+		this.journalFile = journalFile;
+		if (journalFile.isFile()) {
+			try (BufferedReader in = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+				for (String line = in.readLine(); line != null; line = in.readLine()) {
+					readRecord(line);
+				}
+			}
+		}
+		boolean cutShort = false;
+		if (journalFile.length() > 0) {
+			try (FileChannel reader = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+				ByteBuffer last = ByteBuffer.allocate(1);
+				reader.read(last, reader.size() - 1);
+				cutShort = last.get(0) != '\n';
+			}
+		}
+		this.channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		// A record cut short by a crash is ended so the next record starts on its own line
+		if (cutShort) {
+			append("\n");
+		}
+	}
+
+	/**
+	 * Returns the journal file
+	 * @return the journal file
+	 */
+	public File getJournalFile() {
+		return journalFile;
+	}
+
+	/**
+	 * Reads a record, ignoring one that was cut short
+	 * @param line - record
+	 */
+	private void readRecord(String line) {
+		String[] fields = line.split("\t", -1);
+		if (fields.length == 4 && fields[0].equals(STARTED)) {
+			startedJobs.add(jobKey(fields[1], fields[2], fields[3]));
+		}
+		else if (fields.length == 6 && fields[0].equals(DONE) && fields[4].length() == 64 && fields[5].length() == 64) {
+			String job = jobKey(fields[1], fields[2], fields[3]);
+			doneJobs.put(job, new String[] { fields[4], fields[5] });
+			startedJobs.remove(job);
+		}
+	}
+
+	/**
+	 * Returns the hash of a job's inputs, which are the naming, matching & line settings, the SCADA map & every data map in the folder,
+	 * so a job is run again when a setting that changes its output text changed
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolderPath - folder of data maps
+	 * @return the hash of the job's inputs
+	 * @throws IOException - if an input could not be read
+	 */
+	public static String hashInputs(File scadaPath, File iedMapFolderPath) throws IOException {
+		MessageDigest digest = IncrementalBuild.newDigest();
+		IncrementalBuild.update(digest, IncrementalBuild.settings());
+		IncrementalBuild.update(digest, IncrementalBuild.hashFile(scadaPath));
+		File[] files = iedMapFolderPath.listFiles();
+		if (files != null) {
+			// Files are hashed in name order so the hash does not depend on the order the folder lists them in
+			Arrays.sort(files);
+			for (File iedMapPath : files) {
+				if (IEDMapCatalog.isDataMap(iedMapPath)) {
+					IncrementalBuild.update(digest, iedMapPath.getName());
+					IncrementalBuild.update(digest, IncrementalBuild.hashFile(iedMapPath));
+				}
+			}
+		}
+		return IncrementalBuild.toHex(digest.digest());
+	}
+
+	/**
+	 * Returns whether a job already finished in an earlier run with the same inputs & its output has not been changed since
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolderPath - folder of data maps
+	 * @param output - output text file
+	 * @param inputHash - hash of the job's inputs now
+	 * @return whether the job already finished
+	 * @throws IOException - if the output could not be read
+	 */
+	public synchronized boolean isFinished(File scadaPath, File iedMapFolderPath, File output, String inputHash) throws IOException {
+		String[] hashes = doneJobs.get(jobKey(scadaPath, iedMapFolderPath, output));
+		return hashes != null && hashes[0].equals(inputHash) && output.isFile() && hashes[1].equals(IncrementalBuild.hashFile(output));
+	}
+
+	/**
+	 * Returns whether a job was started in an earlier run without finishing
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolderPath - folder of data maps
+	 * @param output - output text file
+	 * @return whether the job was started without finishing
+	 */
+	public synchronized boolean wasInterrupted(File scadaPath, File iedMapFolderPath, File output) {
+		return startedJobs.contains(jobKey(scadaPath, iedMapFolderPath, output));
+	}
+
+	/**
+	 * Records that a job started, removing what an interrupted run of it left behind
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolderPath - folder of data maps
+	 * @param output - output text file
+	 * @throws IOException - if the record could not be written
+	 */
+	public synchronized void started(File scadaPath, File iedMapFolderPath, File output) throws IOException {
+		removeTemporaryFiles(output);
+		append(STARTED + "\t" + jobKey(scadaPath, iedMapFolderPath, output) + "\n");
+		startedJobs.add(jobKey(scadaPath, iedMapFolderPath, output));
+	}
+
+	/**
+	 * Records that a job's output was committed
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolderPath - folder of data maps
+	 * @param output - output text file, already committed
+	 * @param inputHash - hash of the job's inputs when it started
+	 * @throws IOException - if the output could not be read or the record could not be written
+	 */
+	public synchronized void done(File scadaPath, File iedMapFolderPath, File output, String inputHash) throws IOException {
+		String outputHash = IncrementalBuild.hashFile(output);
+		String job = jobKey(scadaPath, iedMapFolderPath, output);
+		append(DONE + "\t" + job + "\t" + inputHash + "\t" + outputHash + "\n");
+		doneJobs.put(job, new String[] { inputHash, outputHash });
+		startedJobs.remove(job);
+	}
+
+	/**
+	 * Deletes the temporary files an interrupted output text file left next to it
+	 * @param output - output text file
+	 * @throws IOException - if a temporary file could not be deleted
+	 */
+	private static void removeTemporaryFiles(File output) throws IOException {
+		File[] files = output.getAbsoluteFile().getParentFile().listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			// Temporary files are named the way ChannelTextSink names them
+			if (file.getName().startsWith(output.getName() + ".") && file.getName().endsWith(".tmp")) {
+				Files.deleteIfExists(file.toPath());
+			}
+		}
+	}
+
+	/**
+	 * Appends a record & forces it to disk
+	 * @param record - record to append
+	 * @throws IOException - if the record could not be written
+	 */
+	private void append(String record) throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * Returns the key a job is recorded under
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolderPath - folder of data maps
+	 * @param output - output text file
+	 * @return the key the job is recorded under
+	 */
+	private static String jobKey(File scadaPath, File iedMapFolderPath, File output) {
+		return jobKey(scadaPath.getAbsolutePath(), iedMapFolderPath.getAbsolutePath(), output.getAbsolutePath());
+	}
+
+	/**
+	 * Returns the key a job is recorded under
+	 * @param scadaPath - path of the SCADA map file
+	 * @param iedMapFolderPath - path of the folder of data maps
+	 * @param output - path of the output text file
+	 * @return the key the job is recorded under
+	 */
+	private static String jobKey(String scadaPath, String iedMapFolderPath, String output) {
+		return scadaPath + "\t" + iedMapFolderPath + "\t" + output;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
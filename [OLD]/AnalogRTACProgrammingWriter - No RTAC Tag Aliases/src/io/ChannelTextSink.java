@@ -0,0 +1,194 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Output text file that encodes text as UTF-8 straight into a reused buffer & writes the buffer to the file whenever it fills up.
+ * The text is written to a temporary file next to the output file, which only replaces the output file once commit is called,
+ * so a run that fails part way never leaves a half written output file behind. The replaced output file keeps its permissions,
+ * & a new output file gets the same permissions as any other new file in its folder
+ * @author Hannah Layton
+ */
+public class ChannelTextSink extends Writer {
+	/** Number of bytes encoded before they are written to the file */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** Output file that is replaced once the text is committed */
+	private final Path target;
+	/** Temporary file the text is written to */
+	private final Path temporary;
+	/** Channel writing to the temporary file */
+	private final FileChannel channel;
+	/** Encoded text that has not been written to the file yet */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	/** UTF-8 encoder reused for all of the text */
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	/** Whether the text has been completely written to the temporary file */
+	private boolean prepared;
+	/** Whether the output file has been replaced */
+	private boolean committed;
+	/** Whether the temporary file has been closed */
+	private boolean closed;
+
+	/**
+	 * Opens a temporary file next to the output file for the text to be written to
+	 * @param target - output file that is replaced once the text is committed
+	 * @throws IOException - if the temporary file could not be created
+	 */
+	public ChannelTextSink(File target) throws IOException {
+		this.target = target.toPath().toAbsolutePath();
+		// A file from createTempFile is only readable by its owner, which the output file would keep once it is moved into place
+		Path temporary;
+		FileChannel channel;
+		while (true) {
+			temporary = this.target.getParent().resolve(target.getName() + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+				break;
+			} catch (FileAlreadyExistsException e) {
+				// Another temporary file has the same name, so another name is tried
+			}
+		}
+		this.temporary = temporary;
+		this.channel = channel;
+	}
+
+	/**
+	 * Returns the output file that is replaced once the text is committed
+	 * @return the output file that is replaced once the text is committed
+	 */
+	public File getTarget() {
+		return target.toFile();
+	}
+
+	/**
+	 * Encodes text into the buffer, writing the buffer to the file whenever it fills up. Each call is encoded as a whole,
+	 * so a surrogate pair split between two calls is replaced the same way an unpaired surrogate is
+	 * @param text - text to encode
+	 * @throws IOException - if the buffer could not be written to the file
+	 */
+	private void encode(CharBuffer text) throws IOException {
+		if (closed) {
+			throw new IOException("Structured text file is already closed.");
+		}
+		CoderResult result = encoder.encode(text, buffer, true);
+		while (result.isOverflow()) {
+			drain();
+			result = encoder.encode(text, buffer, true);
+		}
+		result = encoder.flush(buffer);
+		while (result.isOverflow()) {
+			drain();
+			result = encoder.flush(buffer);
+		}
+		encoder.reset();
+	}
+
+	/**
+	 * Writes the encoded text in the buffer to the file
+	 * @throws IOException - if the buffer could not be written to the file
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		encode(CharBuffer.wrap(cbuf, off, len));
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		encode(CharBuffer.wrap(str, off, off + len));
+	}
+
+	@Override
+	public ChannelTextSink append(CharSequence csq) throws IOException {
+		encode(CharBuffer.wrap(csq == null ? "null" : csq));
+		return this;
+	}
+
+	@Override
+	public ChannelTextSink append(CharSequence csq, int start, int end) throws IOException {
+		encode(CharBuffer.wrap(csq == null ? "null" : csq, start, end));
+		return this;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (!closed) {
+			drain();
+		}
+	}
+
+	/**
+	 * Writes the rest of the text to the temporary file & forces it to the disk without replacing the output file yet,
+	 * so several outputs can all be completely written before any of them replaces its file
+	 * @throws IOException - if the text could not be written
+	 */
+	public void prepare() throws IOException {
+		if (prepared) {
+			return;
+		}
+		if (closed) {
+			throw new IOException("Structured text file is already closed.");
+		}
+		drain();
+		channel.force(true);
+		channel.close();
+		closed = true;
+		prepared = true;
+	}
+
+	/**
+	 * Writes the rest of the text to the temporary file if it was not prepared yet & replaces the output file with it
+	 * @throws IOException - if the text could not be written or the output file could not be replaced
+	 */
+	public void commit() throws IOException {
+		prepare();
+		if (Files.exists(target) && Files.getFileAttributeView(temporary, PosixFileAttributeView.class) != null) {
+			Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+		}
+		try {
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		committed = true;
+	}
+
+	/**
+	 * Closes the temporary file, deleting it if the text was never committed so the output file is left as it was
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			channel.close();
+			closed = true;
+		}
+		if (!committed) {
+			Files.deleteIfExists(temporary);
+		}
+	}
+}
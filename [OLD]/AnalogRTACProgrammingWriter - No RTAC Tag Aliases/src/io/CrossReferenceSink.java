@@ -0,0 +1,91 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapEntry;
+import mapObjects.SCADAEntry;
+
+/**
+ * Output writing a CSV cross-reference of SCADA DNP addresses, RTAC tags & the devices & wordbits they come from, used for commissioning
+ * @author Hannah Layton
+ */
+public class CrossReferenceSink implements PointSink {
+	/** File the rows are written to */
+	private final ChannelTextSink csv;
+	/** Row reused for every SCADA entry */
+	private final StringBuilder row = new StringBuilder();
+
+	/**
+	 * Opens the cross-reference file & writes its header
+	 * @param file - cross-reference file
+	 * @throws IOException - if the file could not be opened
+	 */
+	public CrossReferenceSink(File file) throws IOException {
+		this.csv = new ChannelTextSink(file);
+		csv.append("DNP Address,RTAC Tag,Slave IED Device,Slave IED Wordbit,Relay Element,Scaling,Description,Status\r\n");
+	}
+
+	@Override
+	public void write(SCADAEntry scadaEntry, IEDMap iedMap, IEDMapEntry iedEntry) throws IOException {
+		boolean matched = iedMap != null && iedEntry != null && !iedEntry.getRtacPointName().equals("");
+		row.setLength(0);
+		row.append((int) scadaEntry.getDnpAddress()).append(',');
+		appendField(row, matched ? iedEntry.getRtacPointName() : "");
+		row.append(',');
+		appendField(row, scadaEntry.getSlaveIEDDevice());
+		row.append(',');
+		appendField(row, scadaEntry.getWordbit());
+		row.append(',');
+		appendField(row, iedEntry == null ? "" : iedEntry.getWordbit());
+		row.append(',');
+		LineTemplate.appendDouble(row, scadaEntry.getScaling());
+		row.append(',');
+		appendField(row, scadaEntry.getDescription());
+		row.append(',');
+		row.append(matched ? MATCHED : iedMap == null ? NO_DATA_MAP : NO_RTAC_ALIAS).append("\r\n");
+		csv.append(row);
+	}
+
+	/**
+	 * Adds a CSV field, quoting it when it contains a comma, a quote or a line break
+	 * @param row - row to add the field to
+	 * @param field - text of the field
+	 */
+	private static void appendField(StringBuilder row, String field) {
+		boolean quoted = false;
+		for (int i = 0; i < field.length() && !quoted; i++) {
+			char c = field.charAt(i);
+			quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quoted) {
+			row.append(field);
+			return;
+		}
+		row.append('"');
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '"') {
+				row.append('"');
+			}
+			row.append(c);
+		}
+		row.append('"');
+	}
+
+	@Override
+	public void prepare() throws IOException {
+		csv.prepare();
+	}
+
+	@Override
+	public void commit() throws IOException {
+		csv.commit();
+	}
+
+	@Override
+	public void close() throws IOException {
+		csv.close();
+	}
+}
@@ -0,0 +1,232 @@
+package io;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapCatalog;
+import mapObjects.SCADAEntry;
+import mapObjects.SCADAMap;
+import ui.DialogBoxUI;
+
+/**
+ * Writes the output text file with every stage running at the same time instead of one after another.
+ * SCADA entries are read out of the SCADA map, matched to the data maps & written to the file as they arrive, with the stages connected
+ * by queues of limited size so a stage that gets ahead waits for the next one instead of holding everything in memory.
+ * Data maps are loaded in the background in the order the SCADA map first needs them, an entry is matched as soon as the data map
+ * of its device is loaded, & each data map is released once the last SCADA entry referencing it has been matched.
+ * The loader only gets ahead of the matcher by a limited number of loaded data maps, & only goes past the limit to load the data map
+ * the matcher is waiting for, so at most the limit or the data maps the SCADA map needs at the same time are loaded at once
+ * @author Hannah Layton
+ */
+public class GenerationPipeline {
+	/** Marks the end of the SCADA entries */
+	private static final SCADAEntry END_OF_ENTRIES = new SCADAEntry(0, "", "", 0, "", "1");
+	/** Marks the end of the output lines */
+	private static final String END_OF_LINES = new String("");
+	/** Milliseconds the file writer waits for a line before checking whether another stage failed */
+	private static final long POLL_MILLIS = 100;
+
+	/** Number of SCADA entries or output lines each queue holds before the stage filling it waits */
+	private final int queueSize;
+	/** Number of loaded data maps the loader waits at until one is released or the matcher needs the next one */
+	private final int maxLoadedMaps;
+	/** Data maps that have been loaded & are still referenced by SCADA entries left to match, saved by device name */
+	private final Map<String, IEDMap> loadedMaps = new HashMap<String, IEDMap>();
+	/** Data maps in the folder & the number of SCADA entries left to match for each device */
+	private IEDMapCatalog iedMaps;
+	/** Whether every data map has been loaded */
+	private boolean loadingFinished;
+	/** Device whose data map the matcher is waiting for, or null if it is not waiting */
+	private String awaitedDevice;
+
+	/**
+	 * Creates a pipeline whose queues hold the given number of SCADA entries or output lines
+	 * @param queueSize - number of SCADA entries or output lines each queue holds before the stage filling it waits
+	 * @param maxLoadedMaps - number of loaded data maps the loader waits at until one is released or the matcher needs the next one
+	 */
+	public GenerationPipeline(int queueSize, int maxLoadedMaps) {
+		this.queueSize = queueSize;
+		this.maxLoadedMaps = Math.max(1, maxLoadedMaps);
+	}
+
+	/**
+	 * Writes the output text file
+	 * @param txt - the file in which to put the output text
+	 * @param scadaMap - SCADA map whose entries have not been read yet
+	 * @param iedMapFolder - folder of data maps
+	 */
+	public void structuredTextWriter(PrintWriter txt, final SCADAMap scadaMap, File iedMapFolder) {
+		// The entries are counted before they are streamed, so each data map is known to be no longer needed after its last entry
+		final Map<String, Integer> entriesByDevice = scadaMap.countEntriesByDevice();
+		final IEDMapCatalog iedMaps = new IEDMapCatalog(iedMapFolder);
+		iedMaps.countReferences(entriesByDevice);
+		synchronized (this) {
+			this.iedMaps = iedMaps;
+		}
+		final BlockingQueue<SCADAEntry> scadaEntries = new ArrayBlockingQueue<SCADAEntry>(queueSize);
+		final BlockingQueue<String> lines = new ArrayBlockingQueue<String>(queueSize);
+		ExecutorService stages = Executors.newFixedThreadPool(3);
+		List<Future<Void>> running = new ArrayList<Future<Void>>();
+		try {
+			// Reads the SCADA entries out of the SCADA map
+			running.add(stages.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws InterruptedException {
+					scadaMap.streamScadaEntries(scadaEntries);
+					scadaEntries.put(END_OF_ENTRIES);
+					return null;
+				}
+			}));
+			// Loads the data maps
+			running.add(stages.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws InterruptedException {
+					for (String deviceName : entriesByDevice.keySet()) {
+						File iedMapPath = iedMaps.getDataMapFile(deviceName);
+						if (iedMapPath != null) {
+							awaitRoom();
+							loaded(deviceName, IEDMapCatalog.load(iedMapPath));
+						}
+					}
+					finishLoading();
+					return null;
+				}
+			}));
+			// Matches each SCADA entry once its data map is loaded
+			running.add(stages.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws InterruptedException {
+					StringBuilder outputString = new StringBuilder();
+					for (SCADAEntry currentEntry = scadaEntries.take(); currentEntry != END_OF_ENTRIES; currentEntry = scadaEntries.take()) {
+						outputString.setLength(0);
+						TXTWriterIO.appendLine(outputString, currentEntry, awaitDataMap(currentEntry.getSlaveIEDDevice()));
+						release(currentEntry.getSlaveIEDDevice());
+						lines.put(outputString.toString());
+					}
+					lines.put(END_OF_LINES);
+					return null;
+				}
+			}));
+			// Writes each line as it arrives
+			String line = lines.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			while (line != END_OF_LINES) {
+				if (line != null) {
+					txt.print(line);
+				}
+				else {
+					checkStages(running);
+				}
+				line = lines.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			checkStages(running);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Writing was interrupted.", e);
+		}
+		finally {
+			stages.shutdownNow();
+		}
+	}
+
+	/**
+	 * Rethrows the error of any stage that failed
+	 * @param running - stages that were started
+	 * @throws InterruptedException - if the thread is interrupted while checking the stages
+	 */
+	private static void checkStages(List<Future<Void>> running) throws InterruptedException {
+		for (Future<Void> stage : running) {
+			if (!stage.isDone()) {
+				continue;
+			}
+			try {
+				stage.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				DialogBoxUI.infoBox("Structured text could not be written.", "");
+				throw new IllegalArgumentException("Structured text could not be written.", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Waits until fewer data maps than the limit are loaded, or the matcher is waiting for a data map that is not loaded yet.
+	 * Data maps are loaded in the order the SCADA map first needs them, so the data map the matcher waits for is always the next one loaded
+	 * @throws InterruptedException - if the thread is interrupted while waiting
+	 */
+	private synchronized void awaitRoom() throws InterruptedException {
+		while (loadedMaps.size() >= maxLoadedMaps && awaitedDevice == null) {
+			wait();
+		}
+	}
+
+	/**
+	 * Saves a loaded data map & wakes up the stage waiting for it
+	 * @param deviceName - device name of the data map
+	 * @param iedMap - loaded data map
+	 */
+	private synchronized void loaded(String deviceName, IEDMap iedMap) {
+		loadedMaps.put(deviceName, iedMap);
+		notifyAll();
+	}
+
+	/**
+	 * Marks one SCADA entry of a device as matched, releasing the data map once none of the device's entries are left
+	 * @param deviceName - device name of the matched SCADA entry
+	 */
+	private synchronized void release(String deviceName) {
+		iedMaps.release(deviceName);
+		if (!iedMaps.isReferenced(deviceName) && loadedMaps.remove(deviceName) != null) {
+			// The loader may be waiting for a data map to be released
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Marks every data map as loaded & wakes up the stage waiting for one
+	 */
+	private synchronized void finishLoading() {
+		loadingFinished = true;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the data map for a device, waiting until it is loaded. A device without a data map is answered straight away
+	 * @param deviceName - device name of the data map
+	 * @return the data map for the device, or null if the device has no data map
+	 * @throws InterruptedException - if the thread is interrupted while waiting
+	 */
+	private synchronized IEDMap awaitDataMap(String deviceName) throws InterruptedException {
+		if (iedMaps.getDataMapFile(deviceName) == null) {
+			return null;
+		}
+		if (!loadedMaps.containsKey(deviceName)) {
+			// Lets the loader go past the limit for the data map the matcher needs
+			awaitedDevice = deviceName;
+			notifyAll();
+			try {
+				while (!loadedMaps.containsKey(deviceName) && !loadingFinished) {
+					wait();
+				}
+			}
+			finally {
+				awaitedDevice = null;
+			}
+		}
+		return loadedMaps.get(deviceName);
+	}
+}
@@ -0,0 +1,365 @@
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapCatalog;
+import mapObjects.IEDMapEntry;
+import mapObjects.SCADAEntry;
+import mapObjects.SCADAMap;
+
+/**
+ * Writes the output text file, only matching the SCADA entries of devices whose inputs changed since the last run.
+ * A cache next to the output file keeps a hash of each device's inputs (its data map file & its entries in the SCADA map)
+ * together with the lines written for it. Devices whose hash is unchanged reuse their cached lines without their data map being loaded,
+ * & the lines of every device are put back together in the order of the SCADA map
+ * @author Hannah Layton
+ */
+public class IncrementalBuild {
+	/** Version of the cache layout, a cache with another version is ignored */
+	private static final int CACHE_VERSION = 1;
+	/** Hash used for devices that have no data map */
+	private static final String NO_DATA_MAP = "none";
+
+	/** Cache file */
+	private final File cacheFile;
+	/** Number of devices whose lines were written again */
+	private int rebuiltDevices;
+	/** Number of devices whose cached lines were reused */
+	private int reusedDevices;
+
+	/**
+	 * Creates an incremental build using the given cache file
+	 * @param cacheFile - cache file, which is created if it does not exist
+	 */
+	public IncrementalBuild(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Returns the number of devices whose lines were written again during the last run
+	 * @return the number of devices whose lines were written again
+	 */
+	public int getRebuiltDevices() {
+		return rebuiltDevices;
+	}
+
+	/**
+	 * Returns the number of devices whose cached lines were reused during the last run
+	 * @return the number of devices whose cached lines were reused
+	 */
+	public int getReusedDevices() {
+		return reusedDevices;
+	}
+
+	/**
+	 * Writes the output text file & updates the cache
+	 * @param txt - the file in which to put the output text
+	 * @param scadaMap - SCADA map
+	 * @param iedMapFolder - folder of data maps
+	 * @throws IOException - if a data map, the cache or the output text could not be read or written
+	 */
+	public void structuredTextWriter(ChannelTextSink txt, SCADAMap scadaMap, File iedMapFolder) throws IOException {
+		Cache previous = readCache();
+		Cache next = new Cache();
+		// Finds the data map of every device, only loading data maps that changed
+		Map<String, IEDMap> loadedMaps = new HashMap<String, IEDMap>();
+		Map<String, File> dataMapFiles = new HashMap<String, File>();
+		Map<String, String> dataMapHashes = new HashMap<String, String>();
+		for (File iedMapPath : iedMapFolder.listFiles()) {
+			if (!IEDMapCatalog.isDataMap(iedMapPath)) {
+				continue;
+			}
+			String path = iedMapPath.getAbsolutePath();
+			FileRecord record = previous.files.get(path);
+			if (record == null || record.size != iedMapPath.length() || record.modified != iedMapPath.lastModified()) {
+				FileRecord changed = new FileRecord();
+				changed.size = iedMapPath.length();
+				changed.modified = iedMapPath.lastModified();
+				changed.hash = hashFile(iedMapPath);
+				// A data map that was only saved again keeps its device name
+				if (record != null && record.hash.equals(changed.hash)) {
+					changed.deviceName = record.deviceName;
+				}
+				else {
+					IEDMap iedMap = IEDMapCatalog.load(iedMapPath);
+					changed.deviceName = iedMap.getDeviceName();
+					loadedMaps.put(changed.deviceName, iedMap);
+				}
+				record = changed;
+			}
+			next.files.put(path, record);
+			dataMapFiles.put(record.deviceName, iedMapPath);
+			dataMapHashes.put(record.deviceName, record.hash);
+		}
+		// Groups the SCADA entries by device, keeping the order of the SCADA map
+		List<SCADAEntry> entries = new ArrayList<SCADAEntry>();
+		Map<String, List<SCADAEntry>> entriesByDevice = new LinkedHashMap<String, List<SCADAEntry>>();
+		Queue<SCADAEntry> scadaEntries = scadaMap.getScadaEntries();
+		while (!scadaEntries.isEmpty()) {
+			SCADAEntry currentEntry = scadaEntries.remove();
+			entries.add(currentEntry);
+			List<SCADAEntry> deviceEntries = entriesByDevice.get(currentEntry.getSlaveIEDDevice());
+			if (deviceEntries == null) {
+				deviceEntries = new ArrayList<SCADAEntry>();
+				entriesByDevice.put(currentEntry.getSlaveIEDDevice(), deviceEntries);
+			}
+			deviceEntries.add(currentEntry);
+		}
+		// Reuses the lines of unchanged devices & writes the lines of the others again
+		rebuiltDevices = 0;
+		reusedDevices = 0;
+		StringBuilder outputString = new StringBuilder();
+		for (Map.Entry<String, List<SCADAEntry>> device : entriesByDevice.entrySet()) {
+			String deviceName = device.getKey();
+			String dataMapHash = dataMapHashes.containsKey(deviceName) ? dataMapHashes.get(deviceName) : NO_DATA_MAP;
+			DeviceBlock block = new DeviceBlock();
+			block.hash = hashDevice(device.getValue(), dataMapHash);
+			DeviceBlock cached = previous.devices.get(deviceName);
+			if (cached != null && cached.hash.equals(block.hash)) {
+				block.lines = cached.lines;
+				reusedDevices++;
+			}
+			else {
+				IEDMap iedMap = loadedMaps.get(deviceName);
+				if (iedMap == null && dataMapFiles.containsKey(deviceName)) {
+					iedMap = IEDMapCatalog.load(dataMapFiles.get(deviceName));
+				}
+				block.lines = new ArrayList<String>();
+				for (SCADAEntry currentEntry : device.getValue()) {
+					outputString.setLength(0);
+					TXTWriterIO.appendLine(outputString, currentEntry, iedMap);
+					block.lines.add(outputString.toString());
+				}
+				rebuiltDevices++;
+			}
+			next.devices.put(deviceName, block);
+		}
+		// Puts the lines of every device back in the order of the SCADA map
+		Map<String, Integer> nextLine = new HashMap<String, Integer>();
+		for (SCADAEntry currentEntry : entries) {
+			Integer line = nextLine.get(currentEntry.getSlaveIEDDevice());
+			line = line == null ? 0 : line;
+			txt.append(next.devices.get(currentEntry.getSlaveIEDDevice()).lines.get(line));
+			nextLine.put(currentEntry.getSlaveIEDDevice(), line + 1);
+		}
+		writeCache(next);
+	}
+
+	/**
+	 * Returns the settings that change the output text, a cache written with other settings is ignored
+	 * @return the settings that change the output text
+	 */
+	public static String settings() {
+		return IEDMapEntry.getRtacNameRule().getPattern() + "\n" + SCADAEntry.getDeviceNameRule().getPattern() + "\n" + IEDMap.getDeviceNameRule().getPattern()
+				+ "\n" + TXTWriterIO.getWordbitMatch() + "\n" + TXTWriterIO.getLineTemplate().getPattern();
+	}
+
+	/**
+	 * Returns the hash of a data map file's contents
+	 * @param file - data map file
+	 * @return the hash of the file's contents
+	 * @throws IOException - if the file could not be read
+	 */
+	static String hashFile(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = new FileInputStream(file)) {
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the hash of a device's inputs
+	 * @param entries - SCADA entries of the device, in the order of the SCADA map
+	 * @param dataMapHash - hash of the device's data map file
+	 * @return the hash of the device's inputs
+	 */
+	private static String hashDevice(List<SCADAEntry> entries, String dataMapHash) {
+		MessageDigest digest = newDigest();
+		update(digest, dataMapHash);
+		for (SCADAEntry entry : entries) {
+			update(digest, Double.toString(entry.getDnpAddress()));
+			update(digest, entry.getWordbit());
+			update(digest, Double.toString(entry.getIndex()));
+			update(digest, entry.getDescription());
+			update(digest, Double.toString(entry.getScaling()));
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Adds text to a hash, preceded by its length so neighbouring values cannot run into each other
+	 * @param digest - hash to add to
+	 * @param text - text to add
+	 */
+	static void update(MessageDigest digest, String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		digest.update((byte) (bytes.length >>> 24));
+		digest.update((byte) (bytes.length >>> 16));
+		digest.update((byte) (bytes.length >>> 8));
+		digest.update((byte) bytes.length);
+		digest.update(bytes);
+	}
+
+	/**
+	 * Creates a SHA-256 hash
+	 * @return a new SHA-256 hash
+	 */
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available.", e);
+		}
+	}
+
+	/**
+	 * Returns bytes written as hexadecimal text
+	 * @param bytes - bytes to write
+	 * @return the bytes written as hexadecimal text
+	 */
+	static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Reads the cache, returning an empty cache if there is none or it was written by another version or with other settings
+	 * @return the cache of the last run
+	 * @throws IOException - if the cache could not be read
+	 */
+	private Cache readCache() throws IOException {
+		Cache cache = new Cache();
+		if (!cacheFile.isFile()) {
+			return cache;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			if (in.readInt() != CACHE_VERSION || !in.readUTF().equals(settings())) {
+				return cache;
+			}
+			for (int files = in.readInt(); files > 0; files--) {
+				String path = in.readUTF();
+				FileRecord record = new FileRecord();
+				record.size = in.readLong();
+				record.modified = in.readLong();
+				record.hash = in.readUTF();
+				record.deviceName = in.readUTF();
+				cache.files.put(path, record);
+			}
+			for (int devices = in.readInt(); devices > 0; devices--) {
+				String deviceName = in.readUTF();
+				DeviceBlock block = new DeviceBlock();
+				block.hash = in.readUTF();
+				block.lines = new ArrayList<String>();
+				for (int lines = in.readInt(); lines > 0; lines--) {
+					block.lines.add(in.readUTF());
+				}
+				cache.devices.put(deviceName, block);
+			}
+		} catch (IOException e) {
+			// A damaged cache is rebuilt from scratch
+			return new Cache();
+		}
+		return cache;
+	}
+
+	/**
+	 * Writes the cache, replacing the old one only once the new one is completely written
+	 * @param cache - cache of this run
+	 * @throws IOException - if the cache could not be written
+	 */
+	private void writeCache(Cache cache) throws IOException {
+		File temporary = File.createTempFile(cacheFile.getName() + ".", ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary.toPath())))) {
+				out.writeInt(CACHE_VERSION);
+				out.writeUTF(settings());
+				out.writeInt(cache.files.size());
+				for (Map.Entry<String, FileRecord> file : cache.files.entrySet()) {
+					out.writeUTF(file.getKey());
+					out.writeLong(file.getValue().size);
+					out.writeLong(file.getValue().modified);
+					out.writeUTF(file.getValue().hash);
+					out.writeUTF(file.getValue().deviceName);
+				}
+				out.writeInt(cache.devices.size());
+				for (Map.Entry<String, DeviceBlock> device : cache.devices.entrySet()) {
+					out.writeUTF(device.getKey());
+					out.writeUTF(device.getValue().hash);
+					out.writeInt(device.getValue().lines.size());
+					for (String line : device.getValue().lines) {
+						out.writeUTF(line);
+					}
+				}
+			}
+			try {
+				Files.move(temporary.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	/**
+	 * Everything remembered from a run
+	 */
+	private static class Cache {
+		/** Data map files saved by path */
+		private final Map<String, FileRecord> files = new HashMap<String, FileRecord>();
+		/** Lines of each device saved by device name */
+		private final Map<String, DeviceBlock> devices = new HashMap<String, DeviceBlock>();
+	}
+
+	/**
+	 * A data map file as it was during a run
+	 */
+	private static class FileRecord {
+		/** Size of the file in bytes */
+		private long size;
+		/** Time the file was last changed */
+		private long modified;
+		/** Hash of the file's contents */
+		private String hash;
+		/** Device name of the data map */
+		private String deviceName;
+	}
+
+	/**
+	 * Lines written for a device during a run
+	 */
+	private static class DeviceBlock {
+		/** Hash of the device's inputs */
+		private String hash;
+		/** Lines written for the device's SCADA entries, in the order of the SCADA map */
+		private List<String> lines;
+	}
+}
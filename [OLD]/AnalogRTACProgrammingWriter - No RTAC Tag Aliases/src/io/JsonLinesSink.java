@@ -0,0 +1,113 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapEntry;
+import mapObjects.SCADAEntry;
+
+/**
+ * Output writing each matched SCADA entry as a JSON record on its own line, for tools that read the matched points
+ * @author Hannah Layton
+ */
+public class JsonLinesSink implements PointSink {
+	/** File the records are written to */
+	private final ChannelTextSink jsonl;
+	/** Record reused for every SCADA entry */
+	private final StringBuilder record = new StringBuilder();
+
+	/**
+	 * Opens the JSON Lines file
+	 * @param file - JSON Lines file
+	 * @throws IOException - if the file could not be opened
+	 */
+	public JsonLinesSink(File file) throws IOException {
+		this.jsonl = new ChannelTextSink(file);
+	}
+
+	@Override
+	public void write(SCADAEntry scadaEntry, IEDMap iedMap, IEDMapEntry iedEntry) throws IOException {
+		record.setLength(0);
+		appendRecord(record, scadaEntry, iedMap, iedEntry);
+		record.append('\n');
+		jsonl.append(record);
+	}
+
+	/**
+	 * Adds the JSON record of a matched SCADA entry
+	 * @param record - text to add the record to
+	 * @param scadaEntry - SCADA entry
+	 * @param iedMap - data map of the SCADA entry's device, or null if it has none
+	 * @param iedEntry - matching data map entry, or null if there is none
+	 */
+	static void appendRecord(StringBuilder record, SCADAEntry scadaEntry, IEDMap iedMap, IEDMapEntry iedEntry) {
+		boolean matched = iedMap != null && iedEntry != null && !iedEntry.getRtacPointName().equals("");
+		record.append("{\"dnpAddress\":").append((int) scadaEntry.getDnpAddress());
+		record.append(",\"rtacTag\":");
+		appendString(record, matched ? iedEntry.getRtacPointName() : null);
+		record.append(",\"device\":");
+		appendString(record, scadaEntry.getSlaveIEDDevice());
+		record.append(",\"wordbit\":");
+		appendString(record, scadaEntry.getWordbit());
+		record.append(",\"relayElement\":");
+		appendString(record, iedEntry == null ? null : iedEntry.getWordbit());
+		record.append(",\"scaling\":");
+		LineTemplate.appendDouble(record, scadaEntry.getScaling());
+		record.append(",\"description\":");
+		appendString(record, scadaEntry.getDescription());
+		record.append(",\"status\":");
+		appendString(record, matched ? MATCHED : iedMap == null ? NO_DATA_MAP : NO_RTAC_ALIAS);
+		record.append('}');
+	}
+
+	/**
+	 * Adds a JSON string, or null, escaping quotes, backslashes & control characters
+	 * @param record - record to add the string to
+	 * @param text - text of the string, or null
+	 */
+	public static void appendString(StringBuilder record, String text) {
+		if (text == null) {
+			record.append("null");
+			return;
+		}
+		record.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				record.append('\\').append(c);
+			}
+			else if (c == '\n') {
+				record.append("\\n");
+			}
+			else if (c == '\r') {
+				record.append("\\r");
+			}
+			else if (c == '\t') {
+				record.append("\\t");
+			}
+			else if (c < 0x20) {
+				record.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+			}
+			else {
+				record.append(c);
+			}
+		}
+		record.append('"');
+	}
+
+	@Override
+	public void prepare() throws IOException {
+		jsonl.prepare();
+	}
+
+	@Override
+	public void commit() throws IOException {
+		jsonl.commit();
+	}
+
+	@Override
+	public void close() throws IOException {
+		jsonl.close();
+	}
+}
@@ -0,0 +1,343 @@
+package io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapCatalog;
+import mapObjects.SCADAEntry;
+import mapObjects.SCADAMap;
+import ui.DialogBoxUI;
+
+/**
+ * Watches the SCADA map & the folder of data maps, writing the output text file again whenever one of them is saved.
+ * Saves arriving close together are handled as one change, Excel's lock & temporary files are ignored,
+ * & only the workbooks that were saved are loaded again. Messages from the maps are written to the error output
+ * while watching, so a workbook still being saved never holds the watcher up with a dialog box
+ * @author Hannah Layton
+ */
+public class MapWatcher {
+	/** Milliseconds without any change before the output is written again */
+	private static final long QUIET_MILLIS = 250;
+	/** Milliseconds before a workbook that could not be read is tried again */
+	private static final long RETRY_MILLIS = 1000;
+
+	/** SCADA map file */
+	private final File scadaPath;
+	/** Folder of data maps */
+	private final File iedMapFolder;
+	/** Told about the loaded maps whenever they change */
+	private final Listener listener;
+	/** SCADA entries in the order of the SCADA map */
+	private List<SCADAEntry> scadaEntries;
+	/** Loaded data maps by device name */
+	private final TreeMap<String, IEDMap> iedMaps = new TreeMap<String, IEDMap>();
+	/** Device name of each loaded data map file */
+	private final Map<File, String> fileDevices = new HashMap<File, String>();
+	/** Workbooks that could not be read yet, most likely because they were still being saved */
+	private final Set<File> pending = new HashSet<File>();
+	/** Service reporting changes to the watched folders */
+	private WatchService watchService;
+	/** Thread watching the folders */
+	private Thread thread;
+	/** Number of times the listener has been told about the loaded maps */
+	private volatile int rewrites;
+	/** Time the listener last used the loaded maps, in milliseconds since 1970 */
+	private volatile long lastRewriteMillis;
+	/** Why the listener last failed to use the loaded maps or the watcher stopped, or null if it has not since the last rewrite */
+	private volatile String failure;
+	/** Whether the listener failed & is told about the maps again even if nothing else changes */
+	private boolean retryRewrite;
+
+	/**
+	 * Creates a watcher
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolder - folder of data maps
+	 * @param output - output text file
+	 */
+	public MapWatcher(File scadaPath, File iedMapFolder, final File output) {
+		this(scadaPath, iedMapFolder, new Listener() {
+			@Override
+			public void mapsChanged(List<SCADAEntry> scadaEntries, TreeMap<String, IEDMap> iedMaps) throws IOException {
+				try (ChannelTextSink txt = new ChannelTextSink(output)) {
+					TXTWriterIO.structuredTextWriter(txt, iedMaps, scadaEntries);
+					txt.commit();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates a watcher telling a listener about the loaded maps instead of writing an output text file
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolder - folder of data maps
+	 * @param listener - told about the loaded maps whenever they change
+	 */
+	public MapWatcher(File scadaPath, File iedMapFolder, Listener listener) {
+		this.scadaPath = scadaPath.getAbsoluteFile();
+		this.iedMapFolder = iedMapFolder.getAbsoluteFile();
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the number of times the listener has been told about the loaded maps
+	 * @return the number of times the listener has been told about the loaded maps
+	 */
+	public int getRewrites() {
+		return rewrites;
+	}
+
+	/**
+	 * Returns the time the listener last used the loaded maps
+	 * @return the time the listener last used the loaded maps in milliseconds since 1970, or 0 if it never has
+	 */
+	public long getLastRewriteMillis() {
+		return lastRewriteMillis;
+	}
+
+	/**
+	 * Returns why the listener last failed to use the loaded maps or the watcher stopped
+	 * @return why the listener failed or the watcher stopped, or null if the last rewrite succeeded
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Loads every data map, tells the listener about the maps & starts watching for changes on its own thread
+	 * @param scadaMap - SCADA map already read from the SCADA map file
+	 * @throws IOException - if the folders could not be watched
+	 */
+	public void start(SCADAMap scadaMap) throws IOException {
+		watchService = FileSystems.getDefault().newWatchService();
+		register(iedMapFolder);
+		if (!scadaPath.getParentFile().equals(iedMapFolder)) {
+			register(scadaPath.getParentFile());
+		}
+		if (scadaMap.getScadaEntries() != null) {
+			scadaEntries = new ArrayList<SCADAEntry>(scadaMap.getScadaEntries());
+		}
+		else {
+			reloadScadaMap();
+		}
+		for (File iedMapPath : iedMapFolder.listFiles()) {
+			if (IEDMapCatalog.isDataMap(iedMapPath) && !isTemporary(iedMapPath)) {
+				reloadDataMap(iedMapPath.getAbsoluteFile());
+			}
+		}
+		rewrite();
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				DialogBoxUI.setQuiet(true);
+				try {
+					watch();
+				} catch (ClosedWatchServiceException e) {
+					// The watcher was stopped
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (RuntimeException e) {
+					failure = "Stopped watching the maps: " + message(e);
+					DialogBoxUI.infoBoxLater(failure);
+				}
+			}
+		}, "Map Watcher");
+		thread.start();
+	}
+
+	/**
+	 * Stops watching for changes, waiting for the listener to finish with the maps
+	 * @throws IOException - if the watch service could not be closed
+	 * @throws InterruptedException - if the thread is interrupted while waiting
+	 */
+	public void stop() throws IOException, InterruptedException {
+		watchService.close();
+		thread.join();
+	}
+
+	/**
+	 * Registers a folder with the watch service
+	 * @param folder - folder to watch
+	 * @throws IOException - if the folder could not be watched
+	 */
+	private void register(File folder) throws IOException {
+		folder.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+	}
+
+	/**
+	 * Waits for changes & tells the listener about the maps again once they stop arriving
+	 * @throws InterruptedException - if the thread is interrupted while waiting
+	 */
+	private void watch() throws InterruptedException {
+		while (true) {
+			// Workbooks that could not be read & a listener that failed are tried again even if nothing else changes
+			WatchKey key = pending.isEmpty() && !retryRewrite ? watchService.take() : watchService.poll(RETRY_MILLIS, TimeUnit.MILLISECONDS);
+			Set<File> changed = new HashSet<File>(pending);
+			pending.clear();
+			boolean everything = false;
+			// Collects changes until none arrive for a while, so one save is only handled once
+			while (key != null) {
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						everything = true;
+						continue;
+					}
+					changed.add(((Path) key.watchable()).resolve((Path) event.context()).toFile().getAbsoluteFile());
+				}
+				key.reset();
+				key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			if (everything) {
+				changed.add(scadaPath);
+				changed.addAll(fileDevices.keySet());
+				for (File iedMapPath : iedMapFolder.listFiles()) {
+					changed.add(iedMapPath.getAbsoluteFile());
+				}
+			}
+			boolean rewrite = retryRewrite;
+			for (File file : changed) {
+				if (isTemporary(file)) {
+					continue;
+				}
+				if (file.equals(scadaPath)) {
+					rewrite |= reloadScadaMap();
+				}
+				else if (file.getParentFile().equals(iedMapFolder) && IEDMapCatalog.isDataMap(file)) {
+					rewrite |= reloadDataMap(file);
+				}
+			}
+			if (rewrite) {
+				tryRewrite();
+			}
+		}
+	}
+
+	/**
+	 * Tells the listener about the loaded maps, reporting a failure once instead of stopping the watcher
+	 */
+	private void tryRewrite() {
+		try {
+			rewrite();
+			retryRewrite = false;
+			failure = null;
+		} catch (IOException | RuntimeException e) {
+			retryRewrite = true;
+			String message = "The maps could not be used, trying again: " + message(e);
+			// The same failure is only reported once while it keeps happening
+			if (!message.equals(failure)) {
+				failure = message;
+				DialogBoxUI.infoBoxLater(message);
+			}
+		}
+	}
+
+	/**
+	 * Returns the message of an exception
+	 * @param e - exception
+	 * @return the message of the exception, or its name if it has none
+	 */
+	private static String message(Exception e) {
+		return e.getMessage() == null ? e.toString() : e.getMessage();
+	}
+
+	/**
+	 * Returns whether a file is one of the lock or temporary files Excel writes while saving
+	 * @param file - file to check
+	 * @return whether the file is a lock or temporary file
+	 */
+	private static boolean isTemporary(File file) {
+		return file.getName().startsWith("~$") || file.getName().toLowerCase().endsWith(".tmp");
+	}
+
+	/**
+	 * Reads the SCADA entries again, keeping the old ones if the SCADA map could not be read
+	 * @return whether the SCADA entries were read
+	 */
+	private boolean reloadScadaMap() {
+		if (!scadaPath.isFile()) {
+			// Excel removes the file for a moment while saving, the new one brings another change
+			return false;
+		}
+		try (FileInputStream scadaStream = new FileInputStream(scadaPath)) {
+			Queue<SCADAEntry> entries = new SCADAMap(scadaStream).getScadaEntries();
+			scadaEntries = new ArrayList<SCADAEntry>(entries);
+			return true;
+		} catch (IOException | RuntimeException e) {
+			if (scadaEntries == null) {
+				throw new IllegalArgumentException("Could not open SCADA Map " + scadaPath.getName() + ".", e);
+			}
+			pending.add(scadaPath);
+			return false;
+		}
+	}
+
+	/**
+	 * Loads a data map again, or drops it if the file was removed
+	 * @param iedMapPath - data map file
+	 * @return whether the loaded data maps changed
+	 */
+	private boolean reloadDataMap(File iedMapPath) {
+		if (!iedMapPath.isFile()) {
+			String deviceName = fileDevices.remove(iedMapPath);
+			if (deviceName == null) {
+				return false;
+			}
+			iedMaps.remove(deviceName);
+			return true;
+		}
+		IEDMap iedMap;
+		try (FileInputStream iedStream = new FileInputStream(iedMapPath)) {
+			iedMap = new IEDMap(iedStream);
+		} catch (IOException | RuntimeException e) {
+			// The file is most likely still being saved
+			pending.add(iedMapPath);
+			return false;
+		}
+		String oldDeviceName = fileDevices.put(iedMapPath, iedMap.getDeviceName());
+		if (oldDeviceName != null && !oldDeviceName.equals(iedMap.getDeviceName())) {
+			iedMaps.remove(oldDeviceName);
+		}
+		iedMaps.put(iedMap.getDeviceName(), iedMap);
+		return true;
+	}
+
+	/**
+	 * Tells the listener about the loaded maps
+	 * @throws IOException - if the listener could not use the maps
+	 */
+	private void rewrite() throws IOException {
+		listener.mapsChanged(scadaEntries, iedMaps);
+		rewrites++;
+		lastRewriteMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Told about the loaded maps whenever they change, on the thread watching the folders
+	 */
+	public interface Listener {
+		/**
+		 * Uses the loaded maps, which are only changed again once this returns
+		 * @param scadaEntries - SCADA entries in the order of the SCADA map
+		 * @param iedMaps - TreeMap of ied maps
+		 * @throws IOException - if the maps could not be used
+		 */
+		void mapsChanged(List<SCADAEntry> scadaEntries, TreeMap<String, IEDMap> iedMaps) throws IOException;
+	}
+}
@@ -0,0 +1,35 @@
+package io;
+
+/**
+ * Ways the output lines can be split into several structured text files
+ * @author Hannah Layton
+ */
+public enum PartitionMode {
+	/** One file for each Slave IED Device */
+	DEVICE(0),
+	/** One file for each range of DNP addresses, the limit being the number of addresses in each range */
+	ADDRESS_RANGE(1000),
+	/** A new file whenever the limit of lines would be passed */
+	LINES(5000),
+	/** A new file whenever the limit of bytes would be passed */
+	BYTES(1024 * 1024);
+
+	/** Limit used when none is given */
+	private final int defaultLimit;
+
+	/**
+	 * Creates a partition mode
+	 * @param defaultLimit - limit used when none is given
+	 */
+	private PartitionMode(int defaultLimit) {
+		this.defaultLimit = defaultLimit;
+	}
+
+	/**
+	 * Returns the limit used when none is given
+	 * @return the limit used when none is given
+	 */
+	public int getDefaultLimit() {
+		return defaultLimit;
+	}
+}
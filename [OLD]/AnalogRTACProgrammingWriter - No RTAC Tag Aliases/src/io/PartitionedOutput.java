@@ -0,0 +1,351 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import mapObjects.IEDMap;
+import mapObjects.SCADAEntry;
+import mapObjects.SCADAMap;
+import ui.DialogBoxUI;
+
+/**
+ * Writes the output lines into several structured text files that are small enough to paste into a single RTAC program.
+ * The lines are split by device, by DNP address range or by a limit of lines or bytes, each file is written on its own thread,
+ * & a manifest lists every file with its DNP addresses & line count. Every file & the manifest are completely written to temporary files
+ * before any of them replaces its file, so a run that fails part way leaves the files of the earlier run as they were. The files are then
+ * replaced one after another, each by a single rename. Part files left over from an earlier run that was split into more files are
+ * deleted once the manifest is replaced, so the folder only holds the files the manifest lists
+ * @author Hannah Layton
+ */
+public class PartitionedOutput {
+	/** Folder the files are written to */
+	private final File folder;
+	/** Name every file starts with */
+	private final String baseName;
+	/** How the lines are split into files */
+	private final PartitionMode mode;
+	/** Number of addresses, lines or bytes allowed in each file */
+	private final int limit;
+
+	/**
+	 * Creates a partitioned output
+	 * @param folder - folder the files are written to
+	 * @param baseName - name every file starts with
+	 * @param mode - how the lines are split into files
+	 * @param limit - number of addresses, lines or bytes allowed in each file, not used when splitting by device
+	 */
+	public PartitionedOutput(File folder, String baseName, PartitionMode mode, int limit) {
+		if (mode != PartitionMode.DEVICE && limit <= 0) {
+			DialogBoxUI.infoBox("Partition limit has to be greater than 0.", "");
+			throw new IllegalArgumentException("Partition limit has to be greater than 0.");
+		}
+		this.folder = folder;
+		this.baseName = baseName;
+		this.mode = mode;
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns the file a partition is written to
+	 * @param number - number of the partition, starting at 1
+	 * @return the file the partition is written to
+	 */
+	public File getPartitionFile(int number) {
+		return new File(folder, baseName + String.format(" Part %03d.txt", number));
+	}
+
+	/**
+	 * Returns the manifest listing every partition
+	 * @return the manifest listing every partition
+	 */
+	public File getManifestFile() {
+		return new File(folder, baseName + " Manifest.txt");
+	}
+
+	/**
+	 * Writes the output lines into partition files & the manifest
+	 * @param iedMaps - TreeMap of ied maps
+	 * @param scadaMap - SCADA map
+	 * @param parallelism - number of files written at the same time
+	 * @throws IOException - if a file could not be written
+	 */
+	public void structuredTextWriter(TreeMap<String, IEDMap> iedMaps, SCADAMap scadaMap, int parallelism) throws IOException {
+		ExecutorService writers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		List<Partition> partitions = new ArrayList<Partition>();
+		List<Future<ChannelTextSink>> written = new ArrayList<Future<ChannelTextSink>>();
+		ChannelTextSink manifest = null;
+		try {
+			Map<Object, Partition> keyedPartitions = new LinkedHashMap<Object, Partition>();
+			TreeMap<Integer, Partition> rangePartitions = new TreeMap<Integer, Partition>();
+			Partition current = null;
+			StringBuilder outputString = new StringBuilder();
+			Queue<SCADAEntry> scadaEntries = scadaMap.getScadaEntries();
+			// Loop through all SCADA Entries
+			while (!scadaEntries.isEmpty()) {
+				SCADAEntry currentEntry = scadaEntries.remove();
+				outputString.setLength(0);
+				TXTWriterIO.appendLine(outputString, currentEntry, iedMaps.get(currentEntry.getSlaveIEDDevice()));
+				int address = (int) currentEntry.getDnpAddress();
+				Partition partition;
+				if (mode == PartitionMode.DEVICE) {
+					partition = keyedPartitions.get(currentEntry.getSlaveIEDDevice());
+					if (partition == null) {
+						partition = new Partition();
+						keyedPartitions.put(currentEntry.getSlaveIEDDevice(), partition);
+					}
+				}
+				else if (mode == PartitionMode.ADDRESS_RANGE) {
+					int range = Math.floorDiv(address, limit);
+					partition = rangePartitions.get(range);
+					if (partition == null) {
+						partition = new Partition();
+						rangePartitions.put(range, partition);
+					}
+				}
+				else {
+					int lineBytes = utf8Length(outputString);
+					// A file that would pass the limit is finished & written while the next one is filled
+					if (current != null && current.lines > 0 && (mode == PartitionMode.LINES ? current.lines + 1 > limit : current.bytes + lineBytes > limit)) {
+						written.add(write(writers, current, partitions));
+						current = null;
+					}
+					if (current == null) {
+						current = new Partition();
+					}
+					partition = current;
+				}
+				partition.add(outputString, address, currentEntry.getSlaveIEDDevice());
+			}
+			if (current != null) {
+				written.add(write(writers, current, partitions));
+			}
+			for (Partition partition : keyedPartitions.values()) {
+				written.add(write(writers, partition, partitions));
+			}
+			for (Partition partition : rangePartitions.values()) {
+				written.add(write(writers, partition, partitions));
+			}
+			// Every file is waited for, so none is still being written once the files are replaced or their temporary files deleted
+			ExecutionException failure = null;
+			List<ChannelTextSink> sinks = new ArrayList<ChannelTextSink>();
+			for (Future<ChannelTextSink> file : written) {
+				try {
+					sinks.add(file.get());
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			manifest = prepareManifest(partitions);
+			// Nothing is replaced until every file has been written
+			for (ChannelTextSink sink : sinks) {
+				sink.commit();
+			}
+			manifest.commit();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Writing the partition files was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException("A partition file could not be written.", e.getCause());
+		}
+		finally {
+			writers.shutdownNow();
+			// Files that were not committed have their temporary files deleted
+			for (Future<ChannelTextSink> file : written) {
+				close(file);
+			}
+			if (manifest != null) {
+				manifest.close();
+			}
+		}
+		deleteStalePartitions(partitions.size());
+	}
+
+	/**
+	 * Closes the file of a partition that was completely written, deleting its temporary file if it was never committed.
+	 * A partition that could not be written already had its file closed by the thread writing it
+	 * @param file - file of the partition
+	 * @throws IOException - if the temporary file could not be deleted
+	 */
+	private static void close(Future<ChannelTextSink> file) throws IOException {
+		if (!file.isDone() || file.isCancelled()) {
+			return;
+		}
+		try {
+			file.get().close();
+		} catch (ExecutionException e) {
+			// The partition could not be written, so its file is already closed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Deletes the part files numbered after the last partition, which an earlier run split into more files left behind
+	 * @param partitionCount - number of partitions written
+	 * @throws IOException - if a part file could not be deleted
+	 */
+	private void deleteStalePartitions(int partitionCount) throws IOException {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		Pattern partitionName = Pattern.compile(Pattern.quote(baseName) + " Part (\\d{1,18})\\.txt");
+		for (File file : files) {
+			Matcher name = partitionName.matcher(file.getName());
+			if (name.matches() && Long.parseLong(name.group(1)) > partitionCount) {
+				Files.deleteIfExists(file.toPath());
+			}
+		}
+	}
+
+	/**
+	 * Numbers a finished partition & starts writing it to the temporary file of its file, which is committed once every file is written
+	 * @param writers - threads writing the files
+	 * @param partition - finished partition
+	 * @param partitions - every partition numbered so far, which the partition is added to
+	 * @return the file being written
+	 */
+	private Future<ChannelTextSink> write(ExecutorService writers, final Partition partition, List<Partition> partitions) {
+		partitions.add(partition);
+		partition.number = partitions.size();
+		final File partitionFile = getPartitionFile(partition.number);
+		return writers.submit(new Callable<ChannelTextSink>() {
+			@Override
+			public ChannelTextSink call() throws IOException {
+				ChannelTextSink sink = new ChannelTextSink(partitionFile);
+				boolean prepared = false;
+				try {
+					sink.append(partition.text);
+					sink.prepare();
+					prepared = true;
+				}
+				finally {
+					if (!prepared) {
+						sink.close();
+					}
+				}
+				// The lines are not needed once they are in the file
+				partition.text = null;
+				return sink;
+			}
+		});
+	}
+
+	/**
+	 * Writes the manifest listing every partition's file, DNP addresses, devices, line count & byte count to a temporary file
+	 * @param partitions - every partition in the order they are numbered
+	 * @return the manifest, which still has to be committed to replace the manifest file
+	 * @throws IOException - if the manifest could not be written
+	 */
+	private ChannelTextSink prepareManifest(List<Partition> partitions) throws IOException {
+		StringBuilder manifest = new StringBuilder();
+		manifest.append("File\tFirst DNP Address\tLast DNP Address\tFirst Device\tLast Device\tLines\tBytes\n");
+		for (Partition partition : partitions) {
+			manifest.append(getPartitionFile(partition.number).getName()).append('\t');
+			manifest.append(partition.firstAddress).append('\t').append(partition.lastAddress).append('\t');
+			manifest.append(partition.firstDevice).append('\t').append(partition.lastDevice).append('\t');
+			manifest.append(partition.lines).append('\t').append(partition.bytes).append('\n');
+		}
+		ChannelTextSink sink = new ChannelTextSink(getManifestFile());
+		boolean prepared = false;
+		try {
+			sink.append(manifest);
+			sink.prepare();
+			prepared = true;
+		}
+		finally {
+			if (!prepared) {
+				sink.close();
+			}
+		}
+		return sink;
+	}
+
+	/**
+	 * Returns the number of bytes text takes up once it is encoded as UTF-8
+	 * @param text - text to measure
+	 * @return the number of bytes the text takes up once it is encoded as UTF-8
+	 */
+	static int utf8Length(CharSequence text) {
+		int bytes = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				bytes++;
+			}
+			else if (c < 0x800) {
+				bytes += 2;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+				bytes += 4;
+				i++;
+			}
+			else {
+				bytes += 3;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Lines written to one file
+	 */
+	private static class Partition {
+		/** Number of the partition, starting at 1 */
+		private int number;
+		/** Lines of the partition */
+		private StringBuilder text = new StringBuilder();
+		/** Lowest DNP address in the partition */
+		private int firstAddress = Integer.MAX_VALUE;
+		/** Highest DNP address in the partition */
+		private int lastAddress = Integer.MIN_VALUE;
+		/** Device of the first line in the partition */
+		private String firstDevice;
+		/** Device of the last line in the partition */
+		private String lastDevice;
+		/** Number of lines in the partition */
+		private int lines;
+		/** Number of bytes the lines take up once encoded */
+		private int bytes;
+
+		/**
+		 * Adds a line to the partition
+		 * @param line - line to add
+		 * @param address - DNP address of the line's SCADA entry
+		 * @param device - device of the line's SCADA entry
+		 */
+		private void add(CharSequence line, int address, String device) {
+			text.append(line);
+			firstAddress = Math.min(firstAddress, address);
+			lastAddress = Math.max(lastAddress, address);
+			if (firstDevice == null) {
+				firstDevice = device;
+			}
+			lastDevice = device;
+			lines++;
+			bytes += utf8Length(line);
+		}
+	}
+}
@@ -0,0 +1,606 @@
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapEntry;
+import mapObjects.SCADAEntry;
+
+/**
+ * File-based database of the points of every station, so questions across the whole fleet are answered without opening any workbook.
+ * Each station is kept in its own file in the database folder & is replaced as a whole when the station is exported again.
+ * When the database is opened every station is read & indexed by DNP address, device, relay model, wordbit & RTAC name.
+ * The relay model is what the data map's full device name lists after the device, so devices whose data map only lists the device have none
+ * @author Hannah Layton
+ */
+public class PointDatabase {
+	/** Start of every station file */
+	private static final int MAGIC = 0x52544143;
+	/** Version of the station file layout, a file with another version is ignored */
+	private static final int VERSION = 2;
+	/** Version of the station file layout before the relay model was kept, whose relay models are read out of the full device names */
+	private static final int VERSION_WITHOUT_MODEL = 1;
+	/** Ending of every station file */
+	private static final String EXTENSION = ".points";
+	/** Status of a data map entry that no SCADA entry references */
+	public static final String NOT_IN_SCADA_MAP = "NOT IN SCADA MAP";
+	/** Status of a point whose RTAC name could not be built from its data map entry, e.g. because its point address has no index */
+	public static final String RTAC_NAME_FAILED = "RTAC NAME FAILED";
+
+	/** Database folder */
+	private final File folder;
+	/** Points of each station by station name */
+	private final Map<String, List<Point>> stations = new TreeMap<String, List<Point>>();
+	/** Points by DNP address */
+	private final Map<Integer, List<Point>> byAddress = new HashMap<Integer, List<Point>>();
+	/** Points by Slave IED Device or full device name, ignoring case */
+	private final Map<String, List<Point>> byDevice = new HashMap<String, List<Point>>();
+	/** Points by relay model, ignoring case */
+	private final Map<String, List<Point>> byModel = new HashMap<String, List<Point>>();
+	/** Points by SCADA wordbit or relay element, ignoring case */
+	private final Map<String, List<Point>> byWordbit = new HashMap<String, List<Point>>();
+	/** Points by RTAC name, ignoring case */
+	private final Map<String, List<Point>> byRtacName = new HashMap<String, List<Point>>();
+
+	/**
+	 * Opens a database, reading & indexing every station in it
+	 * @param folder - database folder, which is created if it does not exist
+	 * @throws IOException - if a station file could not be read
+	 */
+	public PointDatabase(File folder) throws IOException {
+		this.folder = folder;
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Point database folder " + folder + " could not be created.");
+		}
+		for (File stationFile : folder.listFiles()) {
+			if (stationFile.getName().endsWith(EXTENSION)) {
+				readStation(stationFile);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the points of a station with the points of its maps, adding the station if it is new.
+	 * A data map entry whose RTAC name could not be built is kept without one, with its status saying so
+	 * @param station - name of the station
+	 * @param scadaEntries - SCADA entries of the station in the order of the SCADA map
+	 * @param iedMaps - TreeMap of the station's ied maps
+	 * @throws IOException - if the station file could not be written
+	 */
+	public synchronized void upsertStation(String station, Iterable<SCADAEntry> scadaEntries, TreeMap<String, IEDMap> iedMaps) throws IOException {
+		List<Point> points = new ArrayList<Point>();
+		Map<IEDMapEntry, Boolean> referenced = new IdentityHashMap<IEDMapEntry, Boolean>();
+		for (SCADAEntry currentEntry : scadaEntries) {
+			IEDMap currentIEDMap = iedMaps.get(currentEntry.getSlaveIEDDevice());
+			IEDMapEntry currentIEDEntry = TXTWriterIO.findEntry(currentEntry, currentIEDMap);
+			String rtacName = null;
+			String status = currentIEDMap == null ? PointSink.NO_DATA_MAP : PointSink.NO_RTAC_ALIAS;
+			if (currentIEDEntry != null) {
+				referenced.put(currentIEDEntry, Boolean.TRUE);
+				try {
+					rtacName = rtacName(currentIEDEntry);
+					if (rtacName != null) {
+						status = PointSink.MATCHED;
+					}
+				} catch (RuntimeException e) {
+					status = RTAC_NAME_FAILED;
+				}
+			}
+			points.add(new Point(station, (int) currentEntry.getDnpAddress(), currentEntry.getSlaveIEDDevice(), currentIEDMap == null ? null : currentIEDMap.getFullDeviceName(),
+					currentIEDMap == null ? null : currentIEDMap.getRelayModel(), currentEntry.getWordbit(), currentIEDEntry == null ? null : currentIEDEntry.getWordbit(), rtacName, currentEntry.getScaling(), currentEntry.getDescription(), status));
+		}
+		// Data map entries marked for SCADA that no SCADA entry references are kept too, without a DNP address
+		for (Map.Entry<String, IEDMap> iedMap : iedMaps.entrySet()) {
+			for (IEDMapEntry iedEntry : iedMap.getValue().getAnalogPoints().values()) {
+				if (iedEntry.isMarkedForSCADA() && !referenced.containsKey(iedEntry)) {
+					String rtacName = null;
+					String status = NOT_IN_SCADA_MAP;
+					try {
+						rtacName = rtacName(iedEntry);
+					} catch (RuntimeException e) {
+						status = RTAC_NAME_FAILED;
+					}
+					points.add(new Point(station, -1, iedMap.getKey(), iedMap.getValue().getFullDeviceName(), iedMap.getValue().getRelayModel(), null, iedEntry.getWordbit(), rtacName, 0.0,
+							iedEntry.getDescription(), status));
+				}
+			}
+		}
+		writeStation(station, points);
+		removeFromIndexes(stations.put(station, points));
+		addToIndexes(points);
+	}
+
+	/**
+	 * Returns the RTAC name of a data map entry
+	 * @param iedEntry - data map entry
+	 * @return the RTAC name, or null if the entry has none
+	 */
+	private static String rtacName(IEDMapEntry iedEntry) {
+		String rtacName = iedEntry.getRtacPointName();
+		return rtacName == null || rtacName.equals("") ? null : rtacName;
+	}
+
+	/**
+	 * Removes a station from the database
+	 * @param station - name of the station
+	 * @return whether the station was in the database
+	 * @throws IOException - if the station file could not be deleted
+	 */
+	public synchronized boolean removeStation(String station) throws IOException {
+		List<Point> points = stations.remove(station);
+		if (points == null) {
+			return false;
+		}
+		removeFromIndexes(points);
+		Files.deleteIfExists(stationFile(station).toPath());
+		return true;
+	}
+
+	/**
+	 * Returns the names of the stations in the database
+	 * @return the names of the stations, sorted
+	 */
+	public synchronized List<String> getStations() {
+		return new ArrayList<String>(stations.keySet());
+	}
+
+	/**
+	 * Returns the number of points in the database
+	 * @return the number of points in the database
+	 */
+	public synchronized int getPointCount() {
+		int count = 0;
+		for (List<Point> points : stations.values()) {
+			count += points.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the points at a DNP address in every station
+	 * @param dnpAddress - DNP address
+	 * @return the points at the DNP address
+	 */
+	public synchronized List<Point> findByAddress(int dnpAddress) {
+		return copy(byAddress.get(dnpAddress));
+	}
+
+	/**
+	 * Returns the points of a device, by its Slave IED Device or its full device name, in every station
+	 * @param device - device, in any case
+	 * @return the points of the device
+	 */
+	public synchronized List<Point> findByDevice(String device) {
+		return copy(byDevice.get(key(device)));
+	}
+
+	/**
+	 * Returns the points of every device of a relay model in every station, e.g. every SCADA point fed by a SEL-487E
+	 * @param model - relay model as the data maps list it after the device, in any case
+	 * @return the points of the relay model
+	 */
+	public synchronized List<Point> findByModel(String model) {
+		return copy(byModel.get(key(model)));
+	}
+
+	/**
+	 * Returns the points with a SCADA wordbit or relay element in every station
+	 * @param wordbit - wordbit, in any case
+	 * @return the points with the wordbit
+	 */
+	public synchronized List<Point> findByWordbit(String wordbit) {
+		return copy(byWordbit.get(key(wordbit)));
+	}
+
+	/**
+	 * Returns the points carrying an RTAC name in every station
+	 * @param rtacName - RTAC name, in any case
+	 * @return the points carrying the RTAC name
+	 */
+	public synchronized List<Point> findByRtacName(String rtacName) {
+		return copy(byRtacName.get(key(rtacName)));
+	}
+
+	/**
+	 * Returns the RTAC names carried by more than one SCADA point, across every station
+	 * @return the points carrying each duplicated RTAC name, by RTAC name
+	 */
+	public synchronized Map<String, List<Point>> findDuplicateRtacNames() {
+		Map<String, List<Point>> duplicates = new TreeMap<String, List<Point>>();
+		for (List<Point> points : byRtacName.values()) {
+			List<Point> scadaPoints = new ArrayList<Point>();
+			for (Point point : points) {
+				if (point.dnpAddress >= 0) {
+					scadaPoints.add(point);
+				}
+			}
+			if (scadaPoints.size() > 1) {
+				duplicates.put(scadaPoints.get(0).rtacName, scadaPoints);
+			}
+		}
+		return duplicates;
+	}
+
+	/**
+	 * Returns the key text is indexed under
+	 * @param text - text to index
+	 * @return the key the text is indexed under
+	 */
+	private static String key(String text) {
+		return text.trim().toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns a copy of indexed points that can be used after the database changes
+	 * @param points - indexed points, or null if there are none
+	 * @return a copy of the points
+	 */
+	private static List<Point> copy(List<Point> points) {
+		return points == null ? Collections.<Point>emptyList() : new ArrayList<Point>(points);
+	}
+
+	/**
+	 * Indexes points
+	 * @param points - points to index
+	 */
+	private void addToIndexes(List<Point> points) {
+		for (Point point : points) {
+			if (point.dnpAddress >= 0) {
+				add(byAddress, point.dnpAddress, point);
+			}
+			add(byDevice, key(point.device), point);
+			if (point.fullDeviceName != null && !key(point.fullDeviceName).equals(key(point.device))) {
+				add(byDevice, key(point.fullDeviceName), point);
+			}
+			if (point.relayModel != null) {
+				add(byModel, key(point.relayModel), point);
+			}
+			if (point.wordbit != null) {
+				add(byWordbit, key(point.wordbit), point);
+			}
+			if (point.relayElement != null && (point.wordbit == null || !key(point.relayElement).equals(key(point.wordbit)))) {
+				add(byWordbit, key(point.relayElement), point);
+			}
+			if (point.rtacName != null) {
+				add(byRtacName, key(point.rtacName), point);
+			}
+		}
+	}
+
+	/**
+	 * Removes points from the indexes
+	 * @param points - points to remove, or null if there are none
+	 */
+	private void removeFromIndexes(List<Point> points) {
+		if (points == null) {
+			return;
+		}
+		for (Point point : points) {
+			remove(byAddress, point.dnpAddress, point);
+			remove(byDevice, key(point.device), point);
+			if (point.fullDeviceName != null) {
+				remove(byDevice, key(point.fullDeviceName), point);
+			}
+			if (point.relayModel != null) {
+				remove(byModel, key(point.relayModel), point);
+			}
+			if (point.wordbit != null) {
+				remove(byWordbit, key(point.wordbit), point);
+			}
+			if (point.relayElement != null) {
+				remove(byWordbit, key(point.relayElement), point);
+			}
+			if (point.rtacName != null) {
+				remove(byRtacName, key(point.rtacName), point);
+			}
+		}
+	}
+
+	/**
+	 * Adds a point to the points under a key
+	 * @param <K> - what the index is keyed by
+	 * @param index - index to add the point to
+	 * @param key - key to add the point under
+	 * @param point - point to add
+	 */
+	private static <K> void add(Map<K, List<Point>> index, K key, Point point) {
+		List<Point> points = index.get(key);
+		if (points == null) {
+			points = new ArrayList<Point>(1);
+			index.put(key, points);
+		}
+		points.add(point);
+	}
+
+	/**
+	 * Removes a point from the points under a key
+	 * @param <K> - what the index is keyed by
+	 * @param index - index to remove the point from
+	 * @param key - key the point is under
+	 * @param point - point to remove
+	 */
+	private static <K> void remove(Map<K, List<Point>> index, K key, Point point) {
+		List<Point> points = index.get(key);
+		if (points == null) {
+			return;
+		}
+		// Points are removed by identity, the same point can be equal to another station's
+		for (int i = 0; i < points.size(); i++) {
+			if (points.get(i) == point) {
+				points.remove(i);
+				break;
+			}
+		}
+		if (points.isEmpty()) {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the file a station is kept in
+	 * @param station - name of the station
+	 * @return the file the station is kept in
+	 */
+	private File stationFile(String station) {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < station.length(); i++) {
+			char c = station.charAt(i);
+			name.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_');
+		}
+		// The hash keeps stations whose names only differ in replaced characters apart
+		return new File(folder, name + "-" + Integer.toHexString(station.hashCode()) + EXTENSION);
+	}
+
+	/**
+	 * Reads a station file & indexes its points, ignoring a file with another layout. A file written before the relay model was kept
+	 * has the relay model of each point read out of its full device name
+	 * @param stationFile - station file
+	 * @throws IOException - if the file could not be read
+	 */
+	private void readStation(File stationFile) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stationFile.toPath())))) {
+			if (in.readInt() != MAGIC) {
+				return;
+			}
+			int version = in.readInt();
+			if (version != VERSION && version != VERSION_WITHOUT_MODEL) {
+				return;
+			}
+			String station = in.readUTF();
+			int count = in.readInt();
+			List<Point> points = new ArrayList<Point>(count);
+			for (int i = 0; i < count; i++) {
+				int dnpAddress = in.readInt();
+				String device = in.readUTF();
+				String fullDeviceName = readNullable(in);
+				String relayModel = version == VERSION ? readNullable(in) : fullDeviceName == null ? null : IEDMap.relayModel(fullDeviceName);
+				points.add(new Point(station, dnpAddress, device, fullDeviceName, relayModel, readNullable(in), readNullable(in), readNullable(in), in.readDouble(), readNullable(in), in.readUTF()));
+			}
+			stations.put(station, points);
+			addToIndexes(points);
+		}
+	}
+
+	/**
+	 * Writes a station file, replacing the old one only once the new one is completely written
+	 * @param station - name of the station
+	 * @param points - points of the station
+	 * @throws IOException - if the file could not be written
+	 */
+	private void writeStation(String station, List<Point> points) throws IOException {
+		File stationFile = stationFile(station);
+		File temporary = File.createTempFile(stationFile.getName() + ".", ".tmp", folder);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary.toPath())))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(station);
+				out.writeInt(points.size());
+				for (Point point : points) {
+					out.writeInt(point.dnpAddress);
+					out.writeUTF(point.device);
+					writeNullable(out, point.fullDeviceName);
+					writeNullable(out, point.relayModel);
+					writeNullable(out, point.wordbit);
+					writeNullable(out, point.relayElement);
+					writeNullable(out, point.rtacName);
+					out.writeDouble(point.scaling);
+					writeNullable(out, point.description);
+					out.writeUTF(point.status);
+				}
+			}
+			try {
+				Files.move(temporary.toPath(), stationFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary.toPath(), stationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	/**
+	 * Writes text that may be missing
+	 * @param out - station file
+	 * @param text - text, or null if it is missing
+	 * @throws IOException - if the text could not be written
+	 */
+	private static void writeNullable(DataOutputStream out, String text) throws IOException {
+		out.writeBoolean(text != null);
+		if (text != null) {
+			out.writeUTF(text);
+		}
+	}
+
+	/**
+	 * Reads text that may be missing
+	 * @param in - station file
+	 * @return the text, or null if it is missing
+	 * @throws IOException - if the text could not be read
+	 */
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * A SCADA entry of a station & what it matched in its data map, or a data map entry that no SCADA entry references
+	 */
+	public static class Point {
+		/** Name of the station */
+		private final String station;
+		/** DNP address, or -1 for a data map entry that no SCADA entry references */
+		private final int dnpAddress;
+		/** Slave IED Device */
+		private final String device;
+		/** Full device name in the data map, or null if the device has no data map */
+		private final String fullDeviceName;
+		/** Relay model in the data map, or null if the device has no data map or its data map does not list one */
+		private final String relayModel;
+		/** Wordbit in the SCADA map, or null for a data map entry that no SCADA entry references */
+		private final String wordbit;
+		/** Wordbit of the matching data map entry, or null if there is none */
+		private final String relayElement;
+		/** RTAC name, or null if there is none */
+		private final String rtacName;
+		/** Scale factor */
+		private final double scaling;
+		/** Description, or null if there is none */
+		private final String description;
+		/** How the SCADA entry matched its data map */
+		private final String status;
+
+		/**
+		 * Creates a point
+		 * @param station - name of the station
+		 * @param dnpAddress - DNP address, or -1 for a data map entry that no SCADA entry references
+		 * @param device - Slave IED Device
+		 * @param fullDeviceName - full device name in the data map, or null if the device has no data map
+		 * @param relayModel - relay model in the data map, or null if the device has no data map or its data map does not list one
+		 * @param wordbit - wordbit in the SCADA map, or null for a data map entry that no SCADA entry references
+		 * @param relayElement - wordbit of the matching data map entry, or null if there is none
+		 * @param rtacName - RTAC name, or null if there is none
+		 * @param scaling - scale factor
+		 * @param description - description
+		 * @param status - how the SCADA entry matched its data map
+		 */
+		private Point(String station, int dnpAddress, String device, String fullDeviceName, String relayModel, String wordbit, String relayElement, String rtacName,
+				double scaling, String description, String status) {
+			this.station = station;
+			this.dnpAddress = dnpAddress;
+			this.device = device;
+			this.fullDeviceName = fullDeviceName;
+			this.relayModel = relayModel;
+			this.wordbit = wordbit;
+			this.relayElement = relayElement;
+			this.rtacName = rtacName;
+			this.scaling = scaling;
+			this.description = description;
+			this.status = status;
+		}
+
+		/**
+		 * Returns the name of the station
+		 * @return the name of the station
+		 */
+		public String getStation() {
+			return station;
+		}
+
+		/**
+		 * Returns the DNP address
+		 * @return the DNP address, or -1 for a data map entry that no SCADA entry references
+		 */
+		public int getDnpAddress() {
+			return dnpAddress;
+		}
+
+		/**
+		 * Returns the Slave IED Device
+		 * @return the Slave IED Device
+		 */
+		public String getDevice() {
+			return device;
+		}
+
+		/**
+		 * Returns the full device name in the data map
+		 * @return the full device name, or null if the device has no data map
+		 */
+		public String getFullDeviceName() {
+			return fullDeviceName;
+		}
+
+		/**
+		 * Returns the relay model in the data map
+		 * @return the relay model, or null if the device has no data map or its data map does not list one
+		 */
+		public String getRelayModel() {
+			return relayModel;
+		}
+
+		/**
+		 * Returns the wordbit in the SCADA map
+		 * @return the wordbit in the SCADA map, or null for a data map entry that no SCADA entry references
+		 */
+		public String getWordbit() {
+			return wordbit;
+		}
+
+		/**
+		 * Returns the wordbit of the matching data map entry
+		 * @return the wordbit of the matching data map entry, or null if there is none
+		 */
+		public String getRelayElement() {
+			return relayElement;
+		}
+
+		/**
+		 * Returns the RTAC name
+		 * @return the RTAC name, or null if there is none
+		 */
+		public String getRtacName() {
+			return rtacName;
+		}
+
+		/**
+		 * Returns the scale factor
+		 * @return the scale factor
+		 */
+		public double getScaling() {
+			return scaling;
+		}
+
+		/**
+		 * Returns the description
+		 * @return the description
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * Returns how the SCADA entry matched its data map
+		 * @return how the SCADA entry matched its data map
+		 */
+		public String getStatus() {
+			return status;
+		}
+	}
+}
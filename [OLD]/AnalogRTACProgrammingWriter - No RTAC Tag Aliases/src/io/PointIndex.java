@@ -0,0 +1,148 @@
+package io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapEntry;
+import mapObjects.SCADAEntry;
+
+/**
+ * Every SCADA entry matched once & indexed both ways, by DNP address & by RTAC tag, device or wordbit,
+ * so questions about a point are answered without opening the maps. Each point's JSON record is written when the index is built,
+ * so a lookup only joins records that already exist. An index never changes once built, a new one is built when the maps change
+ * @author Hannah Layton
+ */
+public class PointIndex {
+	/** JSON records by DNP address */
+	private final Map<Integer, List<String>> byAddress = new HashMap<Integer, List<String>>();
+	/** JSON records by RTAC tag, ignoring case */
+	private final Map<String, List<String>> byAlias = new HashMap<String, List<String>>();
+	/** JSON records by Slave IED Device, ignoring case */
+	private final Map<String, List<String>> byDevice = new HashMap<String, List<String>>();
+	/** JSON records by SCADA wordbit or relay element, ignoring case */
+	private final Map<String, List<String>> byWordbit = new HashMap<String, List<String>>();
+	/** Number of SCADA entries in the index */
+	private int pointCount;
+
+	/**
+	 * Matches every SCADA entry & indexes it
+	 * @param scadaEntries - SCADA entries in the order of the SCADA map
+	 * @param iedMaps - TreeMap of ied maps
+	 */
+	public PointIndex(Iterable<SCADAEntry> scadaEntries, TreeMap<String, IEDMap> iedMaps) {
+		StringBuilder record = new StringBuilder();
+		for (SCADAEntry currentEntry : scadaEntries) {
+			IEDMap currentIEDMap = iedMaps.get(currentEntry.getSlaveIEDDevice());
+			IEDMapEntry currentIEDEntry = TXTWriterIO.findEntry(currentEntry, currentIEDMap);
+			record.setLength(0);
+			JsonLinesSink.appendRecord(record, currentEntry, currentIEDMap, currentIEDEntry);
+			String json = record.toString();
+			add(byAddress, (int) currentEntry.getDnpAddress(), json);
+			add(byDevice, key(currentEntry.getSlaveIEDDevice()), json);
+			add(byWordbit, key(currentEntry.getWordbit()), json);
+			if (currentIEDEntry != null) {
+				if (!currentIEDEntry.getWordbit().equalsIgnoreCase(currentEntry.getWordbit())) {
+					add(byWordbit, key(currentIEDEntry.getWordbit()), json);
+				}
+				if (currentIEDMap != null && !currentIEDEntry.getRtacPointName().equals("")) {
+					add(byAlias, key(currentIEDEntry.getRtacPointName()), json);
+				}
+			}
+			pointCount++;
+		}
+	}
+
+	/**
+	 * Returns the number of SCADA entries in the index
+	 * @return the number of SCADA entries in the index
+	 */
+	public int getPointCount() {
+		return pointCount;
+	}
+
+	/**
+	 * Returns the JSON array of points at a DNP address
+	 * @param dnpAddress - DNP address
+	 * @return the JSON array of points at the DNP address
+	 */
+	public String findByAddress(int dnpAddress) {
+		return toArray(byAddress.get(dnpAddress));
+	}
+
+	/**
+	 * Returns the JSON array of points carrying an RTAC tag
+	 * @param rtacTag - RTAC tag, in any case
+	 * @return the JSON array of points carrying the RTAC tag
+	 */
+	public String findByAlias(String rtacTag) {
+		return toArray(byAlias.get(key(rtacTag)));
+	}
+
+	/**
+	 * Returns the JSON array of points of a Slave IED Device
+	 * @param device - Slave IED Device, in any case
+	 * @return the JSON array of points of the device
+	 */
+	public String findByDevice(String device) {
+		return toArray(byDevice.get(key(device)));
+	}
+
+	/**
+	 * Returns the JSON array of points with a SCADA wordbit or relay element
+	 * @param wordbit - wordbit, in any case
+	 * @return the JSON array of points with the wordbit
+	 */
+	public String findByWordbit(String wordbit) {
+		return toArray(byWordbit.get(key(wordbit)));
+	}
+
+	/**
+	 * Returns the key text is indexed under
+	 * @param text - text to index
+	 * @return the key the text is indexed under
+	 */
+	private static String key(String text) {
+		return text.trim().toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Adds a record to the records under a key
+	 * @param <K> - what the index is keyed by
+	 * @param index - index to add the record to
+	 * @param key - key to add the record under
+	 * @param json - JSON record
+	 */
+	private static <K> void add(Map<K, List<String>> index, K key, String json) {
+		List<String> records = index.get(key);
+		if (records == null) {
+			records = new ArrayList<String>(1);
+			index.put(key, records);
+		}
+		records.add(json);
+	}
+
+	/**
+	 * Returns records joined into a JSON array
+	 * @param records - JSON records, or null if there are none
+	 * @return the JSON array of the records
+	 */
+	private static String toArray(List<String> records) {
+		if (records == null) {
+			records = Collections.emptyList();
+		}
+		StringBuilder array = new StringBuilder("[");
+		for (int i = 0; i < records.size(); i++) {
+			if (i > 0) {
+				array.append(',');
+			}
+			array.append(records.get(i));
+		}
+		return array.append(']').toString();
+	}
+}
@@ -0,0 +1,44 @@
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapEntry;
+import mapObjects.SCADAEntry;
+
+/**
+ * An output that every matched SCADA entry is written to. Several outputs can be written in the same pass over the SCADA map,
+ * each through its own file, & each only replaces its file once commit is called. Preparing every output before committing any of them
+ * means an output that fails to be written leaves every output file as it was
+ * @author Hannah Layton
+ */
+public interface PointSink extends Closeable {
+	/** Status of a SCADA entry matched to a data map entry with an RTAC alias */
+	String MATCHED = "MATCHED";
+	/** Status of a SCADA entry whose data map has no entry with an RTAC alias for it */
+	String NO_RTAC_ALIAS = "NO RTAC ALIAS";
+	/** Status of a SCADA entry whose device has no data map */
+	String NO_DATA_MAP = "NO DATA MAP";
+
+	/**
+	 * Writes a matched SCADA entry
+	 * @param scadaEntry - SCADA entry to write
+	 * @param iedMap - data map of the SCADA entry's device, or null if it has none
+	 * @param iedEntry - matching data map entry, or null if there is none
+	 * @throws IOException - if the entry could not be written
+	 */
+	void write(SCADAEntry scadaEntry, IEDMap iedMap, IEDMapEntry iedEntry) throws IOException;
+
+	/**
+	 * Writes the rest of the output to its temporary file without replacing the output file yet
+	 * @throws IOException - if the output could not be written
+	 */
+	void prepare() throws IOException;
+
+	/**
+	 * Writes the rest of the output if it was not prepared yet & replaces the output file with it
+	 * @throws IOException - if the output could not be written or the output file could not be replaced
+	 */
+	void commit() throws IOException;
+}
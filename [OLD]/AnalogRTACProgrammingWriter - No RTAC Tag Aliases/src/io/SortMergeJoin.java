@@ -0,0 +1,423 @@
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapCatalog;
+import mapObjects.IEDMapEntry;
+import mapObjects.SCADAEntry;
+import mapObjects.SCADAMap;
+import ui.DialogBoxUI;
+
+/**
+ * Writes the output text file for point sets too large to keep in memory.
+ * SCADA entries & data map entries are sorted by device & wordbit, writing sorted runs to temporary files whenever the memory budget is reached.
+ * The runs are merged & matched to each other, & the output lines are sorted back into the order of the SCADA map the same way.
+ * Wordbits are always matched exactly in this mode
+ * @author Hannah Layton
+ */
+public class SortMergeJoin {
+	/** Rough number of bytes used by a record besides its text */
+	private static final int RECORD_OVERHEAD = 96;
+	/** Separates the fields a data map record's RTAC point name is built from */
+	private static final char FIELD_SEPARATOR = '\u001f';
+
+	/** Sorts records by device, then wordbit, then the order they were read in */
+	private static final Comparator<Record> BY_DEVICE_AND_WORDBIT = new Comparator<Record>() {
+		@Override
+		public int compare(Record first, Record second) {
+			int compared = compareKeys(first, second);
+			return compared != 0 ? compared : Long.compare(first.sequence, second.sequence);
+		}
+	};
+
+	/** Sorts records by the order they were read in */
+	private static final Comparator<Record> BY_SEQUENCE = new Comparator<Record>() {
+		@Override
+		public int compare(Record first, Record second) {
+			return Long.compare(first.sequence, second.sequence);
+		}
+	};
+
+	/** Number of bytes of records kept in memory before they are written to a temporary file */
+	private final long memoryBudget;
+	/** Folder temporary files are written to */
+	private final File tempFolder;
+	/** Number of sorted runs written to temporary files */
+	private int spilledRuns;
+
+	/**
+	 * Creates a join that keeps at most roughly the given number of bytes of records in memory
+	 * @param memoryBudget - number of bytes of records kept in memory before they are written to a temporary file
+	 * @param tempFolder - folder temporary files are written to
+	 */
+	public SortMergeJoin(long memoryBudget, File tempFolder) {
+		this.memoryBudget = memoryBudget;
+		this.tempFolder = tempFolder;
+	}
+
+	/**
+	 * Returns the number of sorted runs that were written to temporary files
+	 * @return the number of sorted runs that were written to temporary files
+	 */
+	public int getSpilledRuns() {
+		return spilledRuns;
+	}
+
+	/**
+	 * Writes the output text file
+	 * @param txt - the file in which to put the output text
+	 * @param scadaMap - SCADA map
+	 * @param iedMapFolder - folder of data maps
+	 */
+	public void structuredTextWriter(PrintWriter txt, SCADAMap scadaMap, File iedMapFolder) {
+		try {
+			// Sort the SCADA entries by device & wordbit, removing them from the SCADA map as they are read
+			RunSorter scadaRecords = new RunSorter(BY_DEVICE_AND_WORDBIT);
+			Queue<SCADAEntry> scadaEntries = scadaMap.getScadaEntries();
+			long sequence = 0;
+			while (!scadaEntries.isEmpty()) {
+				SCADAEntry scadaEntry = scadaEntries.remove();
+				scadaRecords.add(new Record(scadaEntry.getSlaveIEDDevice(), scadaEntry.getWordbit(), sequence++, scadaEntry.getDnpAddress(), scadaEntry.getScaling(), scadaEntry.getDescription()));
+			}
+			// Sort the data map entries by device & wordbit, one data map at a time
+			RunSorter dataMapRecords = new RunSorter(BY_DEVICE_AND_WORDBIT);
+			Set<String> devices = new HashSet<String>();
+			long fileOrder = 0;
+			for (File iedMapPath : iedMapFolder.listFiles()) {
+				if (!IEDMapCatalog.isDataMap(iedMapPath)) {
+					continue;
+				}
+				IEDMap iedMap = IEDMapCatalog.load(iedMapPath);
+				devices.add(iedMap.getDeviceName());
+				// Only the fields the RTAC point name is built from are kept, the name is only built for entries the SCADA map references
+				for (Map.Entry<String, IEDMapEntry> point : iedMap.getAnalogPoints().entrySet()) {
+					dataMapRecords.add(new Record(iedMap.getDeviceName(), point.getKey(), fileOrder, 0, 0, namingFields(iedMap.getFullDeviceName(), point.getValue())));
+				}
+				fileOrder++;
+			}
+			// Match the sorted runs & sort the output lines back into SCADA map order
+			RunSorter lines = new RunSorter(BY_SEQUENCE);
+			Iterator<Record> dataMapIterator = dataMapRecords.sorted();
+			Record dataMapRecord = dataMapIterator.hasNext() ? dataMapIterator.next() : null;
+			Record match = null;
+			String matchName = null;
+			StringBuilder line = new StringBuilder();
+			for (Iterator<Record> scadaIterator = scadaRecords.sorted(); scadaIterator.hasNext();) {
+				Record scadaRecord = scadaIterator.next();
+				// Data map entries are passed until the SCADA entry's key, the last data map entry with the same key is used
+				while (dataMapRecord != null && compareKeys(dataMapRecord, scadaRecord) <= 0) {
+					if (compareKeys(dataMapRecord, scadaRecord) == 0) {
+						match = dataMapRecord;
+						matchName = null;
+					}
+					dataMapRecord = dataMapIterator.hasNext() ? dataMapIterator.next() : null;
+				}
+				String rtacPointName = null;
+				if (match != null && compareKeys(match, scadaRecord) == 0) {
+					if (matchName == null) {
+						matchName = rtacPointName(match);
+					}
+					rtacPointName = matchName;
+				}
+				line.setLength(0);
+				TXTWriterIO.appendLine(line, scadaRecord.dnpAddress, scadaRecord.scaling, scadaRecord.text, scadaRecord.device, devices.contains(scadaRecord.device), rtacPointName);
+				lines.add(new Record("", "", scadaRecord.sequence, 0, 0, line.toString()));
+			}
+			for (Iterator<Record> lineIterator = lines.sorted(); lineIterator.hasNext();) {
+				txt.print(lineIterator.next().text);
+			}
+		} catch (IOException e) {
+			DialogBoxUI.infoBox("Temporary files for the SCADA map could not be written.", "");
+			throw new IllegalArgumentException("Temporary files for the SCADA map could not be written.", e);
+		}
+	}
+
+	/**
+	 * Returns the fields of a data map entry that its RTAC point name is built from, as the text of a data map record.
+	 * The device name is kept as it is listed in the data map, because normalizing an already normalized name can swap it back
+	 * @param fullDeviceName - device name as it is listed in the data map
+	 * @param iedEntry - data map entry
+	 * @return the fields the RTAC point name is built from
+	 */
+	private static String namingFields(String fullDeviceName, IEDMapEntry iedEntry) {
+		return (iedEntry.isMarkedForSCADA() ? "X" : "-") + fullDeviceName + FIELD_SEPARATOR + iedEntry.getPointType() + FIELD_SEPARATOR
+				+ iedEntry.getPointAddress() + FIELD_SEPARATOR + iedEntry.getHmiPointName();
+	}
+
+	/**
+	 * Builds the RTAC point name of a matched data map record from its fields
+	 * @param dataMapRecord - matched data map record
+	 * @return the RTAC point name, or an empty string if the entry is not marked for SCADA
+	 */
+	private static String rtacPointName(Record dataMapRecord) {
+		String[] fields = dataMapRecord.text.substring(1).split(String.valueOf(FIELD_SEPARATOR), -1);
+		return new IEDMapEntry(fields[0], dataMapRecord.wordbit, fields[3], fields[1], fields[2], "", false, dataMapRecord.text.charAt(0) == 'X').getRtacPointName();
+	}
+
+	/**
+	 * Compares the device & wordbit of two records
+	 * @param first - first record
+	 * @param second - second record
+	 * @return a negative number, zero or a positive number as the first record's key is before, the same as or after the second's
+	 */
+	private static int compareKeys(Record first, Record second) {
+		int compared = first.device.compareTo(second.device);
+		return compared != 0 ? compared : first.wordbit.compareTo(second.wordbit);
+	}
+
+	/**
+	 * A SCADA entry, data map entry or output line being sorted
+	 */
+	private static class Record {
+		/** Device name */
+		private final String device;
+		/** Wordbit */
+		private final String wordbit;
+		/** Order the record was read in */
+		private final long sequence;
+		/** DNP address of a SCADA entry */
+		private final double dnpAddress;
+		/** Scale factor of a SCADA entry */
+		private final double scaling;
+		/** Description of a SCADA entry, naming fields of a data map entry or text of an output line */
+		private final String text;
+
+		/**
+		 * Creates a record
+		 * @param device - device name
+		 * @param wordbit - wordbit
+		 * @param sequence - order the record was read in
+		 * @param dnpAddress - DNP address of a SCADA entry
+		 * @param scaling - scale factor of a SCADA entry
+		 * @param text - description, naming fields or output line
+		 */
+		private Record(String device, String wordbit, long sequence, double dnpAddress, double scaling, String text) {
+			this.device = device;
+			this.wordbit = wordbit;
+			this.sequence = sequence;
+			this.dnpAddress = dnpAddress;
+			this.scaling = scaling;
+			this.text = text;
+		}
+
+		/**
+		 * Returns roughly how many bytes the record uses in memory
+		 * @return roughly how many bytes the record uses in memory
+		 */
+		private long size() {
+			return RECORD_OVERHEAD + 2L * (device.length() + wordbit.length() + text.length());
+		}
+
+		/**
+		 * Writes the record to a temporary file
+		 * @param out - temporary file
+		 * @throws IOException - if the record could not be written
+		 */
+		private void write(DataOutputStream out) throws IOException {
+			out.writeUTF(device);
+			out.writeUTF(wordbit);
+			out.writeLong(sequence);
+			out.writeDouble(dnpAddress);
+			out.writeDouble(scaling);
+			out.writeUTF(text);
+		}
+
+		/**
+		 * Reads a record from a temporary file
+		 * @param in - temporary file
+		 * @return the record, or null at the end of the file
+		 * @throws IOException - if the record could not be read
+		 */
+		private static Record read(DataInputStream in) throws IOException {
+			String device;
+			try {
+				device = in.readUTF();
+			} catch (EOFException e) {
+				return null;
+			}
+			return new Record(device, in.readUTF(), in.readLong(), in.readDouble(), in.readDouble(), in.readUTF());
+		}
+	}
+
+	/**
+	 * Sorts records, writing sorted runs to temporary files whenever the memory budget is reached
+	 */
+	private class RunSorter {
+		/** Order of the records */
+		private final Comparator<Record> order;
+		/** Records that have not been written to a temporary file */
+		private final List<Record> buffer = new ArrayList<Record>();
+		/** Temporary files holding sorted runs */
+		private final List<File> runs = new ArrayList<File>();
+		/** Roughly how many bytes the records in memory use */
+		private long bufferedBytes;
+
+		/**
+		 * Creates a sorter
+		 * @param order - order of the records
+		 */
+		private RunSorter(Comparator<Record> order) {
+			this.order = order;
+		}
+
+		/**
+		 * Adds a record to be sorted
+		 * @param record - record to sort
+		 * @throws IOException - if a sorted run could not be written
+		 */
+		private void add(Record record) throws IOException {
+			buffer.add(record);
+			bufferedBytes += record.size();
+			if (bufferedBytes >= memoryBudget) {
+				spill();
+			}
+		}
+
+		/**
+		 * Writes the records in memory to a temporary file as a sorted run
+		 * @throws IOException - if the sorted run could not be written
+		 */
+		private void spill() throws IOException {
+			Collections.sort(buffer, order);
+			File run = File.createTempFile("rtac-run", ".bin", tempFolder);
+			run.deleteOnExit();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+				for (Record record : buffer) {
+					record.write(out);
+				}
+			}
+			runs.add(run);
+			spilledRuns++;
+			buffer.clear();
+			bufferedBytes = 0;
+		}
+
+		/**
+		 * Returns every added record in order by merging the sorted runs, deleting each temporary file once it has been read
+		 * @return every added record in order
+		 * @throws IOException - if a sorted run could not be read
+		 */
+		private Iterator<Record> sorted() throws IOException {
+			Collections.sort(buffer, order);
+			if (runs.isEmpty()) {
+				return buffer.iterator();
+			}
+			final PriorityQueue<RunCursor> cursors = new PriorityQueue<RunCursor>(runs.size() + 1, new Comparator<RunCursor>() {
+				@Override
+				public int compare(RunCursor first, RunCursor second) {
+					return order.compare(first.current, second.current);
+				}
+			});
+			for (File run : runs) {
+				RunCursor cursor = new RunCursor(run);
+				if (cursor.current != null) {
+					cursors.add(cursor);
+				}
+			}
+			RunCursor memoryCursor = new RunCursor(buffer.iterator());
+			if (memoryCursor.current != null) {
+				cursors.add(memoryCursor);
+			}
+			return new Iterator<Record>() {
+				@Override
+				public boolean hasNext() {
+					return !cursors.isEmpty();
+				}
+
+				@Override
+				public Record next() {
+					RunCursor cursor = cursors.poll();
+					if (cursor == null) {
+						throw new NoSuchElementException();
+					}
+					Record record = cursor.current;
+					try {
+						cursor.advance();
+					} catch (IOException e) {
+						DialogBoxUI.infoBox("Temporary files for the SCADA map could not be read.", "");
+						throw new IllegalArgumentException("Temporary files for the SCADA map could not be read.", e);
+					}
+					if (cursor.current != null) {
+						cursors.add(cursor);
+					}
+					return record;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Position in a sorted run, either a temporary file or the records left in memory
+	 */
+	private static class RunCursor {
+		/** Temporary file being read, or null for records in memory */
+		private final File run;
+		/** Reader for the temporary file */
+		private final DataInputStream in;
+		/** Records in memory */
+		private final Iterator<Record> records;
+		/** Record at the current position, or null at the end of the run */
+		private Record current;
+
+		/**
+		 * Opens a sorted run in a temporary file
+		 * @param run - temporary file
+		 * @throws IOException - if the temporary file could not be read
+		 */
+		private RunCursor(File run) throws IOException {
+			this.run = run;
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+			this.records = null;
+			advance();
+		}
+
+		/**
+		 * Opens a sorted run of records in memory
+		 * @param records - records in memory
+		 * @throws IOException - never, records in memory are not read from a file
+		 */
+		private RunCursor(Iterator<Record> records) throws IOException {
+			this.run = null;
+			this.in = null;
+			this.records = records;
+			advance();
+		}
+
+		/**
+		 * Moves to the next record, deleting the temporary file at the end of the run
+		 * @throws IOException - if the temporary file could not be read
+		 */
+		private void advance() throws IOException {
+			if (records != null) {
+				current = records.hasNext() ? records.next() : null;
+				return;
+			}
+			current = Record.read(in);
+			if (current == null) {
+				in.close();
+				run.delete();
+			}
+		}
+	}
+}
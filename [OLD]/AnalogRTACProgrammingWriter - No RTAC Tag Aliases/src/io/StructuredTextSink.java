@@ -0,0 +1,50 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapEntry;
+import mapObjects.SCADAEntry;
+
+/**
+ * Output writing the structured text lines for the RTAC
+ * @author Hannah Layton
+ */
+public class StructuredTextSink implements PointSink {
+	/** File the lines are written to */
+	private final ChannelTextSink txt;
+	/** Line reused for every SCADA entry */
+	private final StringBuilder outputString = new StringBuilder();
+
+	/**
+	 * Opens the structured text file
+	 * @param file - structured text file
+	 * @throws IOException - if the file could not be opened
+	 */
+	public StructuredTextSink(File file) throws IOException {
+		this.txt = new ChannelTextSink(file);
+	}
+
+	@Override
+	public void write(SCADAEntry scadaEntry, IEDMap iedMap, IEDMapEntry iedEntry) throws IOException {
+		outputString.setLength(0);
+		TXTWriterIO.appendLine(outputString, scadaEntry, iedMap, iedEntry);
+		txt.append(outputString);
+	}
+
+	@Override
+	public void prepare() throws IOException {
+		txt.prepare();
+	}
+
+	@Override
+	public void commit() throws IOException {
+		txt.commit();
+	}
+
+	@Override
+	public void close() throws IOException {
+		txt.close();
+	}
+}
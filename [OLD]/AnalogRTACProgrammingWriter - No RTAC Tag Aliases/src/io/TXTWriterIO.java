@@ -3,20 +3,67 @@
  */
 package io;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import mapObjects.IEDMap;
+import mapObjects.IEDMapCatalog;
 import mapObjects.IEDMapEntry;
 import mapObjects.SCADAEntry;
 import mapObjects.SCADAMap;
+import mapObjects.WordbitMatch;
 
 /**
  * Class responsible for writing the output text file
  * @author Hannah Layton
  */
 public class TXTWriterIO {
+	/** Number of SCADA entries written by each task when the output is written in parallel */
+	private static final int CHUNK_SIZE = 1024;
+
+	/** How wordbits from the SCADA map are matched to relay elements in the data maps */
+	private static WordbitMatch wordbitMatch = WordbitMatch.EXACT;
+	/** Format of the lines written for matched SCADA entries */
+	private static LineTemplate lineTemplate = LineTemplate.ANALOG;
+
+	/**
+	 * Returns how wordbits from the SCADA map are matched to relay elements in the data maps
+	 * @return how wordbits from the SCADA map are matched to relay elements in the data maps
+	 */
+	public static WordbitMatch getWordbitMatch() {
+		return wordbitMatch;
+	}
+
+	/**
+	 * Sets how wordbits from the SCADA map are matched to relay elements in the data maps
+	 * @param wordbitMatch - how wordbits from the SCADA map are matched to relay elements in the data maps
+	 */
+	public static void setWordbitMatch(WordbitMatch wordbitMatch) {
+		TXTWriterIO.wordbitMatch = wordbitMatch;
+	}
+
+	/**
+	 * Returns the format of the lines written for matched SCADA entries
+	 * @return the format of the lines written for matched SCADA entries
+	 */
+	public static LineTemplate getLineTemplate() {
+		return lineTemplate;
+	}
+
+	/**
+	 * Sets the format of the lines written for matched SCADA entries
+	 * @param lineTemplate - format of the lines written for matched SCADA entries
+	 */
+	public static void setLineTemplate(LineTemplate lineTemplate) {
+		TXTWriterIO.lineTemplate = lineTemplate;
+	}
 
 	/**
 	 * Writes the output text file
@@ -30,45 +77,194 @@ public class TXTWriterIO {
 		// Loop through all SCADA Entries
 		while (!scadaEntries.isEmpty()) {
 			SCADAEntry currentEntry = scadaEntries.remove();
-			IEDMap currentIEDMap = iedMaps.get(currentEntry.getSlaveIEDDevice());
-			// If Slave IED Device has a data map
-			if (currentIEDMap != null) {
-				TreeMap<String, IEDMapEntry> analogPoints = currentIEDMap.getAnalogPoints();
-				IEDMapEntry currentIEDEntry = analogPoints.get(currentEntry.getWordbit());
-				if (currentIEDEntry != null && !currentIEDEntry.getRtacPointName().equals("")) {
-					// If wordbit match is found and has a valid RTAC alias
-					String rtacPointName = currentIEDEntry.getRtacPointName();
-					// Add first half of line
-					int currentDNPAddress = (int) currentEntry.getDnpAddress();
-					if (currentDNPAddress < 10) {
-						outputString.append("SCADA_DNP.AI_0000" + currentDNPAddress + " := " + rtacPointName + ";                    		SCADA_DNP.AI_0000"  + currentDNPAddress + ".instMag := " + rtacPointName + ".instMag");
-					}
-					else if (currentDNPAddress < 100) {
-						outputString.append("SCADA_DNP.AI_000" + currentDNPAddress + " := " + rtacPointName + ";                    		SCADA_DNP.AI_000"  + currentDNPAddress + ".instMag := " + rtacPointName + ".instMag");
-					}
-					else if (currentDNPAddress < 1000) {
-						outputString.append("SCADA_DNP.AI_00" + currentDNPAddress + " := " + rtacPointName + ";                    		SCADA_DNP.AI_00"  + currentDNPAddress + ".instMag := " + rtacPointName + ".instMag");
-					}
-					else if (currentDNPAddress < 10000) {
-						outputString.append("SCADA_DNP.AI_0" + currentDNPAddress + " := " + rtacPointName + ";                    		SCADA_DNP.AI_0"  + currentDNPAddress + ".instMag := " + rtacPointName + ".instMag");
-					}
-					else {
-						outputString.append("SCADA_DNP.AI_" + currentDNPAddress + " := " + rtacPointName + ";                    		SCADA_DNP.AI_"  + currentDNPAddress + ".instMag := " + rtacPointName + ".instMag");
-					}
-					// Add scaling factor
-					if (currentEntry.getScaling() != 0.0 && currentEntry.getScaling() != 1.0) {
-						outputString.append(" * " + currentEntry.getScaling());
-					}
-					outputString.append(";                    		// " + currentEntry.getDescription() + "\n");
-				}
-				else {
-					outputString.append("NO RTAC ALIAS WAS FOUND FOR DNP ADDRESS: " + (int) currentEntry.getDnpAddress() + "\n");
+			appendLine(outputString, currentEntry, iedMaps.get(currentEntry.getSlaveIEDDevice()));
+		}
+		txt.print(outputString);
+	}
+
+	/**
+	 * Writes the output text file one line at a time, encoding each line straight into the file instead of building the whole text first
+	 * @param txt - the file in which to put the output text
+	 * @param iedMaps - TreeMap of ied maps
+	 * @param scadaMap - SCADA map
+	 * @throws IOException - if the output text could not be written
+	 */
+	public static void structuredTextWriter(ChannelTextSink txt, TreeMap<String, IEDMap> iedMaps, SCADAMap scadaMap) throws IOException {
+		Queue<SCADAEntry> scadaEntries = scadaMap.getScadaEntries();
+		StringBuilder outputString = new StringBuilder();
+		// Loop through all SCADA Entries
+		while (!scadaEntries.isEmpty()) {
+			SCADAEntry currentEntry = scadaEntries.remove();
+			outputString.setLength(0);
+			appendLine(outputString, currentEntry, iedMaps.get(currentEntry.getSlaveIEDDevice()));
+			txt.append(outputString);
+		}
+	}
+
+	/**
+	 * Writes the output text file one line at a time from SCADA entries that are kept, so they can be written again later
+	 * @param txt - the file in which to put the output text
+	 * @param iedMaps - TreeMap of ied maps
+	 * @param scadaEntries - SCADA entries in the order of the SCADA map
+	 * @throws IOException - if the output text could not be written
+	 */
+	public static void structuredTextWriter(ChannelTextSink txt, TreeMap<String, IEDMap> iedMaps, Iterable<SCADAEntry> scadaEntries) throws IOException {
+		StringBuilder outputString = new StringBuilder();
+		for (SCADAEntry currentEntry : scadaEntries) {
+			outputString.setLength(0);
+			appendLine(outputString, currentEntry, iedMaps.get(currentEntry.getSlaveIEDDevice()));
+			txt.append(outputString);
+		}
+	}
+
+	/**
+	 * Matches every SCADA entry once & hands each match to every output, so several outputs are written in a single pass.
+	 * Every output is completely written to its temporary file before any output replaces its file, so an output that fails
+	 * leaves every output file as it was. The files are then replaced one after another, each by a single rename
+	 * @param sinks - outputs the matched SCADA entries are written to
+	 * @param iedMaps - TreeMap of ied maps
+	 * @param scadaMap - SCADA map
+	 * @throws IOException - if an output could not be written
+	 */
+	public static void structuredTextWriter(List<PointSink> sinks, TreeMap<String, IEDMap> iedMaps, SCADAMap scadaMap) throws IOException {
+		try {
+			Queue<SCADAEntry> scadaEntries = scadaMap.getScadaEntries();
+			// Loop through all SCADA Entries
+			while (!scadaEntries.isEmpty()) {
+				SCADAEntry currentEntry = scadaEntries.remove();
+				IEDMap currentIEDMap = iedMaps.get(currentEntry.getSlaveIEDDevice());
+				IEDMapEntry currentIEDEntry = findEntry(currentEntry, currentIEDMap);
+				for (PointSink sink : sinks) {
+					sink.write(currentEntry, currentIEDMap, currentIEDEntry);
 				}
 			}
-			else {
-				outputString.append("NO DATA MAP WAS FOUND FOR: " + currentEntry.getSlaveIEDDevice() + "\n");
+			for (PointSink sink : sinks) {
+				sink.prepare();
+			}
+			for (PointSink sink : sinks) {
+				sink.commit();
+			}
+		}
+		finally {
+			for (PointSink sink : sinks) {
+				sink.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the output text file, splitting the SCADA entries into chunks that are written at the same time & joined back in order.
+	 * The output is the same as writing the entries one at a time
+	 * @param txt - the file in which to put the output text
+	 * @param iedMaps - TreeMap of ied maps
+	 * @param scadaMap - SCADA map
+	 * @param parallelism - number of threads writing chunks
+	 */
+	public static void structuredTextWriter(PrintWriter txt, final TreeMap<String, IEDMap> iedMaps, SCADAMap scadaMap, int parallelism) {
+		Queue<SCADAEntry> scadaEntries = scadaMap.getScadaEntries();
+		final SCADAEntry[] entries = scadaEntries.toArray(new SCADAEntry[0]);
+		scadaEntries.clear();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<ForkJoinTask<StringBuilder>> chunks = new ArrayList<ForkJoinTask<StringBuilder>>();
+			for (int start = 0; start < entries.length; start += CHUNK_SIZE) {
+				final int from = start;
+				final int to = Math.min(start + CHUNK_SIZE, entries.length);
+				chunks.add(pool.submit(new Callable<StringBuilder>() {
+					@Override
+					public StringBuilder call() {
+						StringBuilder outputString = new StringBuilder();
+						for (int i = from; i < to; i++) {
+							appendLine(outputString, entries[i], iedMaps.get(entries[i].getSlaveIEDDevice()));
+						}
+						return outputString;
+					}
+				}));
+			}
+			// Chunks are written in the order of the SCADA map no matter which finishes first
+			for (ForkJoinTask<StringBuilder> chunk : chunks) {
+				txt.print(chunk.join());
 			}
 		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Writes the output text file, only keeping each data map loaded while SCADA entries referencing it are left to write
+	 * @param txt - the file in which to put the output text
+	 * @param iedMaps - data maps listed by device name, loaded as they are needed
+	 * @param scadaMap - SCADA map
+	 */
+	public static void structuredTextWriter(PrintWriter txt, IEDMapCatalog iedMaps, SCADAMap scadaMap) {
+		Queue<SCADAEntry> scadaEntries = scadaMap.getScadaEntries();
+		iedMaps.countReferences(scadaEntries);
+		StringBuilder outputString = new StringBuilder();
+		// Loop through all SCADA Entries
+		while (!scadaEntries.isEmpty()) {
+			SCADAEntry currentEntry = scadaEntries.remove();
+			appendLine(outputString, currentEntry, iedMaps.acquire(currentEntry.getSlaveIEDDevice()));
+			iedMaps.release(currentEntry.getSlaveIEDDevice());
+		}
 		txt.print(outputString);
 	}
+
+	/**
+	 * Adds the output line for a SCADA entry
+	 * @param outputString - output text to add the line to
+	 * @param currentEntry - SCADA entry to write
+	 * @param currentIEDMap - data map of the SCADA entry's device, or null if it has none
+	 */
+	static void appendLine(StringBuilder outputString, SCADAEntry currentEntry, IEDMap currentIEDMap) {
+		appendLine(outputString, currentEntry, currentIEDMap, findEntry(currentEntry, currentIEDMap));
+	}
+
+	/**
+	 * Adds the output line for a SCADA entry that has already been matched to its data map entry
+	 * @param outputString - output text to add the line to
+	 * @param currentEntry - SCADA entry to write
+	 * @param currentIEDMap - data map of the SCADA entry's device, or null if it has none
+	 * @param currentIEDEntry - matching data map entry, or null if there is none
+	 */
+	static void appendLine(StringBuilder outputString, SCADAEntry currentEntry, IEDMap currentIEDMap, IEDMapEntry currentIEDEntry) {
+		String rtacPointName = currentIEDEntry == null ? null : currentIEDEntry.getRtacPointName();
+		appendLine(outputString, currentEntry.getDnpAddress(), currentEntry.getScaling(), currentEntry.getDescription(), currentEntry.getSlaveIEDDevice(), currentIEDMap != null, rtacPointName);
+	}
+
+	/**
+	 * Returns the data map entry matching a SCADA entry
+	 * @param currentEntry - SCADA entry to match
+	 * @param currentIEDMap - data map of the SCADA entry's device, or null if it has none
+	 * @return the matching data map entry, or null if there is none
+	 */
+	static IEDMapEntry findEntry(SCADAEntry currentEntry, IEDMap currentIEDMap) {
+		return currentIEDMap == null ? null : currentIEDMap.findEntry(currentEntry.getWordbit(), wordbitMatch);
+	}
+
+	/**
+	 * Adds the output line for a SCADA entry that has already been matched to its data map entry
+	 * @param outputString - output text to add the line to
+	 * @param dnpAddress - DNP address of the SCADA entry
+	 * @param scaling - scale factor of the SCADA entry
+	 * @param description - description of the SCADA entry
+	 * @param slaveIEDDevice - device of the SCADA entry
+	 * @param hasDataMap - whether the device of the SCADA entry has a data map
+	 * @param rtacPointName - RTAC point name of the matching data map entry, or null if there is none
+	 */
+	static void appendLine(StringBuilder outputString, double dnpAddress, double scaling, String description, String slaveIEDDevice, boolean hasDataMap, String rtacPointName) {
+		// If Slave IED Device has a data map
+		if (hasDataMap) {
+			// If wordbit match is found and has a valid RTAC alias
+			if (rtacPointName != null && !rtacPointName.equals("")) {
+				lineTemplate.render(outputString, (int) dnpAddress, rtacPointName, scaling, description, true);
+			}
+			else {
+				outputString.append("NO RTAC ALIAS WAS FOUND FOR DNP ADDRESS: ").append((int) dnpAddress).append('\n');
+			}
+		}
+		else {
+			outputString.append("NO DATA MAP WAS FOUND FOR: ").append(slaveIEDDevice).append('\n');
+		}
+	}
 }
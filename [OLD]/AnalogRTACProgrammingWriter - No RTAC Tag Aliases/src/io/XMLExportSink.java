@@ -0,0 +1,180 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapEntry;
+import mapObjects.SCADAEntry;
+
+/**
+ * Output writing the matched SCADA entries as an XML program fragment of tag mappings, so a whole project can be loaded
+ * with one import instead of pasting the structured text in pieces. Each mapping is streamed to the file as it is matched,
+ * so the XML is never held in memory. Characters XML does not allow are replaced in the names & descriptions taken from the maps,
+ * so a stray control character in a cell never makes the whole file unreadable
+ * @author Hannah Layton
+ */
+public class XMLExportSink implements PointSink {
+	/** File the XML is written to */
+	private final ChannelTextSink xml;
+	/** Writer streaming the XML elements */
+	private final XMLStreamWriter writer;
+	/** Destination tag reused for every SCADA entry */
+	private final StringBuilder destination = new StringBuilder();
+	/** Scale factor reused for every SCADA entry */
+	private final StringBuilder scaling = new StringBuilder();
+	/** Whether the program fragment has been finished */
+	private boolean prepared;
+
+	/**
+	 * Opens the XML file & starts the program fragment
+	 * @param file - XML file
+	 * @param programName - name of the program in the fragment
+	 * @throws IOException - if the file could not be opened
+	 */
+	public XMLExportSink(File file, String programName) throws IOException {
+		this.xml = new ChannelTextSink(file);
+		try {
+			this.writer = XMLOutputFactory.newInstance().createXMLStreamWriter(xml);
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("Program");
+			writer.writeAttribute("Name", text(programName));
+			writer.writeCharacters("\n\t");
+			writer.writeStartElement("TagMappings");
+		} catch (XMLStreamException e) {
+			xml.close();
+			throw new IOException("XML export could not be started.", e);
+		}
+	}
+
+	@Override
+	public void write(SCADAEntry scadaEntry, IEDMap iedMap, IEDMapEntry iedEntry) throws IOException {
+		int address = (int) scadaEntry.getDnpAddress();
+		try {
+			writer.writeCharacters("\n\t\t");
+			if (iedMap == null) {
+				writer.writeComment(comment(" NO DATA MAP WAS FOUND FOR: " + scadaEntry.getSlaveIEDDevice() + " "));
+				return;
+			}
+			if (iedEntry == null || iedEntry.getRtacPointName().equals("")) {
+				writer.writeComment(" NO RTAC ALIAS WAS FOUND FOR DNP ADDRESS: " + address + " ");
+				return;
+			}
+			destination.setLength(0);
+			destination.append("SCADA_DNP.AI_");
+			LineTemplate.appendAddress(destination, address);
+			writer.writeEmptyElement("Mapping");
+			writer.writeAttribute("Destination", destination.toString());
+			writer.writeAttribute("Source", text(iedEntry.getRtacPointName()));
+			writer.writeAttribute("Address", Integer.toString(address));
+			if (scadaEntry.getScaling() != 0.0 && scadaEntry.getScaling() != 1.0) {
+				scaling.setLength(0);
+				LineTemplate.appendDouble(scaling, scadaEntry.getScaling());
+				writer.writeAttribute("Scaling", scaling.toString());
+			}
+			writer.writeAttribute("Device", text(scadaEntry.getSlaveIEDDevice()));
+			writer.writeAttribute("Wordbit", text(iedEntry.getWordbit()));
+			writer.writeAttribute("Description", text(scadaEntry.getDescription()));
+		} catch (XMLStreamException e) {
+			throw new IOException("Mapping for DNP address " + address + " could not be exported.", e);
+		}
+	}
+
+	/**
+	 * Returns text with every character XML does not allow replaced by the replacement character
+	 * @param text - text taken from the maps, or null
+	 * @return the text, only holding characters XML allows, or null if there is no text
+	 */
+	private static String text(String text) {
+		if (text == null) {
+			return null;
+		}
+		for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+			if (!isXmlCharacter(text.codePointAt(i))) {
+				return replaceIllegal(text, false);
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * Returns the text of a comment with every character XML does not allow replaced by the replacement character,
+	 * & a space put between two hyphens in a row, which would otherwise end the comment
+	 * @param text - text of the comment
+	 * @return the text of the comment, only holding characters XML allows in a comment
+	 */
+	private static String comment(String text) {
+		return replaceIllegal(text, true);
+	}
+
+	/**
+	 * Returns text with every character XML does not allow replaced by the replacement character
+	 * @param text - text to replace the characters in
+	 * @param comment - whether the text is the text of a comment, so hyphens in a row are kept apart
+	 * @return the text, only holding characters XML allows
+	 */
+	private static String replaceIllegal(String text, boolean comment) {
+		StringBuilder replaced = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+			int c = text.codePointAt(i);
+			if (!isXmlCharacter(c)) {
+				replaced.append('\uFFFD');
+				continue;
+			}
+			if (comment && c == '-' && replaced.length() > 0 && replaced.charAt(replaced.length() - 1) == '-') {
+				replaced.append(' ');
+			}
+			replaced.appendCodePoint(c);
+		}
+		// A comment can not end with a hyphen either
+		if (comment && replaced.length() > 0 && replaced.charAt(replaced.length() - 1) == '-') {
+			replaced.append(' ');
+		}
+		return replaced.toString();
+	}
+
+	/**
+	 * Returns whether XML 1.0 allows a character
+	 * @param c - code point of the character
+	 * @return whether XML allows the character
+	 */
+	private static boolean isXmlCharacter(int c) {
+		return c == 0x9 || c == 0xA || c == 0xD || (c >= 0x20 && c <= 0xD7FF) || (c >= 0xE000 && c <= 0xFFFD) || (c >= 0x10000 && c <= 0x10FFFF);
+	}
+
+	@Override
+	public void prepare() throws IOException {
+		if (prepared) {
+			return;
+		}
+		try {
+			writer.writeCharacters("\n\t");
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException("XML export could not be finished.", e);
+		}
+		xml.prepare();
+		prepared = true;
+	}
+
+	@Override
+	public void commit() throws IOException {
+		prepare();
+		xml.commit();
+	}
+
+	@Override
+	public void close() throws IOException {
+		xml.close();
+	}
+}
@@ -0,0 +1,213 @@
+package mapObjects;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads a single cell of a workbook without loading the workbook. The sheet is read as a stream only up to the cell's row,
+ * & the shared strings only up to the cell's string
+ * @author Hannah Layton
+ */
+final class DataMapCellReader {
+	/**
+	 * Prevents creating a reader, every method is static
+	 */
+	private DataMapCellReader() {
+	}
+
+	/**
+	 * Returns the text of a cell
+	 * @param workbookPath - workbook file
+	 * @param sheetName - name of the sheet the cell is on
+	 * @param cellReference - reference of the cell, e.g. D3
+	 * @return the text of the cell, an empty string if the cell is empty, or null if the workbook does not have the sheet
+	 * @throws IOException - if the workbook could not be read
+	 */
+	static String readCell(File workbookPath, String sheetName, String cellReference) throws IOException {
+		try (OPCPackage workbook = OPCPackage.open(workbookPath, PackageAccess.READ)) {
+			XSSFReader reader = new XSSFReader(workbook);
+			XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+			while (sheets.hasNext()) {
+				try (InputStream sheet = sheets.next()) {
+					if (!sheets.getSheetName().equals(sheetName)) {
+						continue;
+					}
+					CellHandler cell = new CellHandler(cellReference);
+					parse(sheet, cell);
+					if (cell.text == null) {
+						return "";
+					}
+					if (!"s".equals(cell.type)) {
+						return cell.text.toString();
+					}
+					// Text cells only hold the position of their text in the shared strings
+					SharedStringHandler sharedString = new SharedStringHandler(Integer.parseInt(cell.text.toString().trim()));
+					try (InputStream sharedStrings = reader.getSharedStringsData()) {
+						parse(sharedStrings, sharedString);
+					}
+					return sharedString.text.toString();
+				}
+			}
+			return null;
+		} catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Parses a part of the workbook until the handler has what it needs
+	 * @param part - part of the workbook
+	 * @param handler - handler of the part's XML
+	 * @throws IOException - if the part could not be read
+	 * @throws SAXException - if the part is not valid XML
+	 * @throws ParserConfigurationException - if no XML parser is available
+	 */
+	private static void parse(InputStream part, ContentHandler handler) throws IOException, SAXException, ParserConfigurationException {
+		XMLReader xmlReader = XMLHelper.newXMLReader();
+		xmlReader.setContentHandler(handler);
+		try {
+			xmlReader.parse(new InputSource(part));
+		} catch (StopParsing e) {
+			// The rest of the part is not needed
+		}
+	}
+
+	/**
+	 * Thrown by a handler once it has what it needs, so the rest of the part is not read
+	 */
+	private static class StopParsing extends SAXException {
+		/** Serial version of the exception */
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Finds a cell in a sheet, stopping at the first row after the cell's row
+	 */
+	private static class CellHandler extends DefaultHandler {
+		/** Reference of the cell */
+		private final String cellReference;
+		/** Row number of the cell, counting from 1 */
+		private final int rowNumber;
+		/** Type of the cell, or null if it has none */
+		private String type;
+		/** Value of the cell, or null if the cell was not found */
+		private StringBuilder text;
+		/** Whether the cell is being read */
+		private boolean inCell;
+		/** Whether a value of the cell is being read */
+		private boolean inValue;
+
+		/**
+		 * Creates a handler finding a cell
+		 * @param cellReference - reference of the cell, e.g. D3
+		 */
+		private CellHandler(String cellReference) {
+			this.cellReference = cellReference;
+			this.rowNumber = Integer.parseInt(cellReference.replaceAll("[A-Za-z]", ""));
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			if (localName.equals("row") && attributes.getValue("r") != null && Integer.parseInt(attributes.getValue("r")) > rowNumber) {
+				throw new StopParsing();
+			}
+			if (localName.equals("c") && cellReference.equals(attributes.getValue("r"))) {
+				inCell = true;
+				type = attributes.getValue("t");
+				text = new StringBuilder();
+			}
+			else if (inCell && (localName.equals("v") || localName.equals("t"))) {
+				inValue = true;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inValue) {
+				text.append(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (localName.equals("v") || localName.equals("t")) {
+				inValue = false;
+			}
+			else if (inCell && localName.equals("c")) {
+				throw new StopParsing();
+			}
+		}
+	}
+
+	/**
+	 * Finds a string in the shared strings, stopping once it has been read
+	 */
+	private static class SharedStringHandler extends DefaultHandler {
+		/** Position of the string in the shared strings */
+		private final int index;
+		/** Text of the string */
+		private final StringBuilder text = new StringBuilder();
+		/** Number of strings started so far */
+		private int strings;
+		/** Whether text of the string is being read */
+		private boolean inText;
+		/** Whether a phonetic run, which is not part of the text, is being read */
+		private boolean inPhonetic;
+
+		/**
+		 * Creates a handler finding a string
+		 * @param index - position of the string in the shared strings
+		 */
+		private SharedStringHandler(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if (localName.equals("si")) {
+				strings++;
+			}
+			else if (localName.equals("rPh")) {
+				inPhonetic = true;
+			}
+			else if (localName.equals("t") && strings == index + 1 && !inPhonetic) {
+				inText = true;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inText) {
+				text.append(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (localName.equals("t")) {
+				inText = false;
+			}
+			else if (localName.equals("rPh")) {
+				inPhonetic = false;
+			}
+			else if (localName.equals("si") && strings == index + 1) {
+				throw new StopParsing();
+			}
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package mapObjects;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ui.DialogBoxUI;
+
+/**
+ * A device name normalization rule that is compiled once & used to turn device names from the SCADA map & the data maps
+ * into names that can be matched to each other. The rule is a list of steps separated by ";" that are applied in order:
+ * <ul>
+ * <li>swap=87TA,74TA - swaps the first two characters when the name starts with a digit & contains any of the listed text</li>
+ * <li>firstword - only keeps the name up to the first space</li>
+ * <li>map=-/.&gt;_ - replaces every listed character with the character after "&gt;" (map=!alnum&gt;_ replaces everything except letters & digits)</li>
+ * <li>strip=KL - removes the first character when it is one of the listed characters</li>
+ * <li>prefix=L:LA - adds "L" to the front when the name starts with a digit & contains "LA" in any case (prefix=K adds "K" to any name starting with a digit)</li>
+ * </ul>
+ * Raw names are normalized once & later requests for the same name are answered from memory, which keeps up to
+ * the last {@value #MAX_REMEMBERED_NAMES} names that were used
+ * @author Hannah Layton
+ */
+public class DeviceNameRule {
+	/** Step that swaps the first two characters */
+	private static final int SWAP = 0;
+	/** Step that keeps the name up to the first space */
+	private static final int FIRST_WORD = 1;
+	/** Step that replaces characters */
+	private static final int MAP = 2;
+	/** Step that removes a leading character */
+	private static final int STRIP = 3;
+	/** Step that adds a prefix */
+	private static final int PREFIX = 4;
+
+	/** Number of normalized device names remembered by each rule, the least recently used name is forgotten first */
+	private static final int MAX_REMEMBERED_NAMES = 4096;
+
+	/** Transformer relay designations whose first two characters are swapped */
+	private static final String SWAPPED_DEVICES = "87TA,74TA,51TA,90TA";
+	/**
+	 * Slave IED Devices in the SCADA map. The swap is listed twice because the SCADA map has always set the device
+	 * a second time after replacing symbols, which swaps back names whose designation is not at the front
+	 */
+	public static final DeviceNameRule SCADA_DEVICE = compile("swap=" + SWAPPED_DEVICES + ";firstword;map=-/.>_;swap=" + SWAPPED_DEVICES);
+	/** Device names of data maps, used to match Slave IED Devices in the SCADA map */
+	public static final DeviceNameRule DATA_MAP_DEVICE = compile("strip=KL");
+	/** Device names of data map entries, used to create RTAC point names */
+	public static final DeviceNameRule DATA_MAP_ENTRY_DEVICE = compile("swap=" + SWAPPED_DEVICES + ";firstword");
+
+	/** Rule the steps were compiled from */
+	private final String pattern;
+	/** Compiled steps of the rule in the order they are applied */
+	private final Step[] steps;
+	/** Normalized device names saved by their raw names, least recently used first */
+	private final Map<String, String> normalizedNames = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		/** Serial version of the map */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_REMEMBERED_NAMES;
+		}
+	};
+
+	/**
+	 * Creates a device name rule out of already compiled steps
+	 * @param pattern - rule the steps were compiled from
+	 * @param steps - compiled steps of the rule
+	 */
+	private DeviceNameRule(String pattern, Step[] steps) {
+		this.pattern = pattern;
+		this.steps = steps;
+	}
+
+	/**
+	 * Compiles a device name rule so it can be reused for every device name
+	 * @param pattern - device name rule to compile
+	 * @return the compiled device name rule
+	 */
+	public static DeviceNameRule compile(String pattern) {
+		List<Step> steps = new ArrayList<Step>();
+		for (String step : pattern.split(";")) {
+			if (step.equals("")) {
+				continue;
+			}
+			String name = step;
+			String argument = "";
+			if (step.indexOf('=') >= 0) {
+				name = step.substring(0, step.indexOf('='));
+				argument = step.substring(step.indexOf('=') + 1);
+			}
+			Step compiled = new Step();
+			if (name.equals("swap") && !argument.equals("")) {
+				compiled.kind = SWAP;
+				compiled.triggers = new TriggerMatcher(argument.split(","), false);
+			}
+			else if (name.equals("firstword")) {
+				compiled.kind = FIRST_WORD;
+			}
+			else if (name.equals("map") && argument.length() >= 3 && argument.charAt(argument.length() - 2) == '>') {
+				compiled.kind = MAP;
+				compiled.replacement = argument.charAt(argument.length() - 1);
+				String characters = argument.substring(0, argument.length() - 2);
+				compiled.characters = new boolean[Character.MAX_VALUE + 1];
+				if (characters.equals("!alnum")) {
+					for (int c = 0; c <= Character.MAX_VALUE; c++) {
+						compiled.characters[c] = !((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'));
+					}
+				}
+				else {
+					for (int i = 0; i < characters.length(); i++) {
+						compiled.characters[characters.charAt(i)] = true;
+					}
+				}
+			}
+			else if (name.equals("strip") && !argument.equals("")) {
+				compiled.kind = STRIP;
+				compiled.prefixes = argument;
+			}
+			else if (name.equals("prefix") && !argument.equals("")) {
+				compiled.kind = PREFIX;
+				int colon = argument.indexOf(':');
+				compiled.prefixes = colon < 0 ? argument : argument.substring(0, colon);
+				if (colon >= 0) {
+					compiled.triggers = new TriggerMatcher(argument.substring(colon + 1).split(","), true);
+				}
+			}
+			else {
+				DialogBoxUI.infoBox("Device name rule " + pattern + " has an invalid step: " + step + ".", "");
+				throw new IllegalArgumentException("Device name rule " + pattern + " has an invalid step: " + step + ".");
+			}
+			steps.add(compiled);
+		}
+		return new DeviceNameRule(pattern, steps.toArray(new Step[0]));
+	}
+
+	/**
+	 * Returns the rule this device name rule was compiled from
+	 * @return the rule this device name rule was compiled from
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Returns the normalized version of a device name
+	 * @param deviceName - device name as it is listed in the map
+	 * @return the normalized version of the device name
+	 */
+	public String normalize(String deviceName) {
+		String normalizedName;
+		synchronized (normalizedNames) {
+			normalizedName = normalizedNames.get(deviceName);
+		}
+		if (normalizedName == null) {
+			normalizedName = apply(deviceName);
+			synchronized (normalizedNames) {
+				normalizedNames.put(deviceName, normalizedName);
+			}
+		}
+		return normalizedName;
+	}
+
+	/**
+	 * Applies every step of the rule to a device name
+	 * @param deviceName - device name as it is listed in the map
+	 * @return the normalized version of the device name
+	 */
+	private String apply(String deviceName) {
+		char[] name = deviceName.toCharArray();
+		int length = name.length;
+		for (Step step : steps) {
+			boolean startsWithDigit = length > 0 && Character.isDigit(name[0]);
+			switch (step.kind) {
+			case SWAP:
+				if (startsWithDigit && length > 1 && step.triggers.matches(name, length)) {
+					char temp = name[0];
+					name[0] = name[1];
+					name[1] = temp;
+				}
+				break;
+			case FIRST_WORD:
+				for (int i = 0; i < length; i++) {
+					if (name[i] == ' ') {
+						length = i;
+						break;
+					}
+				}
+				break;
+			case MAP:
+				for (int i = 0; i < length; i++) {
+					if (step.characters[name[i]]) {
+						name[i] = step.replacement;
+					}
+				}
+				break;
+			case STRIP:
+				if (length > 0 && step.prefixes.indexOf(name[0]) >= 0) {
+					System.arraycopy(name, 1, name, 0, length - 1);
+					length--;
+				}
+				break;
+			default:
+				if (startsWithDigit && (step.triggers == null || step.triggers.matches(name, length))) {
+					char[] prefixed = new char[length + step.prefixes.length()];
+					step.prefixes.getChars(0, step.prefixes.length(), prefixed, 0);
+					System.arraycopy(name, 0, prefixed, step.prefixes.length(), length);
+					name = prefixed;
+					length = prefixed.length;
+				}
+				break;
+			}
+		}
+		return new String(name, 0, length);
+	}
+
+	/**
+	 * Compiled step of a device name rule
+	 */
+	private static class Step {
+		/** What the step does to the device name */
+		private int kind;
+		/** Text that has to be in the device name for the step to apply */
+		private TriggerMatcher triggers;
+		/** Characters that are replaced, indexed by character */
+		private boolean[] characters;
+		/** Character used as a replacement */
+		private char replacement;
+		/** Characters that are stripped or text that is added to the front */
+		private String prefixes;
+	}
+
+	/**
+	 * Finds whether any of several pieces of text are in a device name with a single pass over the name.
+	 * Each character of the name is only compared against the triggers that start with that character
+	 */
+	private static class TriggerMatcher {
+		/** Triggers grouped by their first character */
+		private final Map<Character, char[][]> triggersByFirstCharacter = new HashMap<Character, char[][]>();
+		/** Whether case is ignored */
+		private final boolean ignoreCase;
+
+		/**
+		 * Compiles the triggers
+		 * @param triggers - text to look for
+		 * @param ignoreCase - whether case is ignored
+		 */
+		private TriggerMatcher(String[] triggers, boolean ignoreCase) {
+			this.ignoreCase = ignoreCase;
+			Map<Character, List<char[]>> grouped = new HashMap<Character, List<char[]>>();
+			for (String trigger : triggers) {
+				if (trigger.equals("")) {
+					continue;
+				}
+				char[] text = (ignoreCase ? trigger.toUpperCase() : trigger).toCharArray();
+				if (!grouped.containsKey(text[0])) {
+					grouped.put(text[0], new ArrayList<char[]>());
+				}
+				grouped.get(text[0]).add(text);
+			}
+			for (Map.Entry<Character, List<char[]>> group : grouped.entrySet()) {
+				triggersByFirstCharacter.put(group.getKey(), group.getValue().toArray(new char[0][]));
+			}
+		}
+
+		/**
+		 * Returns whether any trigger is in the device name
+		 * @param name - characters of the device name
+		 * @param length - number of characters used in the device name
+		 * @return whether any trigger is in the device name
+		 */
+		private boolean matches(char[] name, int length) {
+			for (int i = 0; i < length; i++) {
+				char[][] candidates = triggersByFirstCharacter.get(ignoreCase ? Character.toUpperCase(name[i]) : name[i]);
+				if (candidates == null) {
+					continue;
+				}
+				for (char[] trigger : candidates) {
+					if (i + trigger.length > length) {
+						continue;
+					}
+					int matched = 1;
+					while (matched < trigger.length && (ignoreCase ? Character.toUpperCase(name[i + matched]) : name[i + matched]) == trigger[matched]) {
+						matched++;
+					}
+					if (matched == trigger.length) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -3,7 +3,11 @@
  */
 package mapObjects;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeMap;
 
 import org.apache.poi.ss.usermodel.Cell;
@@ -20,6 +24,10 @@ import ui.DialogBoxUI;
  * @author Hannah Layton
  */
 public class IEDMap {
+	/** Rule used to normalize device names so they match Slave IED Devices in the SCADA map */
+	private static DeviceNameRule deviceNameRule = DeviceNameRule.DATA_MAP_DEVICE;
+	/** Whether loaded IED Maps drop their workbook once the columns have been read out of it */
+	private static boolean compactLoading = false;
 	/** Variable used to manipulate an excel file, in this case an IED Map, with Java */
 	private XSSFWorkbook workbook;
 	/** Full device name listed on IED Map */
@@ -38,8 +46,16 @@ public class IEDMap {
 	private int rtacMarkColumn = -1;
 	/** SCADA mark column in IED Map */
 	private int scadaMarkColumn = -1;
-	/** Relay elements included in IED Map */
+	/** Points of the relay model, shared with every other IED Map listing the same points */
+	private PointTemplate template;
+	/** HMI point names of the points, in the same order as the template */
+	private String[] hmiPointNames;
+	/** Entries for each point, only created when the point is looked up */
+	private IEDMapEntry[] entries;
+	/** Relay elements included in IED Map, only created when all of them are asked for */
 	private TreeMap<String,IEDMapEntry> analogPoints;
+	/** Index used to find relay elements by part of their wordbit, built the first time it is needed */
+	private RelayElementIndex relayElementIndex;
 	
 	/**
 	 * Converts a data map file into an easily manipulatable Java object with helpful attributes
@@ -59,12 +75,24 @@ public class IEDMap {
 
 	/**
 	 * Returns a workbook object representing the data map 
-	 * @return a workbook object representing the data map
+	 * @return a workbook object representing the data map, or null if the IED Map was loaded compactly
 	 */
 	public XSSFWorkbook getIEDMap() {
 		return workbook;
 	}
 
+	/**
+	 * Returns the workbook the data map is read out of
+	 * @return a workbook object representing the data map
+	 * @throws IllegalStateException - if the IED Map was loaded compactly, so it no longer has its workbook
+	 */
+	private XSSFWorkbook requireWorkbook() {
+		if (workbook == null) {
+			throw new IllegalStateException("IED Map " + fullDeviceName + " was loaded compactly, so its workbook can no longer be read.");
+		}
+		return workbook;
+	}
+
 	/**
 	 * Using the data map file stream, a workbook object is created to read the data map as an Excel file in Java
 	 * @param iedName - data map file stream to read from to add helpful attributes to the Java objects
@@ -90,23 +118,85 @@ public class IEDMap {
 	 * Finds the name of the device in the data map & saves it to the Java object
 	 */
 	public void setDeviceName() {
+		String deviceName = findFullDeviceName(requireWorkbook());
+		this.fullDeviceName = deviceName;
+		this.deviceName = deviceNameRule.normalize(deviceName);
+	}
+
+	/**
+	 * Returns the full name of the device listed in a data map workbook
+	 * @param workbook - workbook object representing the data map
+	 * @return the full name of the device listed in the data map
+	 */
+	private static String findFullDeviceName(XSSFWorkbook workbook) {
 		if (workbook.getSheet("Analog Points") == null) {
 			throw new IllegalArgumentException("IED Map does not have Analog Points sheet.");
 		}
 		String deviceName = workbook.getSheet("Analog Points").getRow(2).getCell(3).getStringCellValue();
-		if (deviceName != null && !deviceName.equals("")) {
-			this.fullDeviceName = deviceName;
-			if (deviceName.startsWith("K") || deviceName.startsWith("L")) {
-				this.deviceName = deviceName.substring(1);
-			}
-			else {
-				this.deviceName = deviceName;
-			}
-		}
-		else {
+		if (deviceName == null || deviceName.equals("")) {
 			DialogBoxUI.infoBox("Device Name in IED Map is not in B3.", "");
 			throw new IllegalArgumentException("Device Name in IED Map is not in B3.");
 		}
+		return deviceName;
+	}
+
+	/**
+	 * Reads only the device name of a data map file, streaming the Analog Points sheet up to the device name cell without loading the workbook
+	 * @param iedMapPath - data map file
+	 * @return the device name of the data map, normalized to match Slave IED Devices in the SCADA map
+	 */
+	public static String readDeviceName(File iedMapPath) {
+		String deviceName;
+		try {
+			deviceName = DataMapCellReader.readCell(iedMapPath, "Analog Points", "D3");
+		} catch (IOException | RuntimeException e) {
+			// POI reports a file that is not a workbook with runtime exceptions
+			DialogBoxUI.infoBox("Could not open IED Map " + iedMapPath.getName() + ".", "");
+			throw new IllegalArgumentException("Could not open IED Map " + iedMapPath.getName() + ".", e);
+		}
+		if (deviceName == null) {
+			DialogBoxUI.infoBox("IED Map " + iedMapPath.getName() + " does not have Analog Points sheet.", "");
+			throw new IllegalArgumentException("IED Map " + iedMapPath.getName() + " does not have Analog Points sheet.");
+		}
+		if (deviceName.equals("")) {
+			DialogBoxUI.infoBox("Device Name in IED Map " + iedMapPath.getName() + " is not in B3.", "");
+			throw new IllegalArgumentException("Device Name in IED Map " + iedMapPath.getName() + " is not in B3.");
+		}
+		return deviceNameRule.normalize(deviceName);
+	}
+
+	/**
+	 * Returns the rule used to normalize device names
+	 * @return the rule used to normalize device names
+	 */
+	public static DeviceNameRule getDeviceNameRule() {
+		return deviceNameRule;
+	}
+
+	/**
+	 * Sets the rule used to normalize device names
+	 * @param deviceNameRule - rule used to normalize device names
+	 */
+	public static void setDeviceNameRule(DeviceNameRule deviceNameRule) {
+		IEDMap.deviceNameRule = deviceNameRule;
+	}
+
+	/**
+	 * Returns whether loaded IED Maps drop their workbook once the columns have been read out of it
+	 * @return whether loaded IED Maps drop their workbook once the columns have been read out of it
+	 */
+	public static boolean isCompactLoading() {
+		return compactLoading;
+	}
+
+	/**
+	 * Sets whether loaded IED Maps drop their workbook once the columns have been read out of it.
+	 * Compactly loaded IED Maps only keep the read columns, so none of the workbook's sheets, rows or cells stay in memory,
+	 * & the methods reading the columns out of the workbook again throw an IllegalStateException
+	 * @param compactLoading - whether loaded IED Maps drop their workbook once the columns have been read out of it
+	 */
+	public static void setCompactLoading(boolean compactLoading) {
+		IEDMap.compactLoading = compactLoading;
 	}
 
 	/**
@@ -117,6 +207,24 @@ public class IEDMap {
 		return fullDeviceName;
 	}
 
+	/**
+	 * Returns the relay model of the IED Map, which is listed after the device in the full device name
+	 * @return the relay model, or null if the full device name only lists the device
+	 */
+	public String getRelayModel() {
+		return relayModel(fullDeviceName);
+	}
+
+	/**
+	 * Returns the relay model listed in a full device name, e.g. SEL-487E in "1287TA SEL-487E"
+	 * @param fullDeviceName - full device name listed on an IED Map
+	 * @return the relay model, or null if the full device name only lists the device
+	 */
+	public static String relayModel(String fullDeviceName) {
+		String[] words = fullDeviceName.trim().split("\\s+", 2);
+		return words.length < 2 ? null : words[1];
+	}
+
 	/**
 	 * Returns the column that the wordbits in the data map are contained in
 	 * @return the column that the wordbits in the data map are contained in
@@ -129,7 +237,7 @@ public class IEDMap {
 	 * Finds the column that the wordbits in the data map are contained in & saves it to the Java object
 	 */
 	public void setWordbitColumn() {
-		for (Row row : workbook.getSheet("Analog Points")) {
+		for (Row row : requireWorkbook().getSheet("Analog Points")) {
 			for (Cell cell : row) {
 				if (cell.getCellType() == CellType.NUMERIC) {
 					continue;
@@ -161,7 +269,7 @@ public class IEDMap {
 	 * Finds the column that the HMI point names in the data map are contained in & saves it to the Java object
 	 */
 	public void setHmiPointNameColumn() {
-		for (Row row : workbook.getSheet("Analog Points")) {
+		for (Row row : requireWorkbook().getSheet("Analog Points")) {
 			for (Cell cell : row) {
 				if (cell.getCellType() == CellType.NUMERIC) {
 					continue;
@@ -193,7 +301,7 @@ public class IEDMap {
 	 * Finds the column that the point addresses in the data map are contained in & saves it to the Java object
 	 */
 	public void setPointAddressColumn() {
-		for (Row row : workbook.getSheet("Analog Points")) {
+		for (Row row : requireWorkbook().getSheet("Analog Points")) {
 			for (Cell cell : row) {
 				if (cell.getCellType() == CellType.NUMERIC) {
 					continue;
@@ -225,7 +333,7 @@ public class IEDMap {
 	 * Finds the column that the descriptions in the data map are contained in & saves it to the Java object
 	 */
 	public void setDescriptionColumn() {
-		for (Row row : workbook.getSheet("Analog Points")) {
+		for (Row row : requireWorkbook().getSheet("Analog Points")) {
 			for (Cell cell : row) {
 				if (cell.getCellType() == CellType.NUMERIC) {
 					continue;
@@ -257,7 +365,7 @@ public class IEDMap {
 	 * Finds the RTAC column in the data map are contained in & saves it to the Java object
 	 */
 	public void setRtacMarkColumn() {
-		for (Row row : workbook.getSheet("Analog Points")) {
+		for (Row row : requireWorkbook().getSheet("Analog Points")) {
 			for (Cell cell : row) {
 				if (cell.getCellType() == CellType.NUMERIC) {
 					continue;
@@ -289,7 +397,7 @@ public class IEDMap {
 	 * Finds the SCADA column in the data map are contained in & saves it to the Java object
 	 */
 	public void setScadaMarkColumn() {
-		for (Row row : workbook.getSheet("Analog Points")) {
+		for (Row row : requireWorkbook().getSheet("Analog Points")) {
 			for (Cell cell : row) {
 				if (cell.getCellType() == CellType.NUMERIC) {
 					continue;
@@ -313,16 +421,77 @@ public class IEDMap {
 	 * Returns a tree of entries in the data map
 	 * @return a tree of entries in the data map
 	 */
-	public TreeMap<String, IEDMapEntry> getAnalogPoints() {
+	public synchronized TreeMap<String, IEDMapEntry> getAnalogPoints() {
+		if (analogPoints == null) {
+			TreeMap<String, IEDMapEntry> analogPoints = new TreeMap<String, IEDMapEntry>();
+			for (int row : template.getRowsInWordbitOrder()) {
+				analogPoints.put(template.getWordbit(row), getEntry(row));
+			}
+			this.analogPoints = analogPoints;
+		}
 		return analogPoints;
 	}
 
 	/**
-	 * Adds entries in the data map to a tree map
+	 * Returns the points of the relay model that this IED Map shares with every other IED Map listing the same points
+	 * @return the points of the relay model
+	 */
+	public PointTemplate getTemplate() {
+		return template;
+	}
+
+	/**
+	 * Returns the entry for a point in the data map, creating it the first time it is asked for
+	 * @param row - position of the point in the data map
+	 * @return the entry for the point
+	 */
+	private synchronized IEDMapEntry getEntry(int row) {
+		if (entries[row] == null) {
+			entries[row] = new IEDMapEntry(fullDeviceName, template.getWordbit(row), hmiPointNames[row], "AI", template.getPointAddress(row), template.getDescription(row), template.isMarkedForRTAC(row), template.isMarkedForSCADA(row));
+		}
+		return entries[row];
+	}
+
+	/**
+	 * Returns the index used to find relay elements by part of their wordbit
+	 * @return the index used to find relay elements by part of their wordbit
+	 */
+	public synchronized RelayElementIndex getRelayElementIndex() {
+		if (relayElementIndex == null) {
+			relayElementIndex = new RelayElementIndex(getAnalogPoints());
+		}
+		return relayElementIndex;
+	}
+
+	/**
+	 * Returns the entry in the data map matching a wordbit from the SCADA map
+	 * @param wordbit - wordbit from the SCADA map
+	 * @param match - how the wordbit is matched to the relay elements in the data map
+	 * @return the matching entry, the first by wordbit if several match, or null if there is none
+	 */
+	public IEDMapEntry findEntry(String wordbit, WordbitMatch match) {
+		int row = template.getRow(wordbit);
+		if (row < 0 && match == WordbitMatch.PREFIX) {
+			row = template.getRowStartingWith(wordbit);
+		}
+		if (row >= 0) {
+			return getEntry(row);
+		}
+		return match == WordbitMatch.CONTAINS ? getRelayElementIndex().findFirstContaining(wordbit) : null;
+	}
+
+	/**
+	 * Reads the entries in the data map. The columns shared by every data map of the same relay model are kept in a shared template,
+	 * & only the HMI point names are kept for each data map
 	 */
 	public void setAnalogPoints() {
-		XSSFSheet currentSheet = workbook.getSheet("Analog Points");
-		analogPoints = new TreeMap<String, IEDMapEntry>();
+		XSSFSheet currentSheet = requireWorkbook().getSheet("Analog Points");
+		List<String> wordbits = new ArrayList<String>();
+		List<String> hmiPointNames = new ArrayList<String>();
+		List<String> pointAddresses = new ArrayList<String>();
+		List<String> descriptions = new ArrayList<String>();
+		List<Boolean> rtacMarks = new ArrayList<Boolean>();
+		List<Boolean> scadaMarks = new ArrayList<Boolean>();
 		int row = 5;
 		// Checks if data map is empty of wordbits
 		if (currentSheet != null && currentSheet.getRow(row) != null && currentSheet.getRow(row).getCell(wordbitColumn) != null) {
@@ -344,8 +513,12 @@ public class IEDMap {
 				if (currentSheet.getRow(row).getCell(scadaMarkColumn).getStringCellValue().equals("X")) {
 					scadaMark = true;
 				}
-				IEDMapEntry currentEntry = new IEDMapEntry(fullDeviceName, currentRelayElement, currentSheet.getRow(row).getCell(hmiPointNameColumn).getStringCellValue(), "AI", currentSheet.getRow(row).getCell(pointAddressColumn).getStringCellValue(), currentSheet.getRow(row).getCell(descriptionColumn).getStringCellValue(), rtacMark, scadaMark);
-				analogPoints.put(currentRelayElement, currentEntry);
+				wordbits.add(currentRelayElement);
+				hmiPointNames.add(currentSheet.getRow(row).getCell(hmiPointNameColumn).getStringCellValue());
+				pointAddresses.add(currentSheet.getRow(row).getCell(pointAddressColumn).getStringCellValue());
+				descriptions.add(currentSheet.getRow(row).getCell(descriptionColumn).getStringCellValue());
+				rtacMarks.add(rtacMark);
+				scadaMarks.add(scadaMark);
 				row++;
 				// If this was the last entry in the data map, the loop can end
 				if (row > currentSheet.getLastRowNum() || currentSheet.getRow(row) == null || currentSheet.getRow(row).getCell(wordbitColumn) == null) {
@@ -363,11 +536,24 @@ public class IEDMap {
 			DialogBoxUI.infoBox("IED Map could not be read.", "");
 			throw new IllegalArgumentException("IED Map could not be read.");
 		}
+		// Data maps for the same relay model share one template
+		boolean[] rtacMarkColumn = new boolean[rtacMarks.size()];
+		boolean[] scadaMarkColumn = new boolean[scadaMarks.size()];
+		for (int i = 0; i < rtacMarkColumn.length; i++) {
+			rtacMarkColumn[i] = rtacMarks.get(i);
+			scadaMarkColumn[i] = scadaMarks.get(i);
+		}
+		this.template = PointTemplate.intern(wordbits.toArray(new String[0]), pointAddresses.toArray(new String[0]), descriptions.toArray(new String[0]), rtacMarkColumn, scadaMarkColumn);
+		this.hmiPointNames = hmiPointNames.toArray(new String[0]);
+		this.entries = new IEDMapEntry[this.hmiPointNames.length];
 		try {
 			workbook.close();
 		} catch (Exception e) {
 			DialogBoxUI.infoBox("IED Map failed to close.", "");
 			throw new IllegalArgumentException("IED Map failed to close.");
 		}
+		if (compactLoading) {
+			this.workbook = null;
+		}
 	}
 }
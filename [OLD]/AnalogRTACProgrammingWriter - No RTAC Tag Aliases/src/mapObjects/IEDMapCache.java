@@ -0,0 +1,368 @@
+package mapObjects;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import ui.DialogBoxUI;
+
+/**
+ * Data maps loaded earlier in the session, so the folder of data maps is not read again for every SCADA map of a station
+ * or for neighbouring stations that share devices. A data map is kept under its file & reused while the file is the same file
+ * with the same size & time it was last changed. The least recently used data maps are dropped once the estimated bytes
+ * of the kept data maps go over the budget. Several jobs can use the cache at once, & a data map being loaded by one job is
+ * waited for by the others instead of loaded again
+ * @author Hannah Layton
+ */
+public class IEDMapCache {
+	/** Times larger a data map is in the heap than its file on disk when none is given */
+	public static final int DEFAULT_HEAP_FACTOR = 40;
+
+	/** Cache shared by every job in the session */
+	private static IEDMapCache sessionCache = new IEDMapCache(Runtime.getRuntime().maxMemory() / 4, DEFAULT_HEAP_FACTOR);
+
+	/** Kept data maps by canonical path, least recently used first */
+	private final LinkedHashMap<String, CachedMap> cachedMaps = new LinkedHashMap<String, CachedMap>(16, 0.75f, true);
+	/** Data maps being loaded by canonical path */
+	private final Map<String, Loading> loadingMaps = new HashMap<String, Loading>();
+	/** Times larger a data map is in the heap than its file on disk */
+	private final int heapFactor;
+	/** Estimated bytes the kept data maps may use */
+	private long maxBytes;
+	/** Estimated bytes the kept data maps use */
+	private long usedBytes;
+	/** Number of data maps that did not have to be loaded */
+	private long hits;
+	/** Number of data maps that had to be loaded */
+	private long misses;
+	/** Number of data maps dropped to stay within the budget */
+	private long evictions;
+
+	/**
+	 * Creates an empty cache
+	 * @param maxBytes - estimated bytes the kept data maps may use, 0 to keep none
+	 * @param heapFactor - times larger a data map is in the heap than its file on disk
+	 */
+	public IEDMapCache(long maxBytes, int heapFactor) {
+		this.maxBytes = maxBytes;
+		this.heapFactor = heapFactor;
+	}
+
+	/**
+	 * Returns the cache shared by every job in the session
+	 * @return the cache shared by every job in the session
+	 */
+	public static synchronized IEDMapCache getSessionCache() {
+		return sessionCache;
+	}
+
+	/**
+	 * Replaces the cache shared by every job in the session
+	 * @param cache - cache shared by every job in the session
+	 */
+	public static synchronized void setSessionCache(IEDMapCache cache) {
+		sessionCache = cache;
+	}
+
+	/**
+	 * Returns every data map in a folder, loading only the ones not already kept
+	 * @param iedMapFolderPath - folder of data maps
+	 * @return TreeMap of the data maps by device name
+	 * @throws IOException - if a data map file could not be checked
+	 */
+	public TreeMap<String, IEDMap> loadFolder(File iedMapFolderPath) throws IOException {
+		File[] files = iedMapFolderPath.listFiles();
+		if (files == null) {
+			DialogBoxUI.infoBox("Folder of IED Maps " + iedMapFolderPath + " could not be found.", "");
+			throw new IllegalArgumentException("Folder of IED Maps " + iedMapFolderPath + " could not be found.");
+		}
+		TreeMap<String, IEDMap> iedMaps = new TreeMap<String, IEDMap>();
+		for (File iedMapPath : files) {
+			if (IEDMapCatalog.isDataMap(iedMapPath)) {
+				IEDMap iedMap = load(iedMapPath);
+				iedMaps.put(iedMap.getDeviceName(), iedMap);
+			}
+		}
+		return iedMaps;
+	}
+
+	/**
+	 * Returns a data map, loading it only if it is not already kept or its file changed
+	 * @param iedMapPath - data map file
+	 * @return the data map
+	 * @throws IOException - if the data map file could not be checked
+	 */
+	public IEDMap load(final File iedMapPath) throws IOException {
+		String path = iedMapPath.getCanonicalPath();
+		FileIdentity identity = new FileIdentity(iedMapPath);
+		Loading loading;
+		boolean loader = false;
+		synchronized (this) {
+			CachedMap cached = cachedMaps.get(path);
+			if (cached != null && cached.identity.equals(identity)) {
+				hits++;
+				return cached.iedMap;
+			}
+			if (cached != null) {
+				cachedMaps.remove(path);
+				usedBytes -= cached.bytes;
+			}
+			loading = loadingMaps.get(path);
+			// A load of an older version of the file is not waited for
+			if (loading == null || !loading.identity.equals(identity)) {
+				loading = new Loading(identity, new FutureTask<IEDMap>(new Callable<IEDMap>() {
+					@Override
+					public IEDMap call() {
+						return IEDMapCatalog.load(iedMapPath);
+					}
+				}));
+				loadingMaps.put(path, loading);
+				loader = true;
+				misses++;
+			}
+			else {
+				hits++;
+			}
+		}
+		if (loader) {
+			loading.task.run();
+		}
+		IEDMap iedMap;
+		try {
+			iedMap = getUninterruptibly(loading.task);
+		}
+		finally {
+			if (loader) {
+				synchronized (this) {
+					if (loadingMaps.get(path) == loading) {
+						loadingMaps.remove(path);
+					}
+				}
+			}
+		}
+		if (loader) {
+			keep(path, new CachedMap(identity, iedMap, identity.size * heapFactor));
+		}
+		return iedMap;
+	}
+
+	/**
+	 * Keeps a loaded data map, dropping the least recently used data maps while the kept data maps are over the budget
+	 * @param path - canonical path of the data map file
+	 * @param cached - loaded data map
+	 */
+	private synchronized void keep(String path, CachedMap cached) {
+		CachedMap replaced = cachedMaps.put(path, cached);
+		if (replaced != null) {
+			usedBytes -= replaced.bytes;
+		}
+		usedBytes += cached.bytes;
+		trim();
+	}
+
+	/**
+	 * Drops the least recently used data maps until the kept data maps are within the budget
+	 */
+	private void trim() {
+		for (Iterator<CachedMap> leastRecentlyUsed = cachedMaps.values().iterator(); usedBytes > maxBytes && leastRecentlyUsed.hasNext();) {
+			usedBytes -= leastRecentlyUsed.next().bytes;
+			leastRecentlyUsed.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns what a load returned, waiting for it to finish
+	 * @param task - load of a data map
+	 * @return the data map
+	 */
+	private static IEDMap getUninterruptibly(FutureTask<IEDMap> task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// The loader already reported the error, so the jobs that waited for it get the same exception
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw new IllegalArgumentException(e.getCause());
+				}
+			}
+		}
+		finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Returns the estimated bytes the kept data maps may use
+	 * @return the estimated bytes the kept data maps may use
+	 */
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Changes the estimated bytes the kept data maps may use, dropping data maps if they are now over it
+	 * @param maxBytes - estimated bytes the kept data maps may use, 0 to keep none
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		trim();
+	}
+
+	/**
+	 * Drops every kept data map, keeping the statistics
+	 */
+	public synchronized void clear() {
+		cachedMaps.clear();
+		usedBytes = 0;
+	}
+
+	/**
+	 * Returns the number of data maps that did not have to be loaded, including ones that were waited for while another job loaded them
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of data maps that had to be loaded
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of data maps dropped to stay within the budget
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the estimated bytes the kept data maps use
+	 * @return the estimated bytes the kept data maps use
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * Returns the number of kept data maps
+	 * @return the number of kept data maps
+	 */
+	public synchronized int size() {
+		return cachedMaps.size();
+	}
+
+	/**
+	 * Returns the hits, misses & evictions of the cache & how full it is
+	 * @return the statistics of the cache
+	 */
+	public synchronized String getStatistics() {
+		long lookups = hits + misses;
+		return String.format("IED Map cache: %d hits, %d misses (%.0f%% hit rate), %d evictions, %d data maps kept using %d of %d MB", hits, misses,
+				lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions, cachedMaps.size(), usedBytes / 1024 / 1024, maxBytes / 1024 / 1024);
+	}
+
+	/**
+	 * Which version of a file was read, so a data map is not reused once its file is replaced or changed
+	 */
+	private static class FileIdentity {
+		/** Key the file system identifies the file by, or null if it has none */
+		private final Object fileKey;
+		/** Time the file was last changed in milliseconds */
+		private final long modified;
+		/** Size of the file in bytes */
+		private final long size;
+
+		/**
+		 * Reads which version of a file is on disk
+		 * @param file - file to read
+		 * @throws IOException - if the file could not be checked
+		 */
+		private FileIdentity(File file) throws IOException {
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			this.fileKey = attributes.fileKey();
+			this.modified = attributes.lastModifiedTime().toMillis();
+			this.size = attributes.size();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof FileIdentity)) {
+				return false;
+			}
+			FileIdentity identity = (FileIdentity) other;
+			return modified == identity.modified && size == identity.size && (fileKey == null ? identity.fileKey == null : fileKey.equals(identity.fileKey));
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (modified ^ (modified >>> 32)) * 31 + (int) size;
+		}
+	}
+
+	/**
+	 * A kept data map
+	 */
+	private static class CachedMap {
+		/** Version of the file the data map was loaded from */
+		private final FileIdentity identity;
+		/** Loaded data map */
+		private final IEDMap iedMap;
+		/** Estimated bytes the data map uses */
+		private final long bytes;
+
+		/**
+		 * Creates a kept data map
+		 * @param identity - version of the file the data map was loaded from
+		 * @param iedMap - loaded data map
+		 * @param bytes - estimated bytes the data map uses
+		 */
+		private CachedMap(FileIdentity identity, IEDMap iedMap, long bytes) {
+			this.identity = identity;
+			this.iedMap = iedMap;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * A data map being loaded, which other jobs asking for the same version of the file wait for
+	 */
+	private static class Loading {
+		/** Version of the file being loaded */
+		private final FileIdentity identity;
+		/** Load of the data map */
+		private final FutureTask<IEDMap> task;
+
+		/**
+		 * Creates a data map being loaded
+		 * @param identity - version of the file being loaded
+		 * @param task - load of the data map
+		 */
+		private Loading(FileIdentity identity, FutureTask<IEDMap> task) {
+			this.identity = identity;
+			this.task = task;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package mapObjects;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import ui.DialogBoxUI;
+
+/**
+ * The data maps in a folder, listed by device name, that are only loaded while the SCADA map still needs them.
+ * The SCADA entries referencing each device are counted first, a data map is loaded the first time one of its entries
+ * is written & released once its last entry has been written
+ * @author Hannah Layton
+ */
+public class IEDMapCatalog {
+	/** Data map file for each device name */
+	private final TreeMap<String, File> dataMapFiles = new TreeMap<String, File>();
+	/** Number of SCADA entries still to be written for each device name */
+	private final Map<String, Integer> references = new HashMap<String, Integer>();
+	/** Data maps that are currently loaded */
+	private final Map<String, IEDMap> loadedMaps = new HashMap<String, IEDMap>();
+	/** Largest number of data maps that were loaded at the same time */
+	private int peakLoadedMaps;
+
+	/**
+	 * Lists the data maps in a folder by device name without keeping any of them loaded
+	 * @param iedMapFolder - folder of data maps
+	 */
+	public IEDMapCatalog(File iedMapFolder) {
+		for (File iedMapPath : iedMapFolder.listFiles()) {
+			if (!isDataMap(iedMapPath)) {
+				continue;
+			}
+			dataMapFiles.put(IEDMap.readDeviceName(iedMapPath), iedMapPath);
+		}
+	}
+
+	/**
+	 * Returns whether a file is a data map
+	 * @param iedMapPath - file to check
+	 * @return whether the file is a data map
+	 */
+	public static boolean isDataMap(File iedMapPath) {
+		return iedMapPath.getName().toLowerCase().contains(".xlsx") && iedMapPath.getName().contains("Data_Map");
+	}
+
+	/**
+	 * Loads a data map file
+	 * @param iedMapPath - data map file
+	 * @return the loaded data map
+	 */
+	public static IEDMap load(File iedMapPath) {
+		try (FileInputStream iedStream = new FileInputStream(iedMapPath)) {
+			return new IEDMap(iedStream);
+		} catch (IOException e) {
+			DialogBoxUI.infoBox("Could not open IED Map " + iedMapPath.getName() + ".", "");
+			throw new IllegalArgumentException("Could not open IED Map " + iedMapPath.getName() + ".");
+		}
+	}
+
+	/**
+	 * Returns the device names that have a data map
+	 * @return the device names that have a data map
+	 */
+	public Set<String> getDeviceNames() {
+		return dataMapFiles.keySet();
+	}
+
+	/**
+	 * Returns the data map file for a device
+	 * @param deviceName - device name of the data map
+	 * @return the data map file for the device, or null if there is none
+	 */
+	public File getDataMapFile(String deviceName) {
+		return dataMapFiles.get(deviceName);
+	}
+
+	/**
+	 * Counts the SCADA entries referencing each device, which decides when each data map can be released
+	 * @param scadaEntries - every SCADA entry that will be written
+	 */
+	public void countReferences(Collection<SCADAEntry> scadaEntries) {
+		for (SCADAEntry scadaEntry : scadaEntries) {
+			Integer count = references.get(scadaEntry.getSlaveIEDDevice());
+			references.put(scadaEntry.getSlaveIEDDevice(), count == null ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 * Counts SCADA entries that were already counted by device, which decides when each data map can be released
+	 * @param entriesByDevice - number of SCADA entries that will be written for each device name
+	 */
+	public void countReferences(Map<String, Integer> entriesByDevice) {
+		for (Map.Entry<String, Integer> device : entriesByDevice.entrySet()) {
+			Integer count = references.get(device.getKey());
+			references.put(device.getKey(), count == null ? device.getValue() : count + device.getValue());
+		}
+	}
+
+	/**
+	 * Returns whether SCADA entries referencing a device are left to write
+	 * @param deviceName - device name to check
+	 * @return whether SCADA entries referencing the device are left to write
+	 */
+	public boolean isReferenced(String deviceName) {
+		return references.containsKey(deviceName);
+	}
+
+	/**
+	 * Returns the data map for a device, loading it if it is not loaded yet
+	 * @param deviceName - device name of the data map
+	 * @return the data map for the device, or null if the device has no data map
+	 */
+	public IEDMap acquire(String deviceName) {
+		IEDMap iedMap = loadedMaps.get(deviceName);
+		if (iedMap == null && dataMapFiles.containsKey(deviceName)) {
+			iedMap = load(dataMapFiles.get(deviceName));
+			loadedMaps.put(deviceName, iedMap);
+			peakLoadedMaps = Math.max(peakLoadedMaps, loadedMaps.size());
+		}
+		return iedMap;
+	}
+
+	/**
+	 * Marks one SCADA entry of a device as written, releasing the data map once none of the device's entries are left
+	 * @param deviceName - device name of the written SCADA entry
+	 */
+	public void release(String deviceName) {
+		Integer count = references.get(deviceName);
+		if (count == null || count <= 1) {
+			references.remove(deviceName);
+			loadedMaps.remove(deviceName);
+		}
+		else {
+			references.put(deviceName, count - 1);
+		}
+	}
+
+	/**
+	 * Returns the number of data maps that are currently loaded
+	 * @return the number of data maps that are currently loaded
+	 */
+	public int getLoadedCount() {
+		return loadedMaps.size();
+	}
+
+	/**
+	 * Returns the largest number of data maps that were loaded at the same time
+	 * @return the largest number of data maps that were loaded at the same time
+	 */
+	public int getPeakLoadedCount() {
+		return peakLoadedMaps;
+	}
+}
@@ -5,6 +5,8 @@ package mapObjects;
  * @author Hannah Layton
  */
 public class IEDMapEntry {
+	/** Naming convention used to create RTAC point names */
+	private static RtacNameRule rtacNameRule = RtacNameRule.STANDARD;
 	/** Device Name */
 	private String deviceName;
 	/** Relay Element word bit */
@@ -21,8 +23,8 @@ public class IEDMapEntry {
 	private boolean markedForRTAC;
 	/** Marked for SCADA */
 	private boolean markedForSCADA;
-	/** RTAC Point Name */
-	private String rtacPointName = "";
+	/** RTAC Point Name, created the first time it is asked for */
+	private String rtacPointName;
 	
 	/**
 	 * Object that is representative of an entry in a data map
@@ -44,7 +46,6 @@ public class IEDMapEntry {
 		setDescription(description);
 		setMarkedForRTAC(rtacMark);
 		setMarkedForSCADA(scadaMark);
-		setRtacPointName();
 	}
 
 	/**
@@ -60,17 +61,8 @@ public class IEDMapEntry {
 	 * @param deviceName - the name of the device listed in the data map without modifications
 	 */
 	public void setDeviceName(String deviceName) {
-		if ((deviceName.contains("87TA") || deviceName.contains("74TA") || deviceName.contains("51TA") || deviceName.contains("90TA")) && Character.isDigit(deviceName.charAt(0))) {
-			char[] c = deviceName.toCharArray();
-			char temp = c[0];
-			c[0] = c[1];
-			c[1] = temp;
-			this.deviceName = new String(c);
-		}
-		else {
-			this.deviceName = deviceName;
-		}
-		this.deviceName = this.deviceName.split(" ")[0];
+		this.deviceName = DeviceNameRule.DATA_MAP_ENTRY_DEVICE.normalize(deviceName);
+		this.rtacPointName = null;
 	}
 
 	/**
@@ -103,6 +95,7 @@ public class IEDMapEntry {
 	 */
 	public void setHmiPointName(String hmiPointName) {
 		this.hmiPointName = hmiPointName;
+		this.rtacPointName = null;
 	}
 
 	/**
@@ -119,6 +112,7 @@ public class IEDMapEntry {
 	 */
 	public void setPointType(String pointType) {
 		this.pointType = pointType;
+		this.rtacPointName = null;
 	}
 
 	/**
@@ -135,6 +129,7 @@ public class IEDMapEntry {
 	 */
 	public void setPointAddress(String pointAddress) {
 		this.pointAddress = pointAddress;
+		this.rtacPointName = null;
 	}
 
 	/**
@@ -183,13 +178,18 @@ public class IEDMapEntry {
 	 */
 	public void setMarkedForSCADA(boolean markedForSCADA) {
 		this.markedForSCADA = markedForSCADA;
+		this.rtacPointName = null;
 	}
 
 	/**
-	 * Returns the formulated RTAC point name that is created using other attributes in the data map entry
+	 * Returns the formulated RTAC point name that is created using other attributes in the data map entry.
+	 * The name is only created the first time it is asked for, so entries the SCADA map never references are never named
 	 * @return the formulated RTAC point name that is created using other attributes in the data map entry
 	 */
 	public String getRtacPointName() {
+		if (rtacPointName == null) {
+			setRtacPointName();
+		}
 		return rtacPointName;
 	}
 
@@ -198,32 +198,28 @@ public class IEDMapEntry {
 	 */
 	public void setRtacPointName() {
 		if (markedForSCADA) {
-			StringBuilder pointName = new StringBuilder();
-			// Adds first half of the RTAC point name including device name and point type (AI)
-			pointName.append(getDeviceName()).append("_DNP.").append(pointType).append("_");
-			// Adds point address to RTAC point name to get index
+			// Index is the last part of the point address
 			Integer index = Integer.valueOf(getPointAddress().substring(getPointAddress().lastIndexOf(".") + 1));
-			if (index < 10) {
-				pointName.append("0000").append(index);
-			}
-			else if (index < 100) {
-				pointName.append("000").append(index);
-			}
-			else if (index < 1000) {
-				pointName.append("00").append(index);
-			}
-			else if (index < 10000) {
-				pointName.append("0").append(index);
-			}
-			else {
-				pointName.append(index);
-			}
-			pointName.append("_");
-			// Adds the last half of the RTAC point name using the HMI point name
-			String endOfPointName = getHmiPointName().split(getDeviceName().split("_")[getDeviceName().split("_").length - 1])[getHmiPointName().split(getDeviceName().split("_")[getDeviceName().split("_").length - 1]).length - 1];
-			endOfPointName = endOfPointName.substring(1).replace(".", "_");
-			pointName.append(endOfPointName);
-			this.rtacPointName = pointName.toString();
+			this.rtacPointName = rtacNameRule.build(getDeviceName(), pointType, index, getHmiPointName());
 		}
+		else {
+			this.rtacPointName = "";
+		}
+	}
+
+	/**
+	 * Returns the naming convention used to create RTAC point names
+	 * @return the naming convention used to create RTAC point names
+	 */
+	public static RtacNameRule getRtacNameRule() {
+		return rtacNameRule;
+	}
+
+	/**
+	 * Sets the naming convention used to create RTAC point names for every data map entry
+	 * @param rtacNameRule - naming convention used to create RTAC point names
+	 */
+	public static void setRtacNameRule(RtacNameRule rtacNameRule) {
+		IEDMapEntry.rtacNameRule = rtacNameRule;
 	}
 }
@@ -0,0 +1,209 @@
+package mapObjects;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * The points of a relay model as they are listed in a data map (wordbit, point address, description & marks), without anything specific to a device.
+ * Data maps for the same relay model list the same points, so every data map with the same points shares one template
+ * instead of keeping its own copy. Templates are only held weakly, so a template is dropped once no loaded data map uses it
+ * @author Hannah Layton
+ */
+public class PointTemplate {
+	/** Every template used by a loaded data map, saved by itself so a data map with the same points can find it */
+	private static final Map<PointTemplate, WeakReference<PointTemplate>> templates = new WeakHashMap<PointTemplate, WeakReference<PointTemplate>>();
+
+	/** Wordbits of the points, in the order they are listed in the data map */
+	private final String[] wordbits;
+	/** Point addresses of the points */
+	private final String[] pointAddresses;
+	/** Descriptions of the points */
+	private final String[] descriptions;
+	/** Whether each point is marked for RTAC */
+	private final boolean[] rtacMarks;
+	/** Whether each point is marked for SCADA */
+	private final boolean[] scadaMarks;
+	/** Hash of every column of the template */
+	private final int hash;
+	/** Row of each wordbit, sorted by wordbit. A wordbit listed more than once uses its last row */
+	private TreeMap<String, Integer> rowsByWordbit;
+
+	/**
+	 * Creates a template out of the columns of a data map
+	 * @param wordbits - wordbits of the points
+	 * @param pointAddresses - point addresses of the points
+	 * @param descriptions - descriptions of the points
+	 * @param rtacMarks - whether each point is marked for RTAC
+	 * @param scadaMarks - whether each point is marked for SCADA
+	 */
+	private PointTemplate(String[] wordbits, String[] pointAddresses, String[] descriptions, boolean[] rtacMarks, boolean[] scadaMarks) {
+		this.wordbits = wordbits;
+		this.pointAddresses = pointAddresses;
+		this.descriptions = descriptions;
+		this.rtacMarks = rtacMarks;
+		this.scadaMarks = scadaMarks;
+		int hash = Arrays.hashCode(wordbits);
+		hash = 31 * hash + Arrays.hashCode(pointAddresses);
+		hash = 31 * hash + Arrays.hashCode(descriptions);
+		hash = 31 * hash + Arrays.hashCode(rtacMarks);
+		hash = 31 * hash + Arrays.hashCode(scadaMarks);
+		this.hash = hash;
+	}
+
+	/**
+	 * Returns the shared template for the columns of a data map, creating it if no data map with the same points has been loaded yet
+	 * @param wordbits - wordbits of the points
+	 * @param pointAddresses - point addresses of the points
+	 * @param descriptions - descriptions of the points
+	 * @param rtacMarks - whether each point is marked for RTAC
+	 * @param scadaMarks - whether each point is marked for SCADA
+	 * @return the shared template for the columns
+	 */
+	public static PointTemplate intern(String[] wordbits, String[] pointAddresses, String[] descriptions, boolean[] rtacMarks, boolean[] scadaMarks) {
+		PointTemplate template = new PointTemplate(wordbits, pointAddresses, descriptions, rtacMarks, scadaMarks);
+		synchronized (templates) {
+			WeakReference<PointTemplate> reference = templates.get(template);
+			PointTemplate shared = reference == null ? null : reference.get();
+			if (shared != null) {
+				return shared;
+			}
+			templates.put(template, new WeakReference<PointTemplate>(template));
+			return template;
+		}
+	}
+
+	/**
+	 * Returns the number of different templates used by loaded data maps. Templates of data maps that are no longer used
+	 * are only left out once they have been garbage collected
+	 * @return the number of different templates used by loaded data maps
+	 */
+	public static int getTemplateCount() {
+		synchronized (templates) {
+			return templates.size();
+		}
+	}
+
+	/**
+	 * Forgets every loaded template, data maps that are already loaded keep theirs
+	 */
+	public static void clearTemplates() {
+		synchronized (templates) {
+			templates.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of points in the template
+	 * @return the number of points in the template
+	 */
+	public int size() {
+		return wordbits.length;
+	}
+
+	/**
+	 * Returns the wordbit of a point
+	 * @param row - position of the point in the data map
+	 * @return the wordbit of the point
+	 */
+	public String getWordbit(int row) {
+		return wordbits[row];
+	}
+
+	/**
+	 * Returns the point address of a point
+	 * @param row - position of the point in the data map
+	 * @return the point address of the point
+	 */
+	public String getPointAddress(int row) {
+		return pointAddresses[row];
+	}
+
+	/**
+	 * Returns the description of a point
+	 * @param row - position of the point in the data map
+	 * @return the description of the point
+	 */
+	public String getDescription(int row) {
+		return descriptions[row];
+	}
+
+	/**
+	 * Returns whether a point is marked for RTAC
+	 * @param row - position of the point in the data map
+	 * @return whether the point is marked for RTAC
+	 */
+	public boolean isMarkedForRTAC(int row) {
+		return rtacMarks[row];
+	}
+
+	/**
+	 * Returns whether a point is marked for SCADA
+	 * @param row - position of the point in the data map
+	 * @return whether the point is marked for SCADA
+	 */
+	public boolean isMarkedForSCADA(int row) {
+		return scadaMarks[row];
+	}
+
+	/**
+	 * Returns the rows of every wordbit, sorted by wordbit. They are only sorted the first time they are needed
+	 * @return the rows of every wordbit, sorted by wordbit
+	 */
+	private synchronized TreeMap<String, Integer> getRowsByWordbit() {
+		if (rowsByWordbit == null) {
+			rowsByWordbit = new TreeMap<String, Integer>();
+			for (int row = 0; row < wordbits.length; row++) {
+				rowsByWordbit.put(wordbits[row], row);
+			}
+		}
+		return rowsByWordbit;
+	}
+
+	/**
+	 * Returns the row of a wordbit
+	 * @param wordbit - wordbit to look for
+	 * @return the row of the wordbit, or -1 if the template does not have it
+	 */
+	public int getRow(String wordbit) {
+		Integer row = getRowsByWordbit().get(wordbit);
+		return row == null ? -1 : row;
+	}
+
+	/**
+	 * Returns the row of the first wordbit, by wordbit, that starts with the given text
+	 * @param prefix - text the wordbit starts with
+	 * @return the row of the first wordbit starting with the text, or -1 if the template does not have one
+	 */
+	public int getRowStartingWith(String prefix) {
+		Map.Entry<String, Integer> first = getRowsByWordbit().ceilingEntry(prefix);
+		return first != null && first.getKey().startsWith(prefix) ? first.getValue() : -1;
+	}
+
+	/**
+	 * Returns the rows of every wordbit in wordbit order, using the last row of wordbits listed more than once
+	 * @return the rows of every wordbit in wordbit order
+	 */
+	public Iterable<Integer> getRowsInWordbitOrder() {
+		return getRowsByWordbit().values();
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PointTemplate)) {
+			return false;
+		}
+		PointTemplate other = (PointTemplate) obj;
+		return hash == other.hash && Arrays.equals(wordbits, other.wordbits) && Arrays.equals(pointAddresses, other.pointAddresses) && Arrays.equals(descriptions, other.descriptions) && Arrays.equals(rtacMarks, other.rtacMarks) && Arrays.equals(scadaMarks, other.scadaMarks);
+	}
+}
@@ -0,0 +1,338 @@
+package mapObjects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ui.DialogBoxUI;
+
+/**
+ * A naming convention for RTAC point names that is compiled once & then reused for every data map entry.
+ * The rule is written as literal text with slots in braces:
+ * <ul>
+ * <li>{device} - name of the device listed in the data map</li>
+ * <li>{type} - type of the data map point (AI, BO, ...)</li>
+ * <li>{index:5} - DNP index of the data map entry, zero-padded to the given number of digits</li>
+ * <li>{hmi} - HMI point name of the data map entry, which can be followed by a capture & replacements:
+ * <ul>
+ * <li>&gt;last+1 - only keeps what follows the last occurrence of the last "_" segment of the device name, skipping 1 character</li>
+ * <li>&gt;device - only keeps what follows the first occurrence of the device name</li>
+ * <li>|.=_ - replaces every "." with "_" (any number of replacements can be listed)</li>
+ * </ul>
+ * </li>
+ * </ul>
+ * Names are built into a reused buffer without any regular expressions or splitting
+ * @author Hannah Layton
+ */
+public class RtacNameRule {
+	/** Segment that is copied as-is */
+	private static final int LITERAL = 0;
+	/** Segment filled with the device name */
+	private static final int DEVICE = 1;
+	/** Segment filled with the point type */
+	private static final int TYPE = 2;
+	/** Segment filled with the zero-padded DNP index */
+	private static final int INDEX = 3;
+	/** Segment filled with (part of) the HMI point name */
+	private static final int HMI = 4;
+	/** HMI capture that keeps the whole HMI point name */
+	private static final int WHOLE = 0;
+	/** HMI capture that keeps what follows the last occurrence of the last "_" segment of the device name */
+	private static final int AFTER_LAST_SEGMENT = 1;
+	/** HMI capture that keeps what follows the first occurrence of the device name */
+	private static final int AFTER_DEVICE = 2;
+
+	/** Naming convention used by the Java writers, e.g. DEVICE_DNP.AI_00012_ followed by the end of the HMI point name */
+	public static final RtacNameRule STANDARD = compile("{device}_DNP.{type}_{index:5}_{hmi>last+1|.=_}");
+	/** Naming convention used by BORTACWriter.py, e.g. DEVICE_DNP.BO_00012 followed by the HMI point name after the device name */
+	public static final RtacNameRule HMI_AFTER_DEVICE = compile("{device}_DNP.{type}_{index:5}{hmi>device|.=_}");
+
+	/** Rule the segments were compiled from */
+	private final String pattern;
+	/** Compiled segments of the rule in the order they are written */
+	private final Segment[] segments;
+	/** Buffer reused to build names, one per thread */
+	private final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(StringBuilder::new);
+
+	/**
+	 * Creates a naming rule out of already compiled segments
+	 * @param pattern - rule the segments were compiled from
+	 * @param segments - compiled segments of the rule
+	 */
+	private RtacNameRule(String pattern, Segment[] segments) {
+		this.pattern = pattern;
+		this.segments = segments;
+	}
+
+	/**
+	 * Returns one of the built-in naming rules by name (STANDARD or HMI_AFTER_DEVICE), or compiles the given rule
+	 * @param rule - name of a built-in naming rule or a rule to compile
+	 * @return the matching naming rule
+	 */
+	public static RtacNameRule forName(String rule) {
+		if (rule.equalsIgnoreCase("STANDARD")) {
+			return STANDARD;
+		}
+		else if (rule.equalsIgnoreCase("HMI_AFTER_DEVICE")) {
+			return HMI_AFTER_DEVICE;
+		}
+		return compile(rule);
+	}
+
+	/**
+	 * Compiles a naming rule so it can be reused for every data map entry
+	 * @param pattern - naming rule to compile
+	 * @return the compiled naming rule
+	 */
+	public static RtacNameRule compile(String pattern) {
+		List<Segment> segments = new ArrayList<Segment>();
+		StringBuilder literal = new StringBuilder();
+		int position = 0;
+		while (position < pattern.length()) {
+			char c = pattern.charAt(position);
+			if (c == '}') {
+				invalidRule(pattern, "unexpected } at position " + position);
+			}
+			if (c != '{') {
+				literal.append(c);
+				position++;
+				continue;
+			}
+			int end = pattern.indexOf('}', position);
+			if (end < 0) {
+				invalidRule(pattern, "missing } for slot at position " + position);
+			}
+			// Literal text before a slot becomes its own segment
+			if (literal.length() > 0) {
+				segments.add(new Segment(LITERAL, literal.toString()));
+				literal.setLength(0);
+			}
+			segments.add(compileSlot(pattern, pattern.substring(position + 1, end)));
+			position = end + 1;
+		}
+		if (literal.length() > 0) {
+			segments.add(new Segment(LITERAL, literal.toString()));
+		}
+		return new RtacNameRule(pattern, segments.toArray(new Segment[0]));
+	}
+
+	/**
+	 * Compiles a single slot of a naming rule
+	 * @param pattern - naming rule the slot belongs to
+	 * @param slot - text inside the braces of the slot
+	 * @return the compiled segment for the slot
+	 */
+	private static Segment compileSlot(String pattern, String slot) {
+		if (slot.equals("device")) {
+			return new Segment(DEVICE, null);
+		}
+		else if (slot.equals("type")) {
+			return new Segment(TYPE, null);
+		}
+		else if (slot.startsWith("index")) {
+			Segment segment = new Segment(INDEX, null);
+			if (slot.startsWith("index:")) {
+				segment.width = parseNumber(pattern, slot.substring(6));
+			}
+			else if (!slot.equals("index")) {
+				invalidRule(pattern, "unknown slot {" + slot + "}");
+			}
+			return segment;
+		}
+		else if (slot.startsWith("hmi")) {
+			Segment segment = new Segment(HMI, null);
+			String[] modifiers = slot.substring(3).split("\\|", -1);
+			// The capture comes directly after "hmi", replacements follow each "|"
+			String capture = modifiers[0];
+			if (!capture.equals("")) {
+				if (!capture.startsWith(">")) {
+					invalidRule(pattern, "unknown slot {" + slot + "}");
+				}
+				String anchor = capture.substring(1);
+				int plus = anchor.indexOf('+');
+				if (plus >= 0) {
+					segment.skip = parseNumber(pattern, anchor.substring(plus + 1));
+					anchor = anchor.substring(0, plus);
+				}
+				if (anchor.equals("last")) {
+					segment.capture = AFTER_LAST_SEGMENT;
+				}
+				else if (anchor.equals("device")) {
+					segment.capture = AFTER_DEVICE;
+				}
+				else {
+					invalidRule(pattern, "unknown HMI capture " + capture);
+				}
+			}
+			segment.from = new char[modifiers.length - 1];
+			segment.to = new char[modifiers.length - 1];
+			for (int i = 1; i < modifiers.length; i++) {
+				String replacement = modifiers[i];
+				if (replacement.length() != 3 || replacement.charAt(1) != '=') {
+					invalidRule(pattern, "replacements must be written as a=b, found " + replacement);
+				}
+				segment.from[i - 1] = replacement.charAt(0);
+				segment.to[i - 1] = replacement.charAt(2);
+			}
+			return segment;
+		}
+		invalidRule(pattern, "unknown slot {" + slot + "}");
+		return null;
+	}
+
+	/**
+	 * Reads a non-negative number out of a naming rule
+	 * @param pattern - naming rule the number belongs to
+	 * @param number - text of the number
+	 * @return the number
+	 */
+	private static int parseNumber(String pattern, String number) {
+		try {
+			int value = Integer.parseInt(number);
+			if (value >= 0) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		invalidRule(pattern, number + " is not a valid number");
+		return -1;
+	}
+
+	/**
+	 * Reports a naming rule that could not be compiled
+	 * @param pattern - naming rule that could not be compiled
+	 * @param reason - why the naming rule could not be compiled
+	 */
+	private static void invalidRule(String pattern, String reason) {
+		DialogBoxUI.infoBox("RTAC naming rule " + pattern + " is not valid: " + reason + ".", "");
+		throw new IllegalArgumentException("RTAC naming rule " + pattern + " is not valid: " + reason + ".");
+	}
+
+	/**
+	 * Returns the rule this naming rule was compiled from
+	 * @return the rule this naming rule was compiled from
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Builds the RTAC point name for a data map entry
+	 * @param deviceName - name of the device listed in the data map
+	 * @param pointType - type of the data map point
+	 * @param index - DNP index of the data map entry
+	 * @param hmiPointName - HMI point name of the data map entry
+	 * @return the RTAC point name for the data map entry
+	 */
+	public String build(String deviceName, String pointType, int index, String hmiPointName) {
+		StringBuilder name = buffer.get();
+		name.setLength(0);
+		appendTo(name, deviceName, pointType, index, hmiPointName);
+		return name.toString();
+	}
+
+	/**
+	 * Adds the RTAC point name for a data map entry to the end of the given text
+	 * @param name - text to add the RTAC point name to
+	 * @param deviceName - name of the device listed in the data map
+	 * @param pointType - type of the data map point
+	 * @param index - DNP index of the data map entry
+	 * @param hmiPointName - HMI point name of the data map entry
+	 */
+	public void appendTo(StringBuilder name, String deviceName, String pointType, int index, String hmiPointName) {
+		for (Segment segment : segments) {
+			switch (segment.kind) {
+			case LITERAL:
+				name.append(segment.text);
+				break;
+			case DEVICE:
+				name.append(deviceName);
+				break;
+			case TYPE:
+				name.append(pointType);
+				break;
+			case INDEX:
+				int digits = 1;
+				for (int i = index; i >= 10 || i <= -10; i /= 10) {
+					digits++;
+				}
+				for (int i = digits; i < segment.width; i++) {
+					name.append('0');
+				}
+				name.append(index);
+				break;
+			default:
+				appendHmi(name, segment, deviceName, hmiPointName);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Adds the captured part of the HMI point name with its replacements to the end of the given text
+	 * @param name - text to add the HMI point name to
+	 * @param segment - HMI segment of the rule
+	 * @param deviceName - name of the device listed in the data map
+	 * @param hmiPointName - HMI point name of the data map entry
+	 */
+	private static void appendHmi(StringBuilder name, Segment segment, String deviceName, String hmiPointName) {
+		int start = 0;
+		if (segment.capture == AFTER_LAST_SEGMENT) {
+			int segmentStart = deviceName.lastIndexOf('_') + 1;
+			int segmentLength = deviceName.length() - segmentStart;
+			for (int i = hmiPointName.length() - segmentLength; i >= 0; i--) {
+				if (hmiPointName.regionMatches(i, deviceName, segmentStart, segmentLength)) {
+					start = i + segmentLength;
+					break;
+				}
+			}
+		}
+		else if (segment.capture == AFTER_DEVICE) {
+			int found = hmiPointName.indexOf(deviceName);
+			if (found >= 0) {
+				start = found + deviceName.length();
+			}
+		}
+		start = Math.min(start + segment.skip, hmiPointName.length());
+		for (int i = start; i < hmiPointName.length(); i++) {
+			char c = hmiPointName.charAt(i);
+			for (int r = 0; r < segment.from.length; r++) {
+				if (c == segment.from[r]) {
+					c = segment.to[r];
+					break;
+				}
+			}
+			name.append(c);
+		}
+	}
+
+	/**
+	 * Compiled piece of a naming rule
+	 */
+	private static class Segment {
+		/** What the segment is filled with */
+		private final int kind;
+		/** Text of a literal segment */
+		private final String text;
+		/** Number of digits an index is padded to */
+		private int width;
+		/** Part of the HMI point name that is kept */
+		private int capture = WHOLE;
+		/** Number of characters skipped after the HMI capture */
+		private int skip;
+		/** Characters replaced in the HMI point name */
+		private char[] from = new char[0];
+		/** Replacements for the characters in the HMI point name */
+		private char[] to = new char[0];
+
+		/**
+		 * Creates a compiled piece of a naming rule
+		 * @param kind - what the segment is filled with
+		 * @param text - text of a literal segment
+		 */
+		private Segment(int kind, String text) {
+			this.kind = kind;
+			this.text = text;
+		}
+	}
+}
@@ -4,8 +4,12 @@
 package mapObjects;
 
 import java.io.FileInputStream;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
@@ -20,6 +24,8 @@ import ui.DialogBoxUI;
  * @author Hannah Layton
  */
 public class SCADAMap {
+	/** Whether loaded SCADA maps drop their workbook & sheet once the entries have been read out of them */
+	private static boolean compactLoading = false;
 	/** Variable used to manipulate an excel file, in this case a SCADA Map, with Java */
 	private XSSFWorkbook workbook;
 	/** Variable used to manipulate an excel sheet, in this case a SCADA Map, with Java */
@@ -44,6 +50,16 @@ public class SCADAMap {
 	 * @param scadaName - SCADA map file stream to read from to add helpful attributes to the Java objects
 	 */
 	public SCADAMap(FileInputStream scadaName) {
+		this(scadaName, true);
+	}
+
+	/**
+	 * Converts a SCADA map file into an easily manipulatable Java object with helpful attributes, optionally leaving the entries
+	 * to be read later with streamScadaEntries
+	 * @param scadaName - SCADA map file stream to read from to add helpful attributes to the Java objects
+	 * @param readEntries - whether the entries are read now instead of being streamed later
+	 */
+	public SCADAMap(FileInputStream scadaName, boolean readEntries) {
 		openSCADAMap(scadaName);
 		setCurrentSheet();
 		setDnpAddressColumn();
@@ -52,17 +68,64 @@ public class SCADAMap {
 		setSlaveIEDDNPColumn();
 		setDescriptionColumn();
 		setScalingColumn();
-		setScadaEntries();
+		if (readEntries) {
+			setScadaEntries();
+		}
+		else {
+			this.scadaEntries = new LinkedList<SCADAEntry>();
+		}
+	}
+
+	/**
+	 * Returns whether loaded SCADA maps drop their workbook & sheet once the entries have been read out of them
+	 * @return whether loaded SCADA maps drop their workbook & sheet once the entries have been read out of them
+	 */
+	public static boolean isCompactLoading() {
+		return compactLoading;
+	}
+
+	/**
+	 * Sets whether loaded SCADA maps drop their workbook & sheet once the entries have been read out of them.
+	 * Compactly loaded SCADA maps only keep the read columns & entries, so none of the workbook's rows or cells stay in memory,
+	 * & the methods reading the workbook again once the entries were read throw an IllegalStateException
+	 * @param compactLoading - whether loaded SCADA maps drop their workbook & sheet once the entries have been read out of them
+	 */
+	public static void setCompactLoading(boolean compactLoading) {
+		SCADAMap.compactLoading = compactLoading;
 	}
 
 	/**
 	 * Returns a workbook object representing the SCADA map 
-	 * @return a workbook object representing the SCADA map
+	 * @return a workbook object representing the SCADA map, or null if the SCADA map was loaded compactly & its entries have been read
 	 */
 	public XSSFWorkbook getSCADAMap() {
 		return workbook;
 	}
 
+	/**
+	 * Returns the workbook the SCADA map is read out of
+	 * @return a workbook object representing the SCADA map
+	 * @throws IllegalStateException - if the SCADA map was loaded compactly & its entries were read, so it no longer has its workbook
+	 */
+	private XSSFWorkbook requireWorkbook() {
+		if (workbook == null) {
+			throw new IllegalStateException("SCADA Map was loaded compactly & its entries were read, so its workbook can no longer be read.");
+		}
+		return workbook;
+	}
+
+	/**
+	 * Returns the sheet the SCADA entries are read out of
+	 * @return the sheet of the SCADA map
+	 * @throws IllegalStateException - if the SCADA map was loaded compactly & its entries were read, so it no longer has its sheet
+	 */
+	private Sheet requireSheet() {
+		if (currentSheet == null) {
+			requireWorkbook();
+		}
+		return currentSheet;
+	}
+
 	/**
 	 * Using the SCADA map file stream, a workbook object is created to read the SCADA map as an Excel file in Java
 	 * @param scadaName - SCADA map file stream to read from to add helpful attributes to the Java objects
@@ -78,7 +141,7 @@ public class SCADAMap {
 
 	/**
 	 * Returns the sheet of the SCADA map that is being read from
-	 * @return the sheet of the SCADA map that is being read from
+	 * @return the sheet of the SCADA map that is being read from, or null if the SCADA map was loaded compactly & its entries have been read
 	 */
 	public Sheet getCurrentSheet() {
 		return currentSheet;
@@ -88,7 +151,7 @@ public class SCADAMap {
 	 * Sets the sheet of the SCADA map that is being read from
 	 */
 	public void setCurrentSheet() {
-		for (Sheet sheet : workbook) {
+		for (Sheet sheet : requireWorkbook()) {
 			if (sheet.getSheetName().toLowerCase().contains("analog") && sheet.getSheetName().toLowerCase().contains("input")) {
 				this.currentSheet = sheet;
 				break;
@@ -108,7 +171,7 @@ public class SCADAMap {
 	 * Finds the column that the dnp addresses in the SCADA map are contained in & saves it to the Java object
 	 */
 	public void setDnpAddressColumn() {
-		for (Row row : currentSheet) {
+		for (Row row : requireSheet()) {
 			for (Cell cell : row) {
 				if ((cell.getStringCellValue().toLowerCase().contains("analog") && cell.getStringCellValue().toLowerCase().contains("address") && cell.getStringCellValue().toLowerCase().contains("dnp")) || (cell.getStringCellValue().toLowerCase().contains("dnp") && cell.getStringCellValue().toLowerCase().contains("index"))) {
 					this.dnpAddressColumn = cell.getColumnIndex();
@@ -137,7 +200,7 @@ public class SCADAMap {
 	 * Finds the column that the slave ieds in the SCADA map are contained in & saves it to the Java object
 	 */
 	private void setSlaveIEDDeviceColumn() {
-		for (Row row : currentSheet) {
+		for (Row row : requireSheet()) {
 			for (Cell cell : row) {
 				if (cell.getStringCellValue().equals("Slave IED Device")) {
 					this.slaveIEDDeviceColumn = cell.getColumnIndex();
@@ -166,7 +229,7 @@ public class SCADAMap {
 	 * Finds the column that the slave ied wordbits in the SCADA map are contained in & saves it to the Java object
 	 */
 	private void setSlaveIEDWordbitColumn() {
-		for (Row row : currentSheet) {
+		for (Row row : requireSheet()) {
 			for (Cell cell : row) {
 				if (cell.getStringCellValue().equals("Slave IED Wordbit") || cell.getStringCellValue().contains("Relay Element")) {
 					this.slaveIEDWordbitColumn = cell.getColumnIndex();
@@ -195,7 +258,7 @@ public class SCADAMap {
 	 * Finds the column that the slave ied DNP indexes in the SCADA map are contained in & saves it to the Java object
 	 */
 	private void setSlaveIEDDNPColumn() {
-		for (Row row : currentSheet) {
+		for (Row row : requireSheet()) {
 			for (Cell cell : row) {
 				if ((cell.getStringCellValue().toLowerCase().contains("relay") && cell.getStringCellValue().toLowerCase().contains("dnp") && cell.getStringCellValue().toLowerCase().contains("index")) || cell.getStringCellValue().equals("Slave IED DNP")) {
 					this.slaveIEDDNPColumn = cell.getColumnIndex();
@@ -224,7 +287,7 @@ public class SCADAMap {
 	 * Finds the column that the descriptions in the SCADA map are contained in & saves it to the Java object
 	 */
 	public void setDescriptionColumn() {
-		for (Row row : currentSheet) {
+		for (Row row : requireSheet()) {
 			for (Cell cell : row) {
 				if (cell.getStringCellValue().equals("EMS Analog Point") || cell.getStringCellValue().equals("Point Nomenclature Description")) {
 					this.descriptionColumn = cell.getColumnIndex();
@@ -253,7 +316,7 @@ public class SCADAMap {
 	 * Sets the column of the SCADA map that includes scale factor(s)
 	 */
 	public void setScalingColumn() {
-		for (Row row : currentSheet) {
+		for (Row row : requireSheet()) {
 			for (Cell cell : row) {
 				if (cell.getStringCellValue().toLowerCase().contains("scale")) {
 					this.scalingColumn = cell.getColumnIndex();
@@ -282,7 +345,56 @@ public class SCADAMap {
 	 * Sets the list of all entries in SCADA Map
 	 */
 	private void setScadaEntries() {
-		Queue<SCADAEntry> scadaEntries = new LinkedList<SCADAEntry>();
+		BlockingQueue<SCADAEntry> scadaEntries = new LinkedBlockingQueue<SCADAEntry>();
+		try {
+			streamScadaEntries(scadaEntries);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.scadaEntries = scadaEntries;
+	}
+
+	/**
+	 * Reads the entries in SCADA Map into a queue as each row is read, waiting whenever the queue is full, & closes the SCADA map
+	 * @param scadaEntries - queue the entries are added to in the order of the SCADA map
+	 * @throws InterruptedException - if the thread is interrupted while waiting for room in the queue
+	 */
+	public void streamScadaEntries(BlockingQueue<SCADAEntry> scadaEntries) throws InterruptedException {
+		readEntries(scadaEntries, null);
+		try {
+			workbook.close();
+		} catch (Exception e) {
+			DialogBoxUI.infoBox("SCADA Map failed to close.", "");
+			throw new IllegalArgumentException("SCADA Map failed to close.");
+		}
+		if (compactLoading) {
+			this.workbook = null;
+			this.currentSheet = null;
+		}
+	}
+
+	/**
+	 * Counts the entries in SCADA Map referencing each Slave IED Device without keeping the entries, so they can still be streamed afterwards
+	 * @return the number of entries for each Slave IED Device, in the order each device is first referenced
+	 */
+	public Map<String, Integer> countEntriesByDevice() {
+		Map<String, Integer> entriesByDevice = new LinkedHashMap<String, Integer>();
+		try {
+			readEntries(null, entriesByDevice);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return entriesByDevice;
+	}
+
+	/**
+	 * Reads the entries in SCADA Map, either into a queue or into counts of the entries for each Slave IED Device
+	 * @param scadaEntries - queue the entries are added to in the order of the SCADA map, or null if they are only counted
+	 * @param entriesByDevice - counts the entries are added to by Slave IED Device, or null if they are added to the queue
+	 * @throws InterruptedException - if the thread is interrupted while waiting for room in the queue
+	 */
+	private void readEntries(BlockingQueue<SCADAEntry> scadaEntries, Map<String, Integer> entriesByDevice) throws InterruptedException {
+		Sheet currentSheet = requireSheet();
 		int rowCount = 1;
 		// Find the first row containing a SCADA map entry
 		while (currentSheet.getRow(rowCount).getCell(slaveIEDDNPColumn) == null || !(currentSheet.getRow(rowCount).getCell(slaveIEDDNPColumn).getNumericCellValue() >= 0)) {
@@ -301,18 +413,16 @@ public class SCADAMap {
 				// Check if the SCADA entry is valid
 				if ((currentSheet.getRow(rowCount).getCell(slaveIEDDNPColumn).getCellType() != CellType.STRING) && !currentSheet.getRow(rowCount).getCell(slaveIEDWordbitColumn).getStringCellValue().equals("") && !currentSheet.getRow(rowCount).getCell(slaveIEDDeviceColumn).getStringCellValue().equals("") && (currentSheet.getRow(rowCount).getCell(scalingColumn).getCellType() == CellType.STRING)) {
 					SCADAEntry scadaEntry = new SCADAEntry(currentSheet.getRow(rowCount).getCell(dnpAddressColumn).getNumericCellValue(), currentSheet.getRow(rowCount).getCell(slaveIEDDeviceColumn).getStringCellValue(), currentSheet.getRow(rowCount).getCell(slaveIEDWordbitColumn).getStringCellValue(), currentSheet.getRow(rowCount).getCell(slaveIEDDNPColumn).getNumericCellValue(), currentSheet.getRow(rowCount).getCell(descriptionColumn).getStringCellValue(), currentSheet.getRow(rowCount).getCell(scalingColumn).getStringCellValue());
-					scadaEntry.setSlaveIEDDevice(scadaEntry.getSlaveIEDDevice().replace("-", "_").replace("/", "_").replace(".", "_"));
-					scadaEntries.add(scadaEntry);
+					if (scadaEntries != null) {
+						scadaEntries.put(scadaEntry);
+					}
+					else {
+						Integer count = entriesByDevice.get(scadaEntry.getSlaveIEDDevice());
+						entriesByDevice.put(scadaEntry.getSlaveIEDDevice(), count == null ? 1 : count + 1);
+					}
 				}
 				rowCount++;
 			}
 		}
-		try {
-			workbook.close();
-		} catch (Exception e) {
-			DialogBoxUI.infoBox("SCADA Map failed to close.", "");
-			throw new IllegalArgumentException("SCADA Map failed to close.");
-		}
-		this.scadaEntries = scadaEntries;
 	}
 }
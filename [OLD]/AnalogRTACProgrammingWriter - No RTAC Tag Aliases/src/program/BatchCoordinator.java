@@ -0,0 +1,329 @@
+package program;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.BatchJournal;
+import io.IncrementalBuild;
+import program.BatchRunner.Job;
+import ui.DialogBoxUI;
+
+/**
+ * Runs every job of a batch manifest in several worker processes instead of one program, so each job's workbooks are read in a heap of their own
+ * & garbage collection in one worker does not hold up the others. Workers are started on this computer & ask the coordinator for jobs
+ * over a socket, & workers started by hand on other computers can connect to the same port.
+ * Every run makes a new secret that workers have to send before they are given jobs. Workers started by the coordinator get it through
+ * the {@value #SECRET_VARIABLE} environment variable, & when workers on other computers may connect it is also written to a file next to
+ * the manifest that only its owner can read. Each job is sent with the settings that change the output text, & a worker started with
+ * other -Drtac.* settings refuses the job instead of writing output the journal would record for the coordinator's settings.
+ * The manifest, journal & summary are the same as {@link BatchRunner}'s
+ * @author Hannah Layton
+ */
+public class BatchCoordinator {
+	/** First message a worker sends, so connections from anything else are turned away */
+	static final String PROTOCOL = "RTAC Batch Worker 2";
+	/** Environment variable the secret is passed to workers started by the coordinator in */
+	static final String SECRET_VARIABLE = "RTAC_BATCH_SECRET";
+	/** Milliseconds between checks that workers are still running while waiting for connections */
+	private static final int ACCEPT_TIMEOUT_MILLIS = 1000;
+	/** Milliseconds a connection has to send the protocol & the secret, so a silent connection is not counted as a worker forever */
+	private static final int HANDSHAKE_TIMEOUT_MILLIS = 10000;
+	/** Number of random bytes in the secret */
+	private static final int SECRET_BYTES = 32;
+
+	/** Jobs in the order of the manifest */
+	private final List<Job> jobs;
+	/** Jobs not yet sent to a worker */
+	private final ConcurrentLinkedQueue<Job> pendingJobs = new ConcurrentLinkedQueue<Job>();
+	/** Journal of finished jobs, or null if none is kept */
+	private final BatchJournal journal;
+	/** Secret workers have to send before they are given jobs, new for every coordinator */
+	private final String secret;
+	/** Worker processes started on this computer */
+	private final List<Process> workers = new ArrayList<Process>();
+	/** Threads talking to connected workers */
+	private final List<Thread> connections = new ArrayList<Thread>();
+	/** Number of jobs not finished yet */
+	private int unfinishedJobs;
+	/** Time the whole batch took */
+	private long elapsedNanos;
+
+	/**
+	 * Creates a coordinator
+	 * @param jobs - jobs in the order of the manifest
+	 * @param journal - journal of finished jobs, or null if none is kept
+	 */
+	public BatchCoordinator(List<Job> jobs, BatchJournal journal) {
+		this.jobs = jobs;
+		this.journal = journal;
+		byte[] secret = new byte[SECRET_BYTES];
+		new SecureRandom().nextBytes(secret);
+		this.secret = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+		this.pendingJobs.addAll(jobs);
+		this.unfinishedJobs = jobs.size();
+	}
+
+	/**
+	 * Main method that runs the manifest in worker processes & exits with 0 if every job was written, 1 if a job failed & 2 if the arguments are wrong
+	 * @param args - manifest file
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		DialogBoxUI.setHeadless(true);
+		if (args.length != 1) {
+			System.err.println("Usage: BatchCoordinator <manifest>");
+			System.exit(CommandLine.USAGE);
+		}
+		File manifest = new File(args[0]);
+		try (BatchJournal journal = new BatchJournal(new File(manifest.getPath() + ".journal"))) {
+			RuntimeSettings.apply();
+			BatchCoordinator coordinator = new BatchCoordinator(BatchRunner.readManifest(manifest), journal);
+			// -Drtac.workers=... workers are started, each with a heap of -Drtac.workerHeap=..., & others can connect to -Drtac.coordinatorPort=...
+			int workerCount = Integer.getInteger("rtac.workers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+			File secretFile = Boolean.getBoolean("rtac.remoteWorkers") ? new File(manifest.getPath() + ".secret") : null;
+			coordinator.run(workerCount, System.getProperty("rtac.workerHeap"), Integer.getInteger("rtac.coordinatorPort", 0), secretFile);
+			System.out.print(BatchRunner.summary(coordinator.jobs, coordinator.elapsedNanos));
+			System.exit(BatchRunner.countFailed(coordinator.jobs) == 0 ? CommandLine.SUCCESS : CommandLine.FAILURE);
+		} catch (IOException | RuntimeException e) {
+			System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+			System.exit(CommandLine.FAILURE);
+		} catch (InterruptedException e) {
+			System.err.println("Batch was interrupted.");
+			System.exit(CommandLine.FAILURE);
+		}
+	}
+
+	/**
+	 * Starts the workers & hands out jobs until every job has finished
+	 * @param workerCount - number of workers started on this computer
+	 * @param workerHeap - maximum heap of each worker, e.g. 2g, or null for the default
+	 * @param port - port workers connect to, or 0 for any free port
+	 * @param secretFile - file the secret is written to for workers on other computers, or null if only workers on this computer may connect
+	 * @throws IOException - if the port could not be opened, the secret could not be written or a worker could not be started
+	 * @throws InterruptedException - if the thread is interrupted while waiting for the workers
+	 */
+	public void run(int workerCount, String workerHeap, int port, File secretFile) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		boolean remoteWorkers = secretFile != null;
+		try (ServerSocket server = remoteWorkers ? new ServerSocket(port) : new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+			if (remoteWorkers) {
+				writeSecret(secretFile.toPath());
+				System.err.println("Workers on other computers can connect to port " + server.getLocalPort() + " with the secret in " + secretFile.getAbsolutePath() + ".");
+			}
+			for (int i = 0; i < workerCount && i < jobs.size(); i++) {
+				workers.add(startWorker(server.getLocalPort(), workerHeap));
+			}
+			while (!isFinished()) {
+				Socket worker;
+				try {
+					worker = server.accept();
+				} catch (SocketTimeoutException e) {
+					// Jobs nobody is left to run are failed instead of waited on forever
+					if (!remoteWorkers && !hasLiveWorker()) {
+						failPendingJobs("No worker was left to run the job.");
+					}
+					continue;
+				}
+				Thread connection = new Thread(new Connection(worker), "Batch Worker Connection " + connections.size());
+				synchronized (this) {
+					connections.add(connection);
+				}
+				connection.start();
+			}
+		}
+		finally {
+			for (Process worker : workers) {
+				if (!worker.waitFor(10, TimeUnit.SECONDS)) {
+					worker.destroy();
+				}
+			}
+			if (remoteWorkers) {
+				Files.deleteIfExists(secretFile.toPath());
+			}
+		}
+		elapsedNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Writes the secret to a new file that only its owner can read on file systems with POSIX permissions
+	 * @param secretFile - file the secret is written to, replacing one left by an earlier run
+	 * @throws IOException - if the file could not be written
+	 */
+	private void writeSecret(Path secretFile) throws IOException {
+		Files.deleteIfExists(secretFile);
+		// The file is created private, so the secret is never readable by others even for a moment
+		if (GenerationDaemon.isPosix()) {
+			Files.createFile(secretFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		else {
+			Files.createFile(secretFile);
+		}
+		Files.write(secretFile, secret.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Starts a worker process with the same Java, class path & -Drtac.* settings as the coordinator, passing it the secret in its environment
+	 * @param port - port the worker connects to
+	 * @param workerHeap - maximum heap of the worker, or null for the default
+	 * @return the worker process
+	 * @throws IOException - if the worker could not be started
+	 */
+	private Process startWorker(int port, String workerHeap) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		if (workerHeap != null) {
+			command.add("-Xmx" + workerHeap);
+		}
+		for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+			if (property.getKey().toString().startsWith("rtac.")) {
+				command.add("-D" + property.getKey() + "=" + property.getValue());
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(BatchWorker.class.getName());
+		command.add(InetAddress.getLoopbackAddress().getHostAddress());
+		command.add(Integer.toString(port));
+		ProcessBuilder worker = new ProcessBuilder(command).inheritIO();
+		worker.environment().put(SECRET_VARIABLE, secret);
+		return worker.start();
+	}
+
+	/**
+	 * Returns whether every job has finished
+	 * @return whether every job has finished
+	 */
+	private synchronized boolean isFinished() {
+		return unfinishedJobs == 0;
+	}
+
+	/**
+	 * Returns whether a worker started on this computer is still running or a worker is still connected
+	 * @return whether a worker is left to run jobs
+	 */
+	private synchronized boolean hasLiveWorker() {
+		for (Process worker : workers) {
+			if (worker.isAlive()) {
+				return true;
+			}
+		}
+		for (Thread connection : connections) {
+			if (connection.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Fails every job not yet sent to a worker
+	 * @param error - why the jobs failed
+	 */
+	private void failPendingJobs(String error) {
+		for (Job job = pendingJobs.poll(); job != null; job = pendingJobs.poll()) {
+			job.error = error;
+			jobFinished();
+		}
+	}
+
+	/**
+	 * Counts a job as finished, however it went
+	 */
+	private synchronized void jobFinished() {
+		unfinishedJobs--;
+	}
+
+	/**
+	 * Hands jobs to one connected worker until none are left or the worker goes away
+	 */
+	private class Connection implements Runnable {
+		/** Socket of the worker */
+		private final Socket worker;
+
+		/**
+		 * Creates a connection to a worker
+		 * @param worker - socket of the worker
+		 */
+		private Connection(Socket worker) {
+			this.worker = worker;
+		}
+
+		@Override
+		public void run() {
+			Job job = null;
+			try (Socket socket = worker) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				// Connections that do not send the protocol & the secret in time are turned away without being sent a job
+				socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+				if (!in.readUTF().equals(PROTOCOL) || !MessageDigest.isEqual(in.readUTF().getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8))) {
+					return;
+				}
+				// Jobs can take as long as they need
+				socket.setSoTimeout(0);
+				String settings = IncrementalBuild.settings();
+				for (job = pendingJobs.poll(); job != null; job = pendingJobs.poll()) {
+					long start = System.nanoTime();
+					// Finished jobs are skipped by the coordinator, so a worker is only sent jobs that have to run
+					try {
+						if (!BatchRunner.prepare(job, journal)) {
+							job.elapsedNanos = System.nanoTime() - start;
+							jobFinished();
+							continue;
+						}
+					} catch (IOException | RuntimeException e) {
+						job.error = e.getMessage() == null ? e.toString() : e.getMessage();
+						jobFinished();
+						continue;
+					}
+					out.writeBoolean(true);
+					out.writeUTF(settings);
+					out.writeUTF(job.scadaPath.getAbsolutePath());
+					out.writeUTF(job.iedMapFolderPath.getAbsolutePath());
+					out.writeUTF(job.output.getAbsolutePath());
+					out.flush();
+					if (in.readBoolean()) {
+						job.entries = in.readInt();
+						job.elapsedNanos = in.readLong();
+						BatchRunner.finish(job, journal);
+					}
+					else {
+						job.error = in.readUTF();
+						job.elapsedNanos = in.readLong();
+					}
+					job = null;
+					jobFinished();
+				}
+				out.writeBoolean(false);
+				out.flush();
+			} catch (IOException e) {
+				// A worker that went away mid-job leaves it started in the journal, so running the batch again redoes it
+				if (job != null) {
+					job.error = "Worker stopped while running the job: " + (e.getMessage() == null ? e.toString() : e.getMessage());
+					jobFinished();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,464 @@
+package program;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.BatchJournal;
+import mapObjects.IEDMapCache;
+import mapObjects.IEDMapCatalog;
+import ui.DialogBoxUI;
+
+/**
+ * Runs every job of a manifest in one program, several at a time, without opening any window.
+ * Each line of the manifest is a job of a SCADA map, a folder of data maps & an output text file separated by tabs,
+ * relative paths being relative to the manifest & lines starting with # being ignored.
+ * A job only starts once the heap it is expected to need, worked out from the size of its workbooks, is free,
+ * & jobs are let in the order of the manifest, so a job needing a lot of heap is not passed over by smaller jobs behind it, & a summary of every job's time & the overall throughput is written at the end.
+ * Finished jobs are recorded in a journal next to the manifest, so running a batch that stopped part way through again
+ * skips the jobs that finished with the same inputs & only redoes the others. Deleting the journal redoes every job
+ * @author Hannah Layton
+ */
+public class BatchRunner {
+	/** Times larger a workbook is in the heap than on disk when the factor is not given */
+	private static final int DEFAULT_HEAP_FACTOR = 40;
+
+	/** Jobs in the order of the manifest */
+	private final List<Job> jobs;
+	/** Number of jobs run at the same time */
+	private final int parallelism;
+	/** Bytes of heap the running jobs may use together */
+	private final long memoryBudget;
+	/** Times larger a workbook is in the heap than on disk */
+	private final int heapFactor;
+	/** Bytes of heap the running jobs are expected to use */
+	private long admittedBytes;
+	/** Number of jobs running */
+	private int runningJobs;
+	/** Whether each job, by its position in the manifest, was let in or does not need to be */
+	private final boolean[] passed;
+	/** Position in the manifest of the next job to let in */
+	private int nextJob;
+	/** Time the whole batch took */
+	private long elapsedNanos;
+	/** Journal of finished jobs, or null if none is kept */
+	private final BatchJournal journal;
+
+	/**
+	 * Creates a batch
+	 * @param jobs - jobs in the order of the manifest
+	 * @param parallelism - number of jobs run at the same time
+	 * @param memoryBudget - bytes of heap the running jobs may use together
+	 * @param heapFactor - times larger a workbook is in the heap than on disk
+	 * @param journal - journal of finished jobs, or null if none is kept
+	 */
+	public BatchRunner(List<Job> jobs, int parallelism, long memoryBudget, int heapFactor, BatchJournal journal) {
+		this.jobs = jobs;
+		this.parallelism = Math.max(1, parallelism);
+		this.memoryBudget = memoryBudget;
+		this.heapFactor = heapFactor;
+		this.journal = journal;
+		this.passed = new boolean[jobs.size()];
+	}
+
+	/**
+	 * Main method that runs the manifest & exits with 0 if every job was written, 1 if a job failed & 2 if the arguments are wrong
+	 * @param args - manifest file
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		DialogBoxUI.setHeadless(true);
+		if (args.length != 1) {
+			System.err.println("Usage: BatchRunner <manifest>");
+			System.exit(CommandLine.USAGE);
+		}
+		File manifest = new File(args[0]);
+		try (BatchJournal journal = new BatchJournal(new File(manifest.getPath() + ".journal"))) {
+			RuntimeSettings.apply();
+			List<Job> jobs = readManifest(manifest);
+			// Jobs & kept data maps only use 3/4 of the heap unless -Drtac.batchMemoryMB=... is given, leaving room for the rest of the program
+			long memoryBudget = Long.getLong("rtac.batchMemoryMB", Runtime.getRuntime().maxMemory() / 1024 / 1024 * 3 / 4) * 1024 * 1024;
+			memoryBudget = reserveCache(memoryBudget, IEDMapCache.getSessionCache());
+			BatchRunner batch = new BatchRunner(jobs, Integer.getInteger("rtac.parallelism", Runtime.getRuntime().availableProcessors()), memoryBudget,
+					Integer.getInteger("rtac.batchHeapFactor", DEFAULT_HEAP_FACTOR), journal);
+			batch.run();
+			System.out.print(batch.summary());
+			// Jobs sharing data maps load them once
+			System.out.println(IEDMapCache.getSessionCache().getStatistics());
+			System.exit(batch.getFailedJobs() == 0 ? CommandLine.SUCCESS : CommandLine.FAILURE);
+		} catch (IOException | RuntimeException e) {
+			System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+			System.exit(CommandLine.FAILURE);
+		}
+	}
+
+	/**
+	 * Takes the budget of the kept data maps out of the budget of the batch, since they are in the same heap as the running jobs.
+	 * The kept data maps are given at most half of the batch's budget, & the cache is shrunk to that if it was allowed more
+	 * @param memoryBudget - bytes of heap the running jobs & kept data maps may use together
+	 * @param cache - cache of data maps shared by the jobs
+	 * @return the bytes of heap the running jobs may use together
+	 */
+	static long reserveCache(long memoryBudget, IEDMapCache cache) {
+		long cacheBytes = Math.min(cache.getMaxBytes(), memoryBudget / 2);
+		cache.setMaxBytes(cacheBytes);
+		return memoryBudget - cacheBytes;
+	}
+
+	/**
+	 * Reads the jobs of a manifest
+	 * @param manifest - manifest file
+	 * @return the jobs in the order of the manifest
+	 * @throws IOException - if the manifest could not be read
+	 */
+	public static List<Job> readManifest(File manifest) throws IOException {
+		File folder = manifest.getAbsoluteFile().getParentFile();
+		List<Job> jobs = new ArrayList<Job>();
+		try (BufferedReader in = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+			int lineNumber = 0;
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				lineNumber++;
+				if (line.trim().isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] paths = line.split("\t");
+				if (paths.length != 3) {
+					throw new IllegalArgumentException("Line " + lineNumber + " of " + manifest.getName() + " needs a SCADA map, a folder of data maps & an output file separated by tabs.");
+				}
+				jobs.add(new Job(resolve(folder, paths[0]), resolve(folder, paths[1]), resolve(folder, paths[2])));
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Returns a path of the manifest as a file
+	 * @param folder - folder of the manifest
+	 * @param path - path in the manifest
+	 * @return the file, relative to the manifest if the path is relative
+	 */
+	private static File resolve(File folder, String path) {
+		File file = new File(path.trim());
+		return file.isAbsolute() ? file : new File(folder, path.trim());
+	}
+
+	/**
+	 * Returns the jobs in the order of the manifest
+	 * @return the jobs in the order of the manifest
+	 */
+	public List<Job> getJobs() {
+		return jobs;
+	}
+
+	/**
+	 * Returns the number of jobs that failed
+	 * @return the number of jobs that failed
+	 */
+	public int getFailedJobs() {
+		return countFailed(jobs);
+	}
+
+	/**
+	 * Returns the number of jobs that failed
+	 * @param jobs - jobs of a batch
+	 * @return the number of jobs that failed
+	 */
+	static int countFailed(List<Job> jobs) {
+		int failed = 0;
+		for (Job job : jobs) {
+			if (job.error != null) {
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Returns the number of jobs skipped because they finished in an earlier run
+	 * @return the number of jobs skipped
+	 */
+	public int getSkippedJobs() {
+		int skipped = 0;
+		for (Job job : jobs) {
+			if (job.skipped) {
+				skipped++;
+			}
+		}
+		return skipped;
+	}
+
+	/**
+	 * Runs every job, several at a time, & waits for all of them to finish
+	 */
+	public void run() {
+		long start = System.nanoTime();
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+		try {
+			for (int i = 0; i < jobs.size(); i++) {
+				final Job job = jobs.get(i);
+				final int position = i;
+				job.estimatedBytes = estimateBytes(job);
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						runJob(job, position);
+					}
+				});
+			}
+			workers.shutdown();
+			while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+				// Keeps waiting for the jobs to finish
+			}
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		elapsedNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Runs a job once every job before it in the manifest was let in & the heap it is expected to need is free.
+	 * A job the journal skips or whose inputs are missing is never let in, so it neither waits for heap nor holds any
+	 * @param job - job to run
+	 * @param position - position of the job in the manifest
+	 */
+	private void runJob(Job job, int position) {
+		long start = System.nanoTime();
+		try {
+			if (!prepare(job, journal)) {
+				pass(position);
+				return;
+			}
+		} catch (IOException | RuntimeException e) {
+			job.error = e.getMessage() == null ? e.toString() : e.getMessage();
+			pass(position);
+			return;
+		}
+		finally {
+			job.elapsedNanos = System.nanoTime() - start;
+		}
+		try {
+			admit(position, job.estimatedBytes);
+		} catch (InterruptedException e) {
+			job.error = "Batch was interrupted before the job started.";
+			pass(position);
+			Thread.currentThread().interrupt();
+			return;
+		}
+		start = System.nanoTime();
+		try {
+			job.entries = CommandLine.generate(job.scadaPath, job.iedMapFolderPath, job.output);
+			finish(job, journal);
+		} catch (IOException | RuntimeException | OutOfMemoryError e) {
+			job.error = e.getMessage() == null ? e.toString() : e.getMessage();
+		}
+		finally {
+			job.elapsedNanos += System.nanoTime() - start;
+			release(job.estimatedBytes);
+		}
+	}
+
+	/**
+	 * Checks a job's inputs exist &, when a journal is kept, skips the job if it already finished or records that it started
+	 * @param job - job about to run
+	 * @param journal - journal of finished jobs, or null if none is kept
+	 * @return whether the job has to run
+	 * @throws IOException - if the inputs could not be read or the journal could not be written
+	 */
+	static boolean prepare(Job job, BatchJournal journal) throws IOException {
+		if (!job.scadaPath.isFile()) {
+			throw new IllegalArgumentException("SCADA Map " + job.scadaPath + " could not be found.");
+		}
+		if (!job.iedMapFolderPath.isDirectory()) {
+			throw new IllegalArgumentException("Folder of IED Maps " + job.iedMapFolderPath + " could not be found.");
+		}
+		if (journal != null) {
+			job.inputHash = BatchJournal.hashInputs(job.scadaPath, job.iedMapFolderPath);
+			if (journal.isFinished(job.scadaPath, job.iedMapFolderPath, job.output, job.inputHash)) {
+				job.skipped = true;
+				return false;
+			}
+			job.redone = journal.wasInterrupted(job.scadaPath, job.iedMapFolderPath, job.output);
+			journal.started(job.scadaPath, job.iedMapFolderPath, job.output);
+		}
+		return true;
+	}
+
+	/**
+	 * Records in the journal that a job's output was committed
+	 * @param job - job whose output was committed
+	 * @param journal - journal of finished jobs, or null if none is kept
+	 * @throws IOException - if the journal could not be written
+	 */
+	static void finish(Job job, BatchJournal journal) throws IOException {
+		if (journal != null) {
+			journal.done(job.scadaPath, job.iedMapFolderPath, job.output, job.inputHash);
+		}
+	}
+
+	/**
+	 * Returns the heap a job is expected to need, from the size of its SCADA map & data maps
+	 * @param job - job to estimate
+	 * @return the bytes of heap the job is expected to need
+	 */
+	private long estimateBytes(Job job) {
+		long workbookBytes = job.scadaPath.length();
+		File[] files = job.iedMapFolderPath.listFiles();
+		if (files != null) {
+			for (File iedMapPath : files) {
+				if (IEDMapCatalog.isDataMap(iedMapPath)) {
+					workbookBytes += iedMapPath.length();
+				}
+			}
+		}
+		return workbookBytes * heapFactor;
+	}
+
+	/**
+	 * Waits until every job before a job in the manifest was let in & the heap the job is expected to need is free.
+	 * A job needing more than the whole budget runs on its own
+	 * @param position - position of the job in the manifest
+	 * @param bytes - bytes of heap the job is expected to need
+	 * @throws InterruptedException - if the thread is interrupted while waiting
+	 */
+	private synchronized void admit(int position, long bytes) throws InterruptedException {
+		while (nextJob != position || (runningJobs > 0 && admittedBytes + bytes > memoryBudget)) {
+			wait();
+		}
+		admittedBytes += bytes;
+		runningJobs++;
+		pass(position);
+	}
+
+	/**
+	 * Records that a job was let in or does not need to be, moving the next job to let in past every job that is done waiting
+	 * @param position - position of the job in the manifest
+	 */
+	private synchronized void pass(int position) {
+		passed[position] = true;
+		while (nextJob < passed.length && passed[nextJob]) {
+			nextJob++;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Gives back the heap a finished job was expected to need
+	 * @param bytes - bytes of heap the job was expected to need
+	 */
+	private synchronized void release(long bytes) {
+		admittedBytes -= bytes;
+		runningJobs--;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the summary of every job's time & the overall throughput
+	 * @return the summary of the batch
+	 */
+	public String summary() {
+		return summary(jobs, elapsedNanos);
+	}
+
+	/**
+	 * Returns the summary of every job's time & the overall throughput
+	 * @param jobs - jobs in the order of the manifest
+	 * @param elapsedNanos - time the whole batch took
+	 * @return the summary of the batch
+	 */
+	static String summary(List<Job> jobs, long elapsedNanos) {
+		StringBuilder summary = new StringBuilder();
+		summary.append("Job\tStatus\tSeconds\tSCADA Entries\tEstimated Heap MB\tOutput\n");
+		int entries = 0;
+		int skipped = 0;
+		for (int i = 0; i < jobs.size(); i++) {
+			Job job = jobs.get(i);
+			summary.append(i + 1).append('\t').append(job.error != null ? "FAILED: " + job.error : job.skipped ? "SKIPPED" : job.redone ? "REDONE" : "OK").append('\t');
+			summary.append(String.format("%.2f", job.elapsedNanos / 1e9)).append('\t').append(job.entries).append('\t');
+			summary.append(job.estimatedBytes / 1024 / 1024).append('\t').append(job.output.getPath()).append('\n');
+			entries += job.entries;
+			skipped += job.skipped ? 1 : 0;
+		}
+		double seconds = Math.max(elapsedNanos / 1e9, 1e-3);
+		summary.append(String.format("%d jobs, %d skipped, %d failed, %.2f seconds, %.1f jobs/minute, %.0f SCADA entries/second%n", jobs.size(), skipped, countFailed(jobs), seconds,
+				jobs.size() * 60 / seconds, entries / seconds));
+		return summary.toString();
+	}
+
+	/**
+	 * One SCADA map, folder of data maps & output text file of a manifest, & how its run went
+	 */
+	public static class Job {
+		/** SCADA map file */
+		final File scadaPath;
+		/** Folder of data maps */
+		final File iedMapFolderPath;
+		/** Output text file */
+		final File output;
+		/** Bytes of heap the job is expected to need */
+		long estimatedBytes;
+		/** Number of SCADA entries written */
+		int entries;
+		/** Time the job took */
+		long elapsedNanos;
+		/** Why the job failed, or null if it did not */
+		String error;
+		/** Whether the job was skipped because it finished in an earlier run */
+		boolean skipped;
+		/** Whether the job was redone because an earlier run stopped part way through it */
+		boolean redone;
+		/** Hash of the job's inputs when it started, or null if no journal is kept */
+		String inputHash;
+
+		/**
+		 * Creates a job
+		 * @param scadaPath - SCADA map file
+		 * @param iedMapFolderPath - folder of data maps
+		 * @param output - output text file
+		 */
+		public Job(File scadaPath, File iedMapFolderPath, File output) {
+			this.scadaPath = scadaPath;
+			this.iedMapFolderPath = iedMapFolderPath;
+			this.output = output;
+		}
+
+		/**
+		 * Returns the SCADA map file
+		 * @return the SCADA map file
+		 */
+		public File getScadaPath() {
+			return scadaPath;
+		}
+
+		/**
+		 * Returns the folder of data maps
+		 * @return the folder of data maps
+		 */
+		public File getIedMapFolderPath() {
+			return iedMapFolderPath;
+		}
+
+		/**
+		 * Returns the output text file
+		 * @return the output text file
+		 */
+		public File getOutput() {
+			return output;
+		}
+
+		/**
+		 * Returns why the job failed
+		 * @return why the job failed, or null if it did not
+		 */
+		public String getError() {
+			return error;
+		}
+	}
+}
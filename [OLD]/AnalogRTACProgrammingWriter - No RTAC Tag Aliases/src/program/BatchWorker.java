@@ -0,0 +1,76 @@
+package program;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import io.IncrementalBuild;
+import ui.DialogBoxUI;
+
+/**
+ * Worker process of a {@link BatchCoordinator}. It connects to the coordinator, runs the jobs it is sent one at a time in its own heap
+ * & sends back how each went, until the coordinator has no jobs left. Paths are sent as they are,
+ * so a worker on another computer needs the maps & outputs at the same paths. The coordinator's secret is read from the secret file
+ * the coordinator wrote next to the manifest when one is given, or else from the {@value BatchCoordinator#SECRET_VARIABLE} environment variable.
+ * A job sent with settings that are not this worker's -Drtac.* settings is refused
+ * @author Hannah Layton
+ */
+public class BatchWorker {
+	/**
+	 * Main method that runs jobs until the coordinator has none left
+	 * @param args - host & port of the coordinator, & the coordinator's secret file when the secret is not in the environment
+	 * @throws IOException - if the coordinator could not be reached or the secret could not be read
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		DialogBoxUI.setHeadless(true);
+		String secret = System.getenv(BatchCoordinator.SECRET_VARIABLE);
+		if ((args.length != 2 || secret == null) && args.length != 3) {
+			System.err.println("Usage: BatchWorker <coordinator host> <coordinator port> [<secret file>], the secret file is needed when " + BatchCoordinator.SECRET_VARIABLE + " is not set");
+			System.exit(CommandLine.USAGE);
+		}
+		if (args.length == 3) {
+			secret = new String(Files.readAllBytes(new File(args[2]).toPath()), StandardCharsets.UTF_8).trim();
+		}
+		RuntimeSettings.apply();
+		String settings = IncrementalBuild.settings();
+		try (Socket coordinator = new Socket(args[0], Integer.parseInt(args[1]))) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(coordinator.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(coordinator.getOutputStream()));
+			out.writeUTF(BatchCoordinator.PROTOCOL);
+			out.writeUTF(secret);
+			out.flush();
+			// A job is sent as true, the coordinator's settings & its paths, false when there are none left
+			while (in.readBoolean()) {
+				String jobSettings = in.readUTF();
+				File scadaPath = new File(in.readUTF());
+				File iedMapFolderPath = new File(in.readUTF());
+				File output = new File(in.readUTF());
+				long start = System.nanoTime();
+				try {
+					// The journal records the job as done for the coordinator's settings, so output written with other settings would be wrong
+					if (!jobSettings.equals(settings)) {
+						throw new IllegalStateException("Worker was started with other -Drtac.* settings than the coordinator, so it does not run the job.");
+					}
+					int entries = CommandLine.generate(scadaPath, iedMapFolderPath, output);
+					out.writeBoolean(true);
+					out.writeInt(entries);
+				} catch (IOException | RuntimeException | OutOfMemoryError e) {
+					out.writeBoolean(false);
+					out.writeUTF(e.getMessage() == null ? e.toString() : e.getMessage());
+				}
+				out.writeLong(System.nanoTime() - start);
+				out.flush();
+			}
+		} catch (EOFException e) {
+			// The coordinator went away, there is nothing left to do
+		}
+	}
+}
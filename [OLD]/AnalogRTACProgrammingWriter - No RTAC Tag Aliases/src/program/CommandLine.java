@@ -0,0 +1,107 @@
+package program;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import io.ChannelTextSink;
+import io.TXTWriterIO;
+import mapObjects.IEDMap;
+import mapObjects.IEDMapCache;
+import mapObjects.SCADAMap;
+import ui.DialogBoxUI;
+
+/**
+ * Runs the program from the command line without opening any window, so it can be called from scripts & build pipelines.
+ * Paths are given as arguments, results are written to the standard output & errors to the error output,
+ * & the exit code is 0 when the output text file was written, 1 when it could not be & 2 when the arguments are wrong.
+ * Swing & AWT are never loaded
+ * @author Hannah Layton
+ */
+public class CommandLine {
+	/** Exit code when the output text file was written */
+	static final int SUCCESS = 0;
+	/** Exit code when the output text file could not be written */
+	static final int FAILURE = 1;
+	/** Exit code when the arguments are wrong */
+	static final int USAGE = 2;
+
+	/**
+	 * Main method that runs the program & exits with its exit code
+	 * @param args - SCADA map, folder of data maps & optionally the output text file
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		DialogBoxUI.setHeadless(true);
+		System.exit(run(args));
+	}
+
+	/**
+	 * Writes the output text file for the given paths
+	 * @param args - SCADA map, folder of data maps & optionally the output text file
+	 * @return the exit code
+	 */
+	static int run(String[] args) {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: CommandLine <SCADA map> <folder of data maps> [output text file]");
+			return USAGE;
+		}
+		File scadaPath = new File(args[0]);
+		File iedMapFolderPath = new File(args[1]);
+		File output = args.length > 2 ? new File(args[2]) : new File(scadaPath.getAbsoluteFile().getParentFile(), "RTAC Analog Point Structured Text.txt");
+		if (!scadaPath.isFile()) {
+			System.err.println("SCADA Map " + scadaPath + " could not be found.");
+			return FAILURE;
+		}
+		if (!iedMapFolderPath.isDirectory()) {
+			System.err.println("Folder of IED Maps " + iedMapFolderPath + " could not be found.");
+			return FAILURE;
+		}
+		try {
+			RuntimeSettings.apply();
+			int entries = generate(scadaPath, iedMapFolderPath, output);
+			System.out.println("Wrote " + entries + " SCADA entries to " + output.getPath());
+			return SUCCESS;
+		} catch (IOException | RuntimeException e) {
+			// Messages the maps already reported are not written twice
+			String message = e.getMessage() == null ? e.toString() : e.getMessage();
+			if (!message.equals(DialogBoxUI.getLastMessage())) {
+				System.err.println(message);
+			}
+			return FAILURE;
+		}
+	}
+
+	/**
+	 * Reads the maps & writes the output text file, which only replaces an earlier one once it has been completely written
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolderPath - folder of data maps
+	 * @param output - output text file
+	 * @return the number of SCADA entries written
+	 * @throws IOException - if a map could not be read or the output text file could not be written
+	 */
+	static int generate(File scadaPath, File iedMapFolderPath, File output) throws IOException {
+		SCADAMap scadaMap;
+		try (FileInputStream scadaStream = new FileInputStream(scadaPath)) {
+			scadaMap = new SCADAMap(scadaStream);
+		}
+		int entries = scadaMap.getScadaEntries().size();
+		TreeMap<String, IEDMap> iedMaps = loadDataMaps(iedMapFolderPath);
+		try (ChannelTextSink txt = new ChannelTextSink(output)) {
+			TXTWriterIO.structuredTextWriter(txt, iedMaps, scadaMap);
+			txt.commit();
+		}
+		return entries;
+	}
+
+	/**
+	 * Reads every data map in a folder, reusing the data maps loaded earlier in the session
+	 * @param iedMapFolderPath - folder of data maps
+	 * @return TreeMap of the data maps by device name
+	 * @throws IOException - if a data map file could not be checked
+	 */
+	static TreeMap<String, IEDMap> loadDataMaps(File iedMapFolderPath) throws IOException {
+		return IEDMapCache.getSessionCache().loadFolder(iedMapFolderPath);
+	}
+}
@@ -0,0 +1,68 @@
+package program;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends a job to a running {@link GenerationDaemon} & prints its progress as it arrives.
+ * Arguments are the SCADA map, the folder of data maps, optionally the output text file, & any name=value options,
+ * or SHUTDOWN on its own to stop the daemon. The daemon's port & secret are read from its key file, so only the user running it can send jobs
+ * @author Hannah Layton
+ */
+public class DaemonClient {
+	/**
+	 * Main method that sends the job
+	 * @param args - SCADA map, folder of data maps, output text file & name=value options
+	 * @throws IOException - if the daemon could not be reached
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0 || (args.length < 2 && !args[0].equals("SHUTDOWN"))) {
+			System.err.println("Usage: DaemonClient <SCADA map> <folder of data maps> [output text file] [lineTemplate=...] [wordbitMatch=...]");
+			System.err.println("       DaemonClient SHUTDOWN");
+			System.exit(2);
+		}
+		StringBuilder job = new StringBuilder();
+		if (args[0].equals("SHUTDOWN")) {
+			job.append("SHUTDOWN\n");
+		}
+		else {
+			job.append("SCADA ").append(new File(args[0]).getAbsolutePath()).append('\n');
+			job.append("FOLDER ").append(new File(args[1]).getAbsolutePath()).append('\n');
+			for (int i = 2; i < args.length; i++) {
+				if (args[i].contains("=")) {
+					job.append("OPTION ").append(args[i]).append('\n');
+				}
+				else {
+					job.append("OUTPUT ").append(new File(args[i]).getAbsolutePath()).append('\n');
+				}
+			}
+		}
+		job.append('\n');
+		boolean done = false;
+		try (Socket daemon = GenerationDaemon.connect(GenerationDaemon.keyPath())) {
+			Writer out = new OutputStreamWriter(daemon.getOutputStream(), StandardCharsets.UTF_8);
+			out.write(job.toString());
+			out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(daemon.getInputStream(), StandardCharsets.UTF_8));
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				if (line.startsWith("PROGRESS ")) {
+					System.out.println(line.substring(9));
+				}
+				else if (line.startsWith("DONE")) {
+					System.out.println(line.length() > 5 ? "Wrote " + line.substring(5) : "Done");
+					done = true;
+				}
+				else {
+					System.err.println(line.startsWith("ERROR ") ? line.substring(6) : line);
+				}
+			}
+		}
+		System.exit(done ? 0 : 1);
+	}
+}
@@ -0,0 +1,426 @@
+package program;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import io.ChannelTextSink;
+import io.LineTemplate;
+import io.TXTWriterIO;
+import mapObjects.IEDMap;
+import mapObjects.IEDMapCache;
+import mapObjects.SCADAEntry;
+import mapObjects.SCADAMap;
+import mapObjects.WordbitMatch;
+import ui.DialogBoxUI;
+
+/**
+ * Program that stays running & writes output text files for jobs sent to it by {@link DaemonClient}, so POI only starts once
+ * & maps that have not changed since an earlier job are not read again.
+ * Jobs are sent to a port on the loopback address. The daemon writes the port & a secret made for every start to a key file that only
+ * the user running it can read, & a client has to send the secret as its first line, so other users of the computer cannot send jobs.
+ * A job follows as lines of text ended by an empty line:
+ * <ul>
+ * <li>SCADA path - SCADA map file</li>
+ * <li>FOLDER path - folder of data maps</li>
+ * <li>OUTPUT path - output text file, next to the SCADA map when not given</li>
+ * <li>OPTION name=value - lineTemplate or wordbitMatch used for this job only</li>
+ * <li>SHUTDOWN - stops the daemon</li>
+ * <li>PING - only answers DONE, to check a daemon is running</li>
+ * </ul>
+ * The daemon answers with PROGRESS lines followed by DONE & the output file, or ERROR & what went wrong.
+ * Messages from the maps are written to the error output, so a bad workbook never holds the daemon up with a dialog box.
+ * SCADA maps read by earlier jobs are kept up to a budget, dropping the least recently used first
+ * @author Hannah Layton
+ */
+public class GenerationDaemon {
+	/** Name of the key file in the user's .rtac folder when none is given */
+	private static final String DEFAULT_KEY = "daemon.key";
+	/** Milliseconds a client has to send the secret, so a silent connection does not hold up the daemon */
+	private static final int SECRET_TIMEOUT_MILLIS = 10000;
+	/** Number of random bytes in the secret */
+	private static final int SECRET_BYTES = 32;
+	/** Rough number of bytes a kept SCADA entry uses in memory */
+	private static final long SCADA_ENTRY_BYTES = 256;
+
+	/** SCADA maps read by earlier jobs by path, least recently used first */
+	private final LinkedHashMap<File, CachedFile<List<SCADAEntry>>> scadaMaps = new LinkedHashMap<File, CachedFile<List<SCADAEntry>>>(16, 0.75f, true);
+	/** Bytes of heap the kept SCADA maps may use together */
+	private final long maxScadaBytes;
+	/** Bytes of heap the kept SCADA maps are expected to use */
+	private long scadaBytes;
+	/** Whether a SHUTDOWN was received */
+	private boolean shutdown;
+
+	/**
+	 * Creates a daemon
+	 * @param maxScadaBytes - bytes of heap the SCADA maps kept between jobs may use together
+	 */
+	public GenerationDaemon(long maxScadaBytes) {
+		this.maxScadaBytes = maxScadaBytes;
+	}
+
+	/**
+	 * Main method that runs the daemon until a SHUTDOWN is received
+	 * @param args - possible arguments
+	 * @throws Exception - any error that occurs when the daemon starts
+	 */
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		DialogBoxUI.setHeadless(true);
+		RuntimeSettings.apply();
+		// Starts POI & loads its schemas before the first job arrives
+		new XSSFWorkbook().close();
+		// SCADA maps are kept between jobs up to -Drtac.daemonScadaMB=..., an eighth of the heap when not given
+		long maxScadaMB = Long.getLong("rtac.daemonScadaMB", Runtime.getRuntime().maxMemory() / 1024 / 1024 / 8);
+		new GenerationDaemon(maxScadaMB * 1024 * 1024).serve(keyPath(), Integer.getInteger("rtac.daemonPort", 0));
+	}
+
+	/**
+	 * Returns the key file holding the daemon's port & secret, which is -Drtac.daemonKey=... or daemon.key in the user's .rtac folder
+	 * @return the key file holding the daemon's port & secret
+	 */
+	static Path keyPath() {
+		String key = System.getProperty("rtac.daemonKey");
+		return key != null ? Paths.get(key).toAbsolutePath() : Paths.get(System.getProperty("user.home"), ".rtac", DEFAULT_KEY);
+	}
+
+	/**
+	 * Runs jobs one at a time as they are sent to the port, until a SHUTDOWN is received
+	 * @param keyPath - key file the port & secret are written to
+	 * @param port - port on the loopback address jobs are sent to, or 0 for any free port
+	 * @throws IOException - if the port could not be opened, the key file could not be written or a daemon is already using it
+	 */
+	public void serve(Path keyPath, int port) throws IOException {
+		createPrivateFolder(keyPath.getParent());
+		// A key file left by a daemon that stopped is replaced, one still in use is not
+		if (Files.exists(keyPath)) {
+			if (isRunning(keyPath)) {
+				throw new IOException("A daemon is already running with " + keyPath + ".");
+			}
+			Files.delete(keyPath);
+		}
+		byte[] random = new byte[SECRET_BYTES];
+		new SecureRandom().nextBytes(random);
+		String secret = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+		// Only accepts jobs from this computer
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			writeKey(keyPath, server.getLocalPort(), secret);
+			while (!shutdown) {
+				try (Socket client = server.accept()) {
+					BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+					Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8));
+					// Only a client that could read the key file can send jobs
+					client.setSoTimeout(SECRET_TIMEOUT_MILLIS);
+					String clientSecret = in.readLine();
+					if (clientSecret == null || !MessageDigest.isEqual(clientSecret.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8))) {
+						continue;
+					}
+					client.setSoTimeout(0);
+					try {
+						run(in, out);
+					} catch (IOException | RuntimeException e) {
+						reply(out, "ERROR " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+					}
+					out.flush();
+				} catch (IOException e) {
+					// The client went away or did not send the secret in time, the daemon keeps running
+				}
+			}
+		}
+		finally {
+			Files.deleteIfExists(keyPath);
+		}
+	}
+
+	/**
+	 * Writes the port & secret to a new key file that only its owner can read on file systems with POSIX permissions
+	 * @param keyPath - key file
+	 * @param port - port jobs are sent to
+	 * @param secret - secret clients have to send
+	 * @throws IOException - if the key file could not be written
+	 */
+	private static void writeKey(Path keyPath, int port, String secret) throws IOException {
+		// The file is created private, so the secret is never readable by others even for a moment
+		if (isPosix()) {
+			Files.createFile(keyPath, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		else {
+			Files.createFile(keyPath);
+		}
+		Files.write(keyPath, (port + "\n" + secret + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Opens a connection to the daemon of a key file & sends it the secret
+	 * @param keyPath - key file holding the daemon's port & secret
+	 * @return the connection to the daemon, ready for a job
+	 * @throws IOException - if the key file could not be read or the daemon could not be reached
+	 */
+	static Socket connect(Path keyPath) throws IOException {
+		List<String> key = Files.readAllLines(keyPath, StandardCharsets.UTF_8);
+		if (key.size() < 2) {
+			throw new IOException("Key file " + keyPath + " does not hold a port & a secret.");
+		}
+		Socket daemon = new Socket();
+		try {
+			daemon.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(key.get(0).trim())));
+			daemon.getOutputStream().write((key.get(1).trim() + "\n").getBytes(StandardCharsets.UTF_8));
+			return daemon;
+		} catch (IOException | RuntimeException e) {
+			daemon.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns whether a daemon answers a PING with the port & secret of a key file
+	 * @param keyPath - key file
+	 * @return whether a daemon is answering with the key file
+	 */
+	private static boolean isRunning(Path keyPath) {
+		Socket running = null;
+		try {
+			running = connect(keyPath);
+			running.setSoTimeout(SECRET_TIMEOUT_MILLIS);
+			running.getOutputStream().write("PING\n\n".getBytes(StandardCharsets.UTF_8));
+			return "DONE".equals(new BufferedReader(new InputStreamReader(running.getInputStream(), StandardCharsets.UTF_8)).readLine());
+		} catch (IOException | RuntimeException e) {
+			return false;
+		}
+		finally {
+			if (running != null) {
+				try {
+					running.close();
+				} catch (IOException e) {
+					// The answer was already read
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the folder of the key file, which only the user can open on file systems with POSIX permissions
+	 * @param folder - folder of the key file
+	 * @throws IOException - if the folder could not be created
+	 */
+	private static void createPrivateFolder(Path folder) throws IOException {
+		if (!Files.isDirectory(folder)) {
+			Files.createDirectories(folder);
+			if (isPosix()) {
+				Files.setPosixFilePermissions(folder, PosixFilePermissions.fromString("rwx------"));
+			}
+		}
+	}
+
+	/**
+	 * Returns whether files have POSIX permissions, which is not the case on Windows where the user's folders are already private
+	 * @return whether files have POSIX permissions
+	 */
+	static boolean isPosix() {
+		return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+	}
+
+	/**
+	 * Reads a job & runs it
+	 * @param in - lines sent by the client
+	 * @param out - lines sent back to the client
+	 * @throws IOException - if the job could not be read or run
+	 */
+	private void run(BufferedReader in, Writer out) throws IOException {
+		File scadaPath = null;
+		File iedMapFolder = null;
+		File output = null;
+		String lineTemplate = null;
+		String wordbitMatch = null;
+		for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+			if (line.equals("SHUTDOWN")) {
+				shutdown = true;
+				reply(out, "DONE");
+				return;
+			}
+			else if (line.equals("PING")) {
+				reply(out, "DONE");
+				return;
+			}
+			else if (line.startsWith("SCADA ")) {
+				scadaPath = new File(line.substring(6)).getAbsoluteFile();
+			}
+			else if (line.startsWith("FOLDER ")) {
+				iedMapFolder = new File(line.substring(7)).getAbsoluteFile();
+			}
+			else if (line.startsWith("OUTPUT ")) {
+				output = new File(line.substring(7)).getAbsoluteFile();
+			}
+			else if (line.startsWith("OPTION lineTemplate=")) {
+				lineTemplate = line.substring(20);
+			}
+			else if (line.startsWith("OPTION wordbitMatch=")) {
+				wordbitMatch = line.substring(20);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown job line " + line + ".");
+			}
+		}
+		if (scadaPath == null || iedMapFolder == null) {
+			throw new IllegalArgumentException("A job needs a SCADA map & a folder of data maps.");
+		}
+		if (output == null) {
+			output = new File(scadaPath.getParentFile(), "RTAC Analog Point Structured Text.txt");
+		}
+		// Options only apply to this job
+		LineTemplate defaultLineTemplate = TXTWriterIO.getLineTemplate();
+		WordbitMatch defaultWordbitMatch = TXTWriterIO.getWordbitMatch();
+		try {
+			if (lineTemplate != null) {
+				TXTWriterIO.setLineTemplate(LineTemplate.forName(lineTemplate));
+			}
+			if (wordbitMatch != null) {
+				TXTWriterIO.setWordbitMatch(WordbitMatch.valueOf(wordbitMatch.toUpperCase()));
+			}
+			List<SCADAEntry> scadaEntries = readScadaMap(scadaPath, out);
+			TreeMap<String, IEDMap> jobMaps = readDataMaps(iedMapFolder, out);
+			try (ChannelTextSink txt = new ChannelTextSink(output)) {
+				TXTWriterIO.structuredTextWriter(txt, jobMaps, scadaEntries);
+				txt.commit();
+			}
+			reply(out, "PROGRESS Wrote " + scadaEntries.size() + " SCADA entries");
+			reply(out, "DONE " + output.getPath());
+		}
+		finally {
+			TXTWriterIO.setLineTemplate(defaultLineTemplate);
+			TXTWriterIO.setWordbitMatch(defaultWordbitMatch);
+		}
+	}
+
+	/**
+	 * Returns the entries of a SCADA map, only reading the file if it changed since an earlier job or was dropped to stay within the budget
+	 * @param scadaPath - SCADA map file
+	 * @param out - lines sent back to the client
+	 * @return the entries of the SCADA map in the order of the SCADA map
+	 * @throws IOException - if the SCADA map could not be read
+	 */
+	private List<SCADAEntry> readScadaMap(File scadaPath, Writer out) throws IOException {
+		CachedFile<List<SCADAEntry>> cached = scadaMaps.get(scadaPath);
+		if (cached != null && cached.isCurrent(scadaPath)) {
+			reply(out, "PROGRESS Reused SCADA map " + scadaPath.getName());
+			return cached.value;
+		}
+		try (FileInputStream scadaStream = new FileInputStream(scadaPath)) {
+			List<SCADAEntry> scadaEntries = new ArrayList<SCADAEntry>(new SCADAMap(scadaStream).getScadaEntries());
+			keep(scadaPath, new CachedFile<List<SCADAEntry>>(scadaPath, scadaEntries, scadaEntries.size() * SCADA_ENTRY_BYTES));
+			reply(out, "PROGRESS Read SCADA map " + scadaPath.getName() + " (" + scadaEntries.size() + " entries)");
+			return scadaEntries;
+		}
+	}
+
+	/**
+	 * Keeps the entries of a SCADA map, dropping the least recently used SCADA maps while the kept SCADA maps are over the budget
+	 * @param scadaPath - SCADA map file
+	 * @param cached - entries of the SCADA map
+	 */
+	private void keep(File scadaPath, CachedFile<List<SCADAEntry>> cached) {
+		CachedFile<List<SCADAEntry>> replaced = scadaMaps.put(scadaPath, cached);
+		if (replaced != null) {
+			scadaBytes -= replaced.bytes;
+		}
+		scadaBytes += cached.bytes;
+		for (Iterator<CachedFile<List<SCADAEntry>>> leastRecentlyUsed = scadaMaps.values().iterator(); scadaBytes > maxScadaBytes && leastRecentlyUsed.hasNext();) {
+			scadaBytes -= leastRecentlyUsed.next().bytes;
+			leastRecentlyUsed.remove();
+		}
+	}
+
+	/**
+	 * Returns the data maps in a folder, only reading the files that changed since an earlier job or were dropped from the session cache
+	 * @param iedMapFolder - folder of data maps
+	 * @param out - lines sent back to the client
+	 * @return the data maps by device name
+	 * @throws IOException - if a data map could not be read
+	 */
+	private TreeMap<String, IEDMap> readDataMaps(File iedMapFolder, Writer out) throws IOException {
+		IEDMapCache cache = IEDMapCache.getSessionCache();
+		long misses = cache.getMisses();
+		long hits = cache.getHits();
+		TreeMap<String, IEDMap> jobMaps = cache.loadFolder(iedMapFolder);
+		// Jobs are run one at a time, so the change in the statistics is this job's
+		reply(out, "PROGRESS Read " + (cache.getMisses() - misses) + " data maps, reused " + (cache.getHits() - hits));
+		reply(out, "PROGRESS " + cache.getStatistics());
+		return jobMaps;
+	}
+
+	/**
+	 * Sends a line back to the client straight away
+	 * @param out - lines sent back to the client
+	 * @param line - line to send
+	 * @throws IOException - if the line could not be sent
+	 */
+	private static void reply(Writer out, String line) throws IOException {
+		out.write(line);
+		out.write('\n');
+		out.flush();
+	}
+
+	/**
+	 * Something read from a file, kept until the file changes
+	 * @param <T> - what was read from the file
+	 */
+	private static class CachedFile<T> {
+		/** Time the file was last changed when it was read */
+		private final long modified;
+		/** Size of the file in bytes when it was read */
+		private final long size;
+		/** What was read from the file */
+		private final T value;
+		/** Rough number of bytes what was read uses in memory */
+		private final long bytes;
+
+		/**
+		 * Creates something read from a file
+		 * @param file - file that was read
+		 * @param value - what was read from the file
+		 * @param bytes - rough number of bytes what was read uses in memory
+		 */
+		private CachedFile(File file, T value, long bytes) {
+			this.modified = file.lastModified();
+			this.size = file.length();
+			this.value = value;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Returns whether the file has not changed since it was read
+		 * @param file - file that was read
+		 * @return whether the file has not changed since it was read
+		 */
+		private boolean isCurrent(File file) {
+			return file.lastModified() == modified && file.length() == size;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package program;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import mapObjects.IEDMap;
+import mapObjects.IEDMapCatalog;
+import mapObjects.PointTemplate;
+import ui.DialogBoxUI;
+import ui.FolderSelectionUI;
+
+/**
+ * Measures how much memory the data maps in a folder keep in use once they are loaded, with & without compact loading
+ * @author Hannah Layton
+ */
+public class HeapMeasurement {
+	/** Number of times garbage collection is asked for before memory use is read */
+	private static final int GC_PASSES = 5;
+
+	/**
+	 * Main method that runs the measurement
+	 * @param args - possible arguments
+	 * @throws Exception - any error that occurs when the measurement runs
+	 */
+	public static void main(String[] args) throws Exception {
+		FolderSelectionUI iedMapSelector = new FolderSelectionUI("Please select your folder of IED Maps.");
+		File iedMapFolderPath = iedMapSelector.getFilePath();
+		List<File> iedMapPaths = new ArrayList<File>();
+		for (File iedMapPath : iedMapFolderPath.listFiles()) {
+			if (IEDMapCatalog.isDataMap(iedMapPath)) {
+				iedMapPaths.add(iedMapPath);
+			}
+		}
+		if (iedMapPaths.isEmpty()) {
+			DialogBoxUI.infoBox("No IED Maps were found in the folder.", "");
+			throw new IllegalArgumentException("No IED Maps were found in the folder.");
+		}
+		long fullBytes = retainedBytes(iedMapPaths, false);
+		long compactBytes = retainedBytes(iedMapPaths, true);
+		DialogBoxUI.infoBox("IED Maps loaded: " + iedMapPaths.size()
+				+ "\nRetained bytes per IED Map with workbooks: " + fullBytes / iedMapPaths.size()
+				+ "\nRetained bytes per IED Map loaded compactly: " + compactBytes / iedMapPaths.size(), "");
+	}
+
+	/**
+	 * Loads every data map & returns how much more memory is in use while they are loaded
+	 * @param iedMapPaths - data map files
+	 * @param compactLoading - whether the data maps are loaded compactly
+	 * @return the number of bytes kept in use by the loaded data maps
+	 * @throws InterruptedException - if the thread is interrupted while waiting for garbage collection
+	 */
+	private static long retainedBytes(List<File> iedMapPaths, boolean compactLoading) throws InterruptedException {
+		boolean wasCompactLoading = IEDMap.isCompactLoading();
+		IEDMap.setCompactLoading(compactLoading);
+		try {
+			// Templates shared with an earlier measurement would not be counted again
+			PointTemplate.clearTemplates();
+			long before = usedBytes();
+			List<IEDMap> iedMaps = new ArrayList<IEDMap>();
+			for (File iedMapPath : iedMapPaths) {
+				iedMaps.add(IEDMapCatalog.load(iedMapPath));
+			}
+			long after = usedBytes();
+			// Keeps the data maps loaded until memory use has been read
+			if (iedMaps.size() != iedMapPaths.size()) {
+				throw new IllegalStateException("Not every IED Map was loaded.");
+			}
+			return after - before;
+		}
+		finally {
+			IEDMap.setCompactLoading(wasCompactLoading);
+			PointTemplate.clearTemplates();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes in use after garbage collection
+	 * @return the number of bytes in use after garbage collection
+	 * @throws InterruptedException - if the thread is interrupted while waiting for garbage collection
+	 */
+	private static long usedBytes() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < GC_PASSES; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
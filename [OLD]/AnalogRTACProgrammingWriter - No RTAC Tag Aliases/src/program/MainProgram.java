@@ -5,15 +5,32 @@ package program;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeMap;
 
+import io.ChannelTextSink;
+import io.CrossReferenceSink;
+import io.GenerationPipeline;
+import io.IncrementalBuild;
+import io.JsonLinesSink;
+import io.MapWatcher;
+import io.PartitionMode;
+import io.PartitionedOutput;
+import io.PointSink;
+import io.SortMergeJoin;
+import io.StructuredTextSink;
 import io.TXTWriterIO;
+import io.XMLExportSink;
 import mapObjects.SCADAMap;
 import ui.DialogBoxUI;
 import ui.FolderSelectionUI;
 import ui.MapSelectionUI;
 import mapObjects.IEDMap;
+import mapObjects.IEDMapCache;
+import mapObjects.IEDMapCatalog;
 
 /**
  * Main class when running the program
@@ -26,34 +43,128 @@ public class MainProgram {
 	 * @throws Exception - any error that occurs when the program runs
 	 */
 	public static void main(String[] args) throws Exception {
+		RuntimeSettings.apply();
 		// Opens the file selection window to select the SCADA Map
 		MapSelectionUI scadaMapSelector = new MapSelectionUI("Please select your SCADA Map.");
 		File scadaPath = scadaMapSelector.getFilePath();
 		FileInputStream scadaStream = new FileInputStream(scadaPath);
-		SCADAMap scadaMap = new SCADAMap(scadaStream);
+		// The pipeline join mode reads the SCADA entries while the output is written instead of before
+		boolean pipeline = "PIPELINE".equalsIgnoreCase(System.getProperty("rtac.joinMode"));
+		SCADAMap scadaMap = new SCADAMap(scadaStream, !pipeline);
 		scadaStream.close();
 		// Opens the file selection window to select the folder of data maps
 		FolderSelectionUI iedMapSelector = new FolderSelectionUI("Please select your folder of IED Maps.");
 		File iedMapFolderPath = iedMapSelector.getFilePath();
-		// Generates the structured text file
-		PrintWriter writer = new PrintWriter(scadaPath.getParentFile() + "\\RTAC Analog Point Structured Text.txt", "UTF-8");
-		TreeMap<String, IEDMap> iedMaps = new TreeMap<String, IEDMap>();
-		// Loops through each file in the folder of data maps
-		for (File iedMapPath : iedMapFolderPath.listFiles()) {
-			// Checks if the file is not an data map
-			if (!iedMapPath.getName().toLowerCase().contains(".xlsx") || !iedMapPath.getName().contains("Data_Map")) {
-				continue;
+		// The output can be written again whenever a map is saved with -Drtac.watch=true, until the dialog box is closed
+		if (Boolean.getBoolean("rtac.watch")) {
+			MapWatcher watcher = new MapWatcher(scadaPath, iedMapFolderPath, new File(scadaPath.getParentFile(), "RTAC Analog Point Structured Text.txt"));
+			watcher.start(scadaMap);
+			DialogBoxUI.infoBox("Watching the maps for changes. Press OK to stop watching.", "");
+			watcher.stop();
+			return;
+		}
+		// The output can be split into several files with -Drtac.partitionMode=DEVICE, ADDRESS_RANGE, LINES or BYTES & -Drtac.partitionLimit=...
+		String partitionMode = System.getProperty("rtac.partitionMode");
+		if (partitionMode != null) {
+			PartitionMode mode = PartitionMode.valueOf(partitionMode.toUpperCase());
+			PartitionedOutput output = new PartitionedOutput(scadaPath.getParentFile(), "RTAC Analog Point Structured Text", mode, Integer.getInteger("rtac.partitionLimit", mode.getDefaultLimit()));
+			output.structuredTextWriter(loadDataMaps(iedMapFolderPath), scadaMap, Integer.getInteger("rtac.parallelism", Runtime.getRuntime().availableProcessors()));
+			DialogBoxUI.infoBox("Writing Complete!", "");
+			return;
+		}
+		// Cross-references can be written in the same pass as the structured text with -Drtac.outputs=ST,CSV,JSONL,XML
+		String outputs = System.getProperty("rtac.outputs");
+		if (outputs != null) {
+			TreeMap<String, IEDMap> iedMaps = loadDataMaps(iedMapFolderPath);
+			List<PointSink> sinks = new ArrayList<PointSink>();
+			try {
+				for (String output : outputs.split(",")) {
+					if (output.trim().equalsIgnoreCase("ST")) {
+						sinks.add(new StructuredTextSink(new File(scadaPath.getParentFile(), "RTAC Analog Point Structured Text.txt")));
+					}
+					else if (output.trim().equalsIgnoreCase("CSV")) {
+						sinks.add(new CrossReferenceSink(new File(scadaPath.getParentFile(), "RTAC Analog Point Cross Reference.csv")));
+					}
+					else if (output.trim().equalsIgnoreCase("JSONL")) {
+						sinks.add(new JsonLinesSink(new File(scadaPath.getParentFile(), "RTAC Analog Point Cross Reference.jsonl")));
+					}
+					else if (output.trim().equalsIgnoreCase("XML")) {
+						sinks.add(new XMLExportSink(new File(scadaPath.getParentFile(), "RTAC Analog Point Tag Mapping.xml"), "SCADA_Analog_Points"));
+					}
+					else {
+						DialogBoxUI.infoBox("Unknown output " + output + ".", "");
+						throw new IllegalArgumentException("Unknown output " + output + ".");
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				// Outputs opened before the one that failed delete their temporary files
+				for (PointSink sink : sinks) {
+					try {
+						sink.close();
+					} catch (IOException closeFailure) {
+						e.addSuppressed(closeFailure);
+					}
+				}
+				throw e;
+			}
+			TXTWriterIO.structuredTextWriter(sinks, iedMaps, scadaMap);
+			DialogBoxUI.infoBox("Writing Complete!", "");
+			return;
+		}
+		// Generates the structured text file, which only replaces an earlier one once it has been completely written
+		ChannelTextSink sink = new ChannelTextSink(new File(scadaPath.getParentFile(), "RTAC Analog Point Structured Text.txt"));
+		PrintWriter writer = new PrintWriter(sink);
+		try {
+			if ("STREAMING".equalsIgnoreCase(System.getProperty("rtac.joinMode"))) {
+				// Only keeps each data map loaded while SCADA entries referencing it are left to write
+				TXTWriterIO.structuredTextWriter(writer, new IEDMapCatalog(iedMapFolderPath), scadaMap);
+			}
+			else if (pipeline) {
+				// Reads, matches & writes the entries at the same time, holding at most -Drtac.pipelineQueueSize=... entries between stages
+				// & loading at most -Drtac.pipelineMaps=... data maps ahead of the entries needing them
+				new GenerationPipeline(Integer.getInteger("rtac.pipelineQueueSize", 1024), Integer.getInteger("rtac.pipelineMaps", 4)).structuredTextWriter(writer, scadaMap, iedMapFolderPath);
+			}
+			else if (Boolean.getBoolean("rtac.incremental")) {
+				// Only matches the entries of devices whose data map or SCADA rows changed since the last -Drtac.incremental=true run
+				new IncrementalBuild(new File(scadaPath.getParentFile(), "RTAC Analog Point Structured Text.cache")).structuredTextWriter(sink, scadaMap, iedMapFolderPath);
+			}
+			else if ("SORT_MERGE".equalsIgnoreCase(System.getProperty("rtac.joinMode"))) {
+				// Sorts both sides on disk once more than -Drtac.joinMemoryMB=... megabytes of points are held in memory
+				long memoryBudget = Long.getLong("rtac.joinMemoryMB", 64) * 1024 * 1024;
+				new SortMergeJoin(memoryBudget, new File(System.getProperty("java.io.tmpdir"))).structuredTextWriter(writer, scadaMap, iedMapFolderPath);
 			}
-			// Adds ied map to Tree Map
-			FileInputStream iedStream = new FileInputStream(iedMapPath);
-			IEDMap iedMap = new IEDMap(iedStream);
-			String deviceName = iedMap.getDeviceName();
-			iedMaps.put(deviceName, iedMap);
-			iedStream.close();
+			else {
+				TreeMap<String, IEDMap> iedMaps = loadDataMaps(iedMapFolderPath);
+				// Entries can be written by several threads at once with -Drtac.parallelism=...
+				int parallelism = Integer.getInteger("rtac.parallelism", 1);
+				if (parallelism > 1) {
+					TXTWriterIO.structuredTextWriter(writer, iedMaps, scadaMap, parallelism);
+				}
+				else {
+					TXTWriterIO.structuredTextWriter(sink, iedMaps, scadaMap);
+				}
+			}
+			writer.flush();
+			if (writer.checkError()) {
+				DialogBoxUI.infoBox("Structured text file could not be written.", "");
+				throw new IllegalArgumentException("Structured text file could not be written.");
+			}
+			sink.commit();
+		}
+		finally {
+			writer.close();
 		}
-		TXTWriterIO.structuredTextWriter(writer, iedMaps, scadaMap);
-		writer.close();
 		// Opens the completion dialog box
 		DialogBoxUI.infoBox("Writing Complete!", "");
 	}
+
+	/**
+	 * Loads every data map in a folder, reusing the data maps loaded earlier in the session
+	 * @param iedMapFolderPath - folder of data maps
+	 * @return the data maps saved by device name
+	 * @throws IOException - if a data map file could not be checked
+	 */
+	private static TreeMap<String, IEDMap> loadDataMaps(File iedMapFolderPath) throws IOException {
+		return IEDMapCache.getSessionCache().loadFolder(iedMapFolderPath);
+	}
 }
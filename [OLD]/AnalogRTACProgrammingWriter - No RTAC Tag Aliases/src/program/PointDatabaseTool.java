@@ -0,0 +1,195 @@
+package program;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import io.PointDatabase;
+import io.PointDatabase.Point;
+import mapObjects.SCADAMap;
+import ui.DialogBoxUI;
+
+/**
+ * Runs the point database from the command line without opening any window. A station's maps are exported into the database,
+ * replacing what it held for the station, & points are looked up across every station. Points are written to the standard output
+ * as tab separated rows & the exit codes are the same as {@link CommandLine}'s.
+ * The shell command keeps the database open & runs one command per line of the standard input, with the command's arguments
+ * separated by tabs, so the station files are only read & indexed once for any number of questions. An empty line is written after
+ * the rows of each command, & the shell stops at the end of the input or at a line of quit.
+ * The model command finds the points of every device of a relay model, matching the whole model the data maps list after the device
+ * in any case, so SEL-487E does not find the points of a SEL-487B
+ * @author Hannah Layton
+ */
+public class PointDatabaseTool {
+	/** Usage of the tool */
+	private static final String USAGE = "Usage: PointDatabaseTool <database folder> export <station> <SCADA map> <folder of data maps>\n"
+			+ "       PointDatabaseTool <database folder> remove <station>\n"
+			+ "       PointDatabaseTool <database folder> address|device|model|wordbit|rtac <value>\n"
+			+ "       PointDatabaseTool <database folder> duplicates|stations\n"
+			+ "       PointDatabaseTool <database folder> shell";
+
+	/**
+	 * Main method that runs one command against the database & exits with its exit code
+	 * @param args - database folder, command & the command's arguments
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		DialogBoxUI.setHeadless(true);
+		System.exit(run(args));
+	}
+
+	/**
+	 * Runs one command against the database, or every command of the standard input for the shell command
+	 * @param args - database folder, command & the command's arguments
+	 * @return the exit code
+	 */
+	static int run(String[] args) {
+		if (args.length < 2) {
+			System.err.println(USAGE);
+			return CommandLine.USAGE;
+		}
+		try {
+			RuntimeSettings.apply();
+			long start = System.nanoTime();
+			PointDatabase database = new PointDatabase(new File(args[0]));
+			long opened = System.nanoTime();
+			if (args[1].equals("shell") && args.length == 2) {
+				System.err.printf("Opened in %.1f ms%n", (opened - start) / 1e6);
+				return shell(database);
+			}
+			int exitCode = execute(database, Arrays.copyOfRange(args, 1, args.length));
+			if (exitCode == CommandLine.SUCCESS) {
+				// Timings go to the error output so the rows can be piped on their own
+				System.err.printf("Opened in %.1f ms, ran in %.1f ms%n", (opened - start) / 1e6, (System.nanoTime() - opened) / 1e6);
+			}
+			return exitCode;
+		} catch (IOException | RuntimeException e) {
+			report(e);
+			return CommandLine.FAILURE;
+		}
+	}
+
+	/**
+	 * Runs every command of the standard input against an open database
+	 * @param database - open database
+	 * @return the exit code, which is the exit code of the last command that did not succeed, or success if they all did
+	 * @throws IOException - if the standard input could not be read
+	 */
+	private static int shell(PointDatabase database) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		int exitCode = CommandLine.SUCCESS;
+		for (String line = in.readLine(); line != null && !line.trim().equals("quit"); line = in.readLine()) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			long start = System.nanoTime();
+			int commandExitCode;
+			try {
+				commandExitCode = execute(database, line.split("\t"));
+			} catch (IOException | RuntimeException e) {
+				report(e);
+				commandExitCode = CommandLine.FAILURE;
+			}
+			if (commandExitCode != CommandLine.SUCCESS) {
+				exitCode = commandExitCode;
+			}
+			System.err.printf("Ran in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+			System.out.println();
+			System.out.flush();
+		}
+		return exitCode;
+	}
+
+	/**
+	 * Runs one command against an open database
+	 * @param database - open database
+	 * @param command - command & the command's arguments
+	 * @return the exit code
+	 * @throws IOException - if the maps could not be read or the database could not be changed
+	 */
+	private static int execute(PointDatabase database, String[] command) throws IOException {
+		String name = command[0].trim();
+		if (name.equals("export") && command.length == 4) {
+			SCADAMap scadaMap;
+			try (FileInputStream scadaStream = new FileInputStream(command[2])) {
+				scadaMap = new SCADAMap(scadaStream);
+			}
+			database.upsertStation(command[1], scadaMap.getScadaEntries(), CommandLine.loadDataMaps(new File(command[3])));
+			System.out.println("Exported " + command[1] + ", " + database.getPointCount() + " points in " + database.getStations().size() + " stations");
+		}
+		else if (name.equals("remove") && command.length == 2) {
+			System.out.println(database.removeStation(command[1]) ? "Removed " + command[1] : command[1] + " is not in the database");
+		}
+		else if (name.equals("address") && command.length == 2) {
+			print(database.findByAddress(Integer.parseInt(command[1].trim())));
+		}
+		else if (name.equals("device") && command.length == 2) {
+			print(database.findByDevice(command[1]));
+		}
+		else if (name.equals("model") && command.length == 2) {
+			print(database.findByModel(command[1]));
+		}
+		else if (name.equals("wordbit") && command.length == 2) {
+			print(database.findByWordbit(command[1]));
+		}
+		else if (name.equals("rtac") && command.length == 2) {
+			print(database.findByRtacName(command[1]));
+		}
+		else if (name.equals("duplicates") && command.length == 1) {
+			for (Map.Entry<String, List<Point>> duplicate : database.findDuplicateRtacNames().entrySet()) {
+				print(duplicate.getValue());
+			}
+		}
+		else if (name.equals("stations") && command.length == 1) {
+			for (String station : database.getStations()) {
+				System.out.println(station);
+			}
+		}
+		else {
+			System.err.println(USAGE);
+			return CommandLine.USAGE;
+		}
+		return CommandLine.SUCCESS;
+	}
+
+	/**
+	 * Writes why a command failed to the error output, unless the same message was already written as a dialog
+	 * @param e - why the command failed
+	 */
+	private static void report(Exception e) {
+		String message = e.getMessage() == null ? e.toString() : e.getMessage();
+		if (!message.equals(DialogBoxUI.getLastMessage())) {
+			System.err.println(message);
+		}
+	}
+
+	/**
+	 * Writes points as tab separated rows of station, DNP address, device, full device name, wordbit, relay element, RTAC name, scale factor, description & status
+	 * @param points - points to write
+	 */
+	private static void print(List<Point> points) {
+		StringBuilder rows = new StringBuilder();
+		for (Point point : points) {
+			rows.append(point.getStation()).append('\t').append(point.getDnpAddress()).append('\t').append(point.getDevice()).append('\t')
+					.append(text(point.getFullDeviceName())).append('\t').append(text(point.getWordbit())).append('\t').append(text(point.getRelayElement())).append('\t')
+					.append(text(point.getRtacName())).append('\t').append(point.getScaling()).append('\t').append(text(point.getDescription())).append('\t')
+					.append(point.getStatus()).append(System.lineSeparator());
+		}
+		System.out.print(rows);
+	}
+
+	/**
+	 * Returns text that may be missing as it is written in a row
+	 * @param text - text, or null if it is missing
+	 * @return the text, or an empty string if it is missing
+	 */
+	private static String text(String text) {
+		return text == null ? "" : text;
+	}
+}
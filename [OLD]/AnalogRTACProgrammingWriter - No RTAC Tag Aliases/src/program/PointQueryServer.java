@@ -0,0 +1,217 @@
+package program;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.JsonLinesSink;
+import io.MapWatcher;
+import io.PointIndex;
+import mapObjects.IEDMap;
+import mapObjects.SCADAEntry;
+import mapObjects.SCADAMap;
+import ui.DialogBoxUI;
+import ui.FolderSelectionUI;
+import ui.MapSelectionUI;
+
+/**
+ * Local HTTP service answering questions about the points of the selected maps as JSON, e.g. which RTAC tag a DNP address carries
+ * or which DNP addresses carry an RTAC tag. The maps are watched & the points indexed again whenever one of them is saved.
+ * <ul>
+ * <li>GET /points/address/12 - points at DNP address 12</li>
+ * <li>GET /points/alias/TAG - points carrying RTAC tag TAG</li>
+ * <li>GET /points/device/NAME - points of Slave IED Device NAME</li>
+ * <li>GET /points/wordbit/WORDBIT - points with SCADA wordbit or relay element WORDBIT</li>
+ * <li>GET /status - number of points, number of times the maps changed, time the points were last indexed & why the maps
+ * could not be indexed or watched, if they could not</li>
+ * </ul>
+ * @author Hannah Layton
+ */
+public class PointQueryServer {
+	/** Port the service listens on when none is given */
+	private static final int DEFAULT_PORT = 47811;
+
+	/** Points of the maps as they were last indexed */
+	private volatile PointIndex index;
+	/** Time the points were last indexed in milliseconds since 1970 */
+	private volatile long lastIndexedMillis;
+	/** Why the maps could not be indexed the last time they changed, or null if they were */
+	private volatile String indexFailure;
+	/** Watcher indexing the points again whenever a map is saved */
+	private MapWatcher watcher;
+	/** HTTP server answering the questions */
+	private HttpServer server;
+	/** Threads answering the questions */
+	private ExecutorService handlers;
+
+	/**
+	 * Main method that runs the service until the dialog box is closed
+	 * @param args - SCADA map & folder of data maps, which are selected in windows when not given
+	 * @throws Exception - any error that occurs when the service runs
+	 */
+	public static void main(String[] args) throws Exception {
+		RuntimeSettings.apply();
+		File scadaPath;
+		File iedMapFolderPath;
+		if (args.length >= 2) {
+			scadaPath = new File(args[0]);
+			iedMapFolderPath = new File(args[1]);
+		}
+		else {
+			scadaPath = new MapSelectionUI("Please select your SCADA Map.").getFilePath();
+			iedMapFolderPath = new FolderSelectionUI("Please select your folder of IED Maps.").getFilePath();
+		}
+		PointQueryServer queryServer = new PointQueryServer();
+		int port = Integer.getInteger("rtac.queryPort", DEFAULT_PORT);
+		queryServer.start(scadaPath, iedMapFolderPath, port);
+		DialogBoxUI.infoBox("Answering point questions on http://localhost:" + port + "/points/. Press OK to stop.", "");
+		queryServer.stop();
+	}
+
+	/**
+	 * Loads & indexes the maps, then starts answering questions on a local port
+	 * @param scadaPath - SCADA map file
+	 * @param iedMapFolderPath - folder of data maps
+	 * @param port - local port the service listens on
+	 * @throws IOException - if the maps could not be read or the port could not be opened
+	 */
+	public void start(File scadaPath, File iedMapFolderPath, int port) throws IOException {
+		SCADAMap scadaMap;
+		try (FileInputStream scadaStream = new FileInputStream(scadaPath)) {
+			scadaMap = new SCADAMap(scadaStream);
+		}
+		watcher = new MapWatcher(scadaPath, iedMapFolderPath, new MapWatcher.Listener() {
+			@Override
+			public void mapsChanged(List<SCADAEntry> scadaEntries, TreeMap<String, IEDMap> iedMaps) {
+				PointIndex newIndex;
+				try {
+					newIndex = new PointIndex(scadaEntries, iedMaps);
+				} catch (RuntimeException e) {
+					if (index == null) {
+						throw e;
+					}
+					// Questions keep being answered from the last index that was complete
+					indexFailure = "Could not index the maps: " + (e.getMessage() == null ? e.toString() : e.getMessage());
+					DialogBoxUI.infoBox(indexFailure, "");
+					return;
+				}
+				// Questions keep being answered from the old index until the new one is complete
+				index = newIndex;
+				lastIndexedMillis = System.currentTimeMillis();
+				indexFailure = null;
+			}
+		});
+		watcher.start(scadaMap);
+		// Only answers questions from this computer
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/points/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				answerPoints(exchange);
+			}
+		});
+		server.createContext("/status", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				reply(exchange, 200, status());
+			}
+		});
+		handlers = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+		server.setExecutor(handlers);
+		server.start();
+	}
+
+	/**
+	 * Stops answering questions & stops watching the maps
+	 * @throws IOException - if the watcher could not be stopped
+	 * @throws InterruptedException - if the thread is interrupted while waiting for the watcher to stop
+	 */
+	public void stop() throws IOException, InterruptedException {
+		server.stop(0);
+		watcher.stop();
+		handlers.shutdown();
+	}
+
+	/**
+	 * Returns the state of the service as JSON
+	 * @return the number of points, number of times the maps changed, time the points were last indexed & why the maps could not be
+	 * indexed or watched, or null if nothing failed
+	 */
+	private String status() {
+		StringBuilder status = new StringBuilder("{\"points\":").append(index.getPointCount()).append(",\"indexed\":").append(watcher.getRewrites());
+		status.append(",\"lastIndexed\":");
+		JsonLinesSink.appendString(status, Instant.ofEpochMilli(lastIndexedMillis).toString());
+		status.append(",\"failure\":");
+		JsonLinesSink.appendString(status, indexFailure != null ? indexFailure : watcher.getFailure());
+		return status.append('}').toString();
+	}
+
+	/**
+	 * Answers a question about points
+	 * @param exchange - question & its answer
+	 * @throws IOException - if the answer could not be sent
+	 */
+	private void answerPoints(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("GET")) {
+			reply(exchange, 405, "{\"error\":\"Only GET is supported.\"}");
+			return;
+		}
+		// The path is /points/<kind>/<value>
+		String[] path = exchange.getRequestURI().getPath().split("/", 4);
+		if (path.length < 4 || path[3].isEmpty()) {
+			reply(exchange, 404, "{\"error\":\"Use /points/address/, /points/alias/, /points/device/ or /points/wordbit/.\"}");
+			return;
+		}
+		PointIndex currentIndex = index;
+		String kind = path[2];
+		String value = path[3];
+		if (kind.equals("address")) {
+			try {
+				reply(exchange, 200, currentIndex.findByAddress(Integer.parseInt(value)));
+			} catch (NumberFormatException e) {
+				reply(exchange, 400, "{\"error\":\"DNP address has to be a number.\"}");
+			}
+		}
+		else if (kind.equals("alias")) {
+			reply(exchange, 200, currentIndex.findByAlias(value));
+		}
+		else if (kind.equals("device")) {
+			reply(exchange, 200, currentIndex.findByDevice(value));
+		}
+		else if (kind.equals("wordbit")) {
+			reply(exchange, 200, currentIndex.findByWordbit(value));
+		}
+		else {
+			reply(exchange, 404, "{\"error\":\"Use /points/address/, /points/alias/, /points/device/ or /points/wordbit/.\"}");
+		}
+	}
+
+	/**
+	 * Sends a JSON answer
+	 * @param exchange - question & its answer
+	 * @param status - HTTP status code
+	 * @param json - JSON answer
+	 * @throws IOException - if the answer could not be sent
+	 */
+	private static void reply(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
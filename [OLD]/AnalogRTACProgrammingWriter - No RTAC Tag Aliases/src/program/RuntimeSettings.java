@@ -0,0 +1,61 @@
+package program;
+
+import io.LineTemplate;
+import io.TXTWriterIO;
+import mapObjects.DeviceNameRule;
+import mapObjects.IEDMap;
+import mapObjects.IEDMapCache;
+import mapObjects.IEDMapEntry;
+import mapObjects.RtacNameRule;
+import mapObjects.SCADAEntry;
+import mapObjects.SCADAMap;
+import mapObjects.WordbitMatch;
+
+/**
+ * The -Drtac.* settings shared by every way of running the program. Nothing here uses Swing,
+ * so the settings can be applied by programs that never open a window
+ * @author Hannah Layton
+ */
+public class RuntimeSettings {
+	/**
+	 * Applies the -Drtac.* settings that change how maps are read & how lines are written
+	 */
+	public static void apply() {
+		// Projects with a different RTAC point naming convention can select it with -Drtac.nameRule=...
+		String nameRule = System.getProperty("rtac.nameRule");
+		if (nameRule != null) {
+			IEDMapEntry.setRtacNameRule(RtacNameRule.forName(nameRule));
+		}
+		// Device name normalization can be changed for both sides of the match with -Drtac.scadaDeviceRule=... & -Drtac.dataMapDeviceRule=...
+		String scadaDeviceRule = System.getProperty("rtac.scadaDeviceRule");
+		if (scadaDeviceRule != null) {
+			SCADAEntry.setDeviceNameRule(DeviceNameRule.compile(scadaDeviceRule));
+		}
+		String dataMapDeviceRule = System.getProperty("rtac.dataMapDeviceRule");
+		if (dataMapDeviceRule != null) {
+			IEDMap.setDeviceNameRule(DeviceNameRule.compile(dataMapDeviceRule));
+		}
+		// Wordbits can be matched by prefix or by containment instead of exactly with -Drtac.wordbitMatch=PREFIX or CONTAINS
+		String wordbitMatch = System.getProperty("rtac.wordbitMatch");
+		if (wordbitMatch != null) {
+			TXTWriterIO.setWordbitMatch(WordbitMatch.valueOf(wordbitMatch.toUpperCase()));
+		}
+		// Loaded maps can drop their workbooks once their columns are read with -Drtac.compactMaps=true
+		if (Boolean.getBoolean("rtac.compactMaps")) {
+			SCADAMap.setCompactLoading(true);
+			IEDMap.setCompactLoading(true);
+		}
+		// Customers with a different structured text layout can select it with -Drtac.lineTemplate=...
+		String lineTemplate = System.getProperty("rtac.lineTemplate");
+		if (lineTemplate != null) {
+			TXTWriterIO.setLineTemplate(LineTemplate.forName(lineTemplate));
+		}
+		// Data maps loaded earlier in the session are kept up to -Drtac.iedMapCacheMB=..., 0 to keep none, estimated at -Drtac.iedMapHeapFactor=... times their file size
+		Long iedMapCacheMB = Long.getLong("rtac.iedMapCacheMB");
+		Integer iedMapHeapFactor = Integer.getInteger("rtac.iedMapHeapFactor");
+		if (iedMapCacheMB != null || iedMapHeapFactor != null) {
+			IEDMapCache.setSessionCache(new IEDMapCache(iedMapCacheMB != null ? iedMapCacheMB * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 4,
+					iedMapHeapFactor != null ? iedMapHeapFactor : IEDMapCache.DEFAULT_HEAP_FACTOR));
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package ui;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /**
  * Dialog box to indicate the program has finished running
@@ -8,11 +9,83 @@ import javax.swing.JOptionPane;
  */
 public class DialogBoxUI
 {
+	/** Whether messages are written to the error output instead of shown in a dialog box, so Swing is never loaded */
+	private static volatile boolean headless = false;
+	/** Last message written to the error output instead of shown */
+	private static volatile String lastMessage;
+	/** Whether messages from the current thread are written to the error output instead of shown, so background threads are never held up by a dialog box */
+	private static final ThreadLocal<Boolean> quiet = new ThreadLocal<Boolean>();
+
 	/**
 	 * Dialog box to indicate the program has finished running
 	 */
     public static void infoBox(String infoMessage, String titleBar)
     {
+        if (headless || quiet.get() != null) {
+            lastMessage = infoMessage;
+            System.err.println(infoMessage);
+            return;
+        }
         JOptionPane.showMessageDialog(null, infoMessage, "", JOptionPane.INFORMATION_MESSAGE);
     }
+
+	/**
+	 * Dialog box shown without waiting for it to be closed, so a background thread can report a problem & carry on
+	 * @param infoMessage - message to show
+	 */
+    public static void infoBoxLater(final String infoMessage)
+    {
+        if (headless) {
+            lastMessage = infoMessage;
+            System.err.println(infoMessage);
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                JOptionPane.showMessageDialog(null, infoMessage, "", JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+    }
+
+	/**
+	 * Sets whether messages from the current thread are written to the error output instead of shown in a dialog box
+	 * @param quiet - whether messages from the current thread are written to the error output
+	 */
+    public static void setQuiet(boolean quiet)
+    {
+        if (quiet) {
+            DialogBoxUI.quiet.set(Boolean.TRUE);
+        }
+        else {
+            DialogBoxUI.quiet.remove();
+        }
+    }
+
+	/**
+	 * Returns whether messages are written to the error output instead of shown in a dialog box
+	 * @return whether messages are written to the error output
+	 */
+    public static boolean isHeadless()
+    {
+        return headless;
+    }
+
+	/**
+	 * Sets whether messages are written to the error output instead of shown in a dialog box
+	 * @param headless - whether messages are written to the error output
+	 */
+    public static void setHeadless(boolean headless)
+    {
+        DialogBoxUI.headless = headless;
+    }
+
+	/**
+	 * Returns the last message written to the error output while headless
+	 * @return the last message written while headless, or null if there is none
+	 */
+    public static String getLastMessage()
+    {
+        return lastMessage;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,281 @@
+package io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ui.DialogBoxUI;
+
+/**
+ * The format of a structured text line that is compiled once & then rendered straight into the output text for every matched SCADA entry.
+ * The format is written as literal text with slots in braces:
+ * <ul>
+ * <li>{address} - DNP address of the SCADA entry, zero-padded to 5 digits</li>
+ * <li>{alias} - RTAC point name of the matching data map entry</li>
+ * <li>{scaling} - " * " followed by the scale factor of the SCADA entry, or nothing when the scale factor is 0 or 1</li>
+ * <li>{description} - description of the SCADA entry</li>
+ * <li>{oper} - operTrip or operClose, alternating between binary output lines</li>
+ * </ul>
+ * "\t", "\n" &amp; "\\" in a format are written as a tab, a line break & a backslash
+ * @author Hannah Layton
+ */
+public class LineTemplate {
+	/** Segment that is copied as-is */
+	private static final int LITERAL = 0;
+	/** Segment filled with the zero-padded DNP address */
+	private static final int ADDRESS = 1;
+	/** Segment filled with the RTAC point name */
+	private static final int ALIAS = 2;
+	/** Segment filled with the scale factor */
+	private static final int SCALING = 3;
+	/** Segment filled with the description */
+	private static final int DESCRIPTION = 4;
+	/** Segment filled with operTrip or operClose */
+	private static final int OPER = 5;
+	/** Number of digits DNP addresses are padded to */
+	private static final int ADDRESS_WIDTH = 5;
+	/** Largest DNP address whose padded digits are worked out ahead of time */
+	private static final int LARGEST_PADDED_ADDRESS = 65535;
+	/** Padded digits of every DNP address from 0 to 65535, 5 characters each */
+	private static final char[] PADDED_ADDRESSES = new char[(LARGEST_PADDED_ADDRESS + 1) * ADDRESS_WIDTH];
+
+	static {
+		for (int address = 0; address <= LARGEST_PADDED_ADDRESS; address++) {
+			int value = address;
+			for (int i = ADDRESS_WIDTH - 1; i >= 0; i--) {
+				PADDED_ADDRESSES[address * ADDRESS_WIDTH + i] = (char) ('0' + value % 10);
+				value /= 10;
+			}
+		}
+	}
+
+	/** Analog input line, e.g. SCADA_DNP.AI_00012 := alias; SCADA_DNP.AI_00012.instMag := alias.instMag * 10.0; // description */
+	public static final LineTemplate ANALOG = compile("SCADA_DNP.AI_{address} := {alias};                    \\t\\tSCADA_DNP.AI_{address}.instMag := {alias}.instMag{scaling};                    \\t\\t// {description}\\n");
+	/** Binary output line, e.g. alias.operTrip := SCADA_DNP.BO_00012.operTrip; // description */
+	public static final LineTemplate BINARY_OUTPUT = compile("{alias}.{oper}    \\t := SCADA_DNP.BO_{address}.{oper};\\t\\t\\t// {description}\\n");
+
+	/** Format the segments were compiled from */
+	private final String pattern;
+	/** Compiled segments of the format in the order they are written */
+	private final Segment[] segments;
+
+	/**
+	 * Creates a line template out of already compiled segments
+	 * @param pattern - format the segments were compiled from
+	 * @param segments - compiled segments of the format
+	 */
+	private LineTemplate(String pattern, Segment[] segments) {
+		this.pattern = pattern;
+		this.segments = segments;
+	}
+
+	/**
+	 * Returns one of the built-in line templates by name (ANALOG or BINARY_OUTPUT), or compiles the given format
+	 * @param format - name of a built-in line template or a format to compile
+	 * @return the matching line template
+	 */
+	public static LineTemplate forName(String format) {
+		if (format.equalsIgnoreCase("ANALOG")) {
+			return ANALOG;
+		}
+		else if (format.equalsIgnoreCase("BINARY_OUTPUT")) {
+			return BINARY_OUTPUT;
+		}
+		return compile(format);
+	}
+
+	/**
+	 * Compiles a line format so it can be reused for every line
+	 * @param pattern - line format to compile
+	 * @return the compiled line template
+	 */
+	public static LineTemplate compile(String pattern) {
+		List<Segment> segments = new ArrayList<Segment>();
+		StringBuilder literal = new StringBuilder();
+		int position = 0;
+		while (position < pattern.length()) {
+			char c = pattern.charAt(position);
+			if (c == '\\' && position + 1 < pattern.length()) {
+				char escaped = pattern.charAt(position + 1);
+				if (escaped == 't') {
+					literal.append('\t');
+				}
+				else if (escaped == 'n') {
+					literal.append('\n');
+				}
+				else if (escaped == '\\') {
+					literal.append('\\');
+				}
+				else {
+					invalidFormat(pattern, "unknown escape \\" + escaped);
+				}
+				position += 2;
+				continue;
+			}
+			if (c == '}') {
+				invalidFormat(pattern, "unexpected } at position " + position);
+			}
+			if (c != '{') {
+				literal.append(c);
+				position++;
+				continue;
+			}
+			int end = pattern.indexOf('}', position);
+			if (end < 0) {
+				invalidFormat(pattern, "missing } for slot at position " + position);
+			}
+			// Literal text before a slot becomes its own segment
+			if (literal.length() > 0) {
+				segments.add(new Segment(LITERAL, literal.toString()));
+				literal.setLength(0);
+			}
+			segments.add(new Segment(slotKind(pattern, pattern.substring(position + 1, end)), null));
+			position = end + 1;
+		}
+		if (literal.length() > 0) {
+			segments.add(new Segment(LITERAL, literal.toString()));
+		}
+		return new LineTemplate(pattern, segments.toArray(new Segment[0]));
+	}
+
+	/**
+	 * Returns what a slot of a line format is filled with
+	 * @param pattern - line format the slot belongs to
+	 * @param slot - text inside the braces of the slot
+	 * @return what the slot is filled with
+	 */
+	private static int slotKind(String pattern, String slot) {
+		if (slot.equals("address")) {
+			return ADDRESS;
+		}
+		else if (slot.equals("alias")) {
+			return ALIAS;
+		}
+		else if (slot.equals("scaling")) {
+			return SCALING;
+		}
+		else if (slot.equals("description")) {
+			return DESCRIPTION;
+		}
+		else if (slot.equals("oper")) {
+			return OPER;
+		}
+		invalidFormat(pattern, "unknown slot {" + slot + "}");
+		return -1;
+	}
+
+	/**
+	 * Reports a line format that could not be compiled
+	 * @param pattern - line format that could not be compiled
+	 * @param reason - why the line format could not be compiled
+	 */
+	private static void invalidFormat(String pattern, String reason) {
+		DialogBoxUI.infoBox("Line format " + pattern + " is not valid: " + reason + ".", "");
+		throw new IllegalArgumentException("Line format " + pattern + " is not valid: " + reason + ".");
+	}
+
+	/**
+	 * Returns the format this line template was compiled from
+	 * @return the format this line template was compiled from
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Adds the line for a matched SCADA entry to the end of the output text
+	 * @param outputString - output text to add the line to
+	 * @param dnpAddress - DNP address of the SCADA entry
+	 * @param rtacPointName - RTAC point name of the matching data map entry
+	 * @param scaling - scale factor of the SCADA entry
+	 * @param description - description of the SCADA entry
+	 * @param operTrip - whether the line is written as a trip instead of a close
+	 */
+	public void render(StringBuilder outputString, int dnpAddress, String rtacPointName, double scaling, String description, boolean operTrip) {
+		for (Segment segment : segments) {
+			switch (segment.kind) {
+			case LITERAL:
+				outputString.append(segment.text);
+				break;
+			case ADDRESS:
+				appendAddress(outputString, dnpAddress);
+				break;
+			case ALIAS:
+				outputString.append(rtacPointName);
+				break;
+			case SCALING:
+				if (scaling != 0.0 && scaling != 1.0) {
+					outputString.append(" * ");
+					appendDouble(outputString, scaling);
+				}
+				break;
+			case DESCRIPTION:
+				outputString.append(description);
+				break;
+			default:
+				outputString.append(operTrip ? "operTrip" : "operClose");
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Adds a DNP address zero-padded to 5 digits to the end of the output text
+	 * @param outputString - output text to add the address to
+	 * @param dnpAddress - DNP address
+	 */
+	static void appendAddress(StringBuilder outputString, int dnpAddress) {
+		if (dnpAddress >= 0 && dnpAddress <= LARGEST_PADDED_ADDRESS) {
+			outputString.append(PADDED_ADDRESSES, dnpAddress * ADDRESS_WIDTH, ADDRESS_WIDTH);
+			return;
+		}
+		// Addresses outside the table are padded the way the writers always have
+		if (dnpAddress < 10) {
+			outputString.append("0000");
+		}
+		else if (dnpAddress < 100) {
+			outputString.append("000");
+		}
+		else if (dnpAddress < 1000) {
+			outputString.append("00");
+		}
+		else if (dnpAddress < 10000) {
+			outputString.append("0");
+		}
+		outputString.append(dnpAddress);
+	}
+
+	/**
+	 * Adds a number to the end of the output text exactly as Double.toString writes it.
+	 * Whole numbers, which every scale factor in the SCADA map is, are written without creating any temporary text
+	 * @param outputString - output text to add the number to
+	 * @param value - number to add
+	 */
+	static void appendDouble(StringBuilder outputString, double value) {
+		if (value == Math.rint(value) && Math.abs(value) < 1.0E7 && !(value == 0.0 && 1.0 / value < 0)) {
+			outputString.append((long) value).append(".0");
+		}
+		else {
+			outputString.append(value);
+		}
+	}
+
+	/**
+	 * Compiled piece of a line template
+	 */
+	private static class Segment {
+		/** What the segment is filled with */
+		private final int kind;
+		/** Text of a literal segment */
+		private final String text;
+
+		/**
+		 * Creates a compiled piece of a line template
+		 * @param kind - what the segment is filled with
+		 * @param text - text of a literal segment
+		 */
+		private Segment(int kind, String text) {
+			this.kind = kind;
+			this.text = text;
+		}
+	}
+}
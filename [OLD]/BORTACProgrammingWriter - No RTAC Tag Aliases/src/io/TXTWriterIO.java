@@ -4,20 +4,65 @@
 package io;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import mapObjects.IEDMap;
 import mapObjects.IEDMapEntry;
 import mapObjects.SCADAEntry;
 import mapObjects.SCADAMap;
+import mapObjects.WordbitMatch;
 
 /**
  * Class responsible for writing the output text file
  * @author Hannah Layton
  */
 public class TXTWriterIO {
+	/** Number of SCADA entries written by each task when the output is written in parallel */
+	private static final int CHUNK_SIZE = 1024;
+
+	/** How wordbits from the SCADA map are matched to relay elements in the data maps */
+	private static WordbitMatch wordbitMatch = WordbitMatch.EXACT;
+	/** Format of the lines written for matched SCADA entries */
+	private static LineTemplate lineTemplate = LineTemplate.BINARY_OUTPUT;
+
+	/**
+	 * Returns how wordbits from the SCADA map are matched to relay elements in the data maps
+	 * @return how wordbits from the SCADA map are matched to relay elements in the data maps
+	 */
+	public static WordbitMatch getWordbitMatch() {
+		return wordbitMatch;
+	}
+
+	/**
+	 * Sets how wordbits from the SCADA map are matched to relay elements in the data maps
+	 * @param wordbitMatch - how wordbits from the SCADA map are matched to relay elements in the data maps
+	 */
+	public static void setWordbitMatch(WordbitMatch wordbitMatch) {
+		TXTWriterIO.wordbitMatch = wordbitMatch;
+	}
+
+	/**
+	 * Returns the format of the lines written for matched SCADA entries
+	 * @return the format of the lines written for matched SCADA entries
+	 */
+	public static LineTemplate getLineTemplate() {
+		return lineTemplate;
+	}
+
+	/**
+	 * Sets the format of the lines written for matched SCADA entries
+	 * @param lineTemplate - format of the lines written for matched SCADA entries
+	 */
+	public static void setLineTemplate(LineTemplate lineTemplate) {
+		TXTWriterIO.lineTemplate = lineTemplate;
+	}
 
 	/**
 	 * Writes the output text file
@@ -39,66 +84,135 @@ public class TXTWriterIO {
 			}
 			currentDeviceName = currentEntry.getSlaveIEDDevice();
 			IEDMap currentIEDMap = iedMaps.get(currentEntry.getSlaveIEDDevice());
-			// If Slave IED Device has a data map
-			if (currentIEDMap != null) {
-				TreeMap<String, IEDMapEntry> binaryOutputs = currentIEDMap.getBinaryOutputs();
-				IEDMapEntry currentIEDEntry = binaryOutputs.get(currentEntry.getWordbit());
-				if (currentIEDEntry == null) {
-					for (Entry<String, IEDMapEntry> b : binaryOutputs.entrySet()) {
-						String index = String.valueOf(Double.valueOf(b.getValue().getIndex()));
-						if (currentEntry.getWordbit().equals(index)) {
-							currentIEDEntry = b.getValue();
-							break;
+			operTrip = appendLine(outputString, currentEntry, currentIEDMap != null, findEntry(currentEntry, currentIEDMap), operTrip);
+		}
+		txt.print(outputString);
+	}
+
+	/**
+	 * Writes the output text file, splitting the SCADA entries into chunks that are written at the same time & joined back in order.
+	 * The entries of every chunk are matched first, which decides whether each chunk starts with a trip or a close
+	 * & whether it starts with a line break, so the output is the same as writing the entries one at a time
+	 * @param txt - the file in which to put the output text
+	 * @param iedMaps - TreeMap of ied maps
+	 * @param scadaMap - SCADA map
+	 * @param parallelism - number of threads writing chunks
+	 */
+	public static void structuredTextWriter(PrintWriter txt, final TreeMap<String, IEDMap> iedMaps, SCADAMap scadaMap, int parallelism) {
+		Queue<SCADAEntry> scadaEntries = scadaMap.getScadaEntries();
+		final SCADAEntry[] entries = scadaEntries.toArray(new SCADAEntry[0]);
+		scadaEntries.clear();
+		final IEDMapEntry[] iedEntries = new IEDMapEntry[entries.length];
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			// Matches every chunk, counting the lines that toggle between trip & close
+			List<ForkJoinTask<Integer>> matches = new ArrayList<ForkJoinTask<Integer>>();
+			for (int start = 0; start < entries.length; start += CHUNK_SIZE) {
+				final int from = start;
+				final int to = Math.min(start + CHUNK_SIZE, entries.length);
+				matches.add(pool.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int toggles = 0;
+						for (int i = from; i < to; i++) {
+							IEDMap currentIEDMap = iedMaps.get(entries[i].getSlaveIEDDevice());
+							iedEntries[i] = findEntry(entries[i], currentIEDMap);
+							if (currentIEDMap != null && iedEntries[i] != null && !iedEntries[i].getRtacPointName().equals("")) {
+								toggles++;
+							}
 						}
+						return toggles;
 					}
-				}
-				// If wordbit match is found and has a valid RTAC alias
-				if (currentIEDEntry != null && !currentIEDEntry.getRtacPointName().equals("")) {
-					String rtacPointName = currentIEDEntry.getRtacPointName();
-					// Add first half of line
-					outputString.append(rtacPointName);
-					if (operTrip) {
-						outputString.append(".operTrip    	 := ");
-					}
-					else {
-						outputString.append(".operClose    	 := ");
-					}
-					// Add second half of line
-					outputString.append("SCADA_DNP.BO_");
-					int currentDNPAddress = (int) currentEntry.getDnpAddress();
-					if (currentDNPAddress < 10) {
-						outputString.append("0000").append(currentDNPAddress);
-					}
-					else if (currentDNPAddress < 100) {
-						outputString.append("000").append(currentDNPAddress);
-					}
-					else if (currentDNPAddress < 1000) {
-						outputString.append("00").append(currentDNPAddress);
-					}
-					else if (currentDNPAddress < 10000) {
-						outputString.append("0").append(currentDNPAddress);
-					}
-					else {
-						outputString.append(currentDNPAddress);
-					}
-					if (operTrip) {
-						outputString.append(".operTrip");
-						operTrip = false;
-					}
-					else {
-						outputString.append(".operClose");
-						operTrip = true;
+				}));
+			}
+			// Writes every chunk starting from the state the entries before it leave behind
+			List<ForkJoinTask<StringBuilder>> chunks = new ArrayList<ForkJoinTask<StringBuilder>>();
+			boolean operTrip = true;
+			for (int chunk = 0; chunk < matches.size(); chunk++) {
+				final int from = chunk * CHUNK_SIZE;
+				final int to = Math.min(from + CHUNK_SIZE, entries.length);
+				final boolean firstOperTrip = operTrip;
+				final String firstDeviceName = from == 0 ? "" : entries[from - 1].getSlaveIEDDevice();
+				// Waits for the chunk's own entries to be matched
+				int toggles = matches.get(chunk).join();
+				chunks.add(pool.submit(new Callable<StringBuilder>() {
+					@Override
+					public StringBuilder call() {
+						StringBuilder outputString = new StringBuilder();
+						String currentDeviceName = firstDeviceName;
+						boolean operTrip = firstOperTrip;
+						for (int i = from; i < to; i++) {
+							// Used to add line breaks between devices
+							if (!currentDeviceName.equals(entries[i].getSlaveIEDDevice())) {
+								outputString.append("\n");
+							}
+							currentDeviceName = entries[i].getSlaveIEDDevice();
+							operTrip = appendLine(outputString, entries[i], iedMaps.containsKey(currentDeviceName), iedEntries[i], operTrip);
+						}
+						return outputString;
 					}
-					outputString.append(";			// " + currentEntry.getDescription() + "\n");
+				}));
+				if (toggles % 2 == 1) {
+					operTrip = !operTrip;
 				}
-				else {
-					outputString.append("NO RTAC ALIAS WAS FOUND FOR DNP ADDRESS: " + (int) currentEntry.getDnpAddress() + "\n");
+			}
+			// Chunks are written in the order of the SCADA map no matter which finishes first
+			for (ForkJoinTask<StringBuilder> chunk : chunks) {
+				txt.print(chunk.join());
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the data map entry matching a SCADA entry, looking for its wordbit & then for its index
+	 * @param currentEntry - SCADA entry to match
+	 * @param currentIEDMap - data map of the SCADA entry's device, or null if it has none
+	 * @return the matching data map entry, or null if there is none
+	 */
+	private static IEDMapEntry findEntry(SCADAEntry currentEntry, IEDMap currentIEDMap) {
+		if (currentIEDMap == null) {
+			return null;
+		}
+		IEDMapEntry currentIEDEntry = currentIEDMap.findEntry(currentEntry.getWordbit(), wordbitMatch);
+		if (currentIEDEntry == null) {
+			for (Entry<String, IEDMapEntry> b : currentIEDMap.getBinaryOutputs().entrySet()) {
+				String index = String.valueOf(Double.valueOf(b.getValue().getIndex()));
+				if (currentEntry.getWordbit().equals(index)) {
+					currentIEDEntry = b.getValue();
+					break;
 				}
 			}
+		}
+		return currentIEDEntry;
+	}
+
+	/**
+	 * Adds the output line for a SCADA entry that has already been matched to its data map entry
+	 * @param outputString - output text to add the line to
+	 * @param currentEntry - SCADA entry to write
+	 * @param hasDataMap - whether the SCADA entry's device has a data map
+	 * @param currentIEDEntry - matching data map entry, or null if there is none
+	 * @param operTrip - whether the next RTAC alias is written as a trip instead of a close
+	 * @return whether the RTAC alias after this line is written as a trip instead of a close
+	 */
+	private static boolean appendLine(StringBuilder outputString, SCADAEntry currentEntry, boolean hasDataMap, IEDMapEntry currentIEDEntry, boolean operTrip) {
+		// If Slave IED Device has a data map
+		if (hasDataMap) {
+			// If wordbit match is found and has a valid RTAC alias
+			if (currentIEDEntry != null && !currentIEDEntry.getRtacPointName().equals("")) {
+				lineTemplate.render(outputString, (int) currentEntry.getDnpAddress(), currentIEDEntry.getRtacPointName(), 1.0, currentEntry.getDescription(), operTrip);
+				operTrip = !operTrip;
+			}
 			else {
-				outputString.append("NO DATA MAP WAS FOUND FOR: " + currentEntry.getSlaveIEDDevice() + "\n");
+				outputString.append("NO RTAC ALIAS WAS FOUND FOR DNP ADDRESS: ").append((int) currentEntry.getDnpAddress()).append('\n');
 			}
 		}
-		txt.print(outputString);
+		else {
+			outputString.append("NO DATA MAP WAS FOUND FOR: ").append(currentEntry.getSlaveIEDDevice()).append('\n');
+		}
+		return operTrip;
 	}
 }
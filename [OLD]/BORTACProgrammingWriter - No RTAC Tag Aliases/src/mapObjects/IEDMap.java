@@ -4,6 +4,8 @@
 package mapObjects;
 
 import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeMap;
 
 import org.apache.poi.ss.usermodel.Cell;
@@ -20,6 +22,8 @@ import ui.DialogBoxUI;
  * @author Hannah Layton
  */
 public class IEDMap {
+	/** Rule used to normalize device names so they match Slave IED Devices in the SCADA map */
+	private static DeviceNameRule deviceNameRule = DeviceNameRule.DATA_MAP_DEVICE;
 	/** Variable used to manipulate an excel file, in this case an IED Map, with Java */
 	private XSSFWorkbook workbook;
 	/** Full device name listed on IED Map */
@@ -36,8 +40,16 @@ public class IEDMap {
 	private int descriptionColumn = -1;
 	/** SCADA mark column in IED Map */
 	private int scadaMarkColumn = -1;
-	/** Relay elements included in IED Map */
+	/** Points of the relay model, shared with every other IED Map listing the same points */
+	private PointTemplate template;
+	/** HMI point names of the points, in the same order as the template */
+	private String[] hmiPointNames;
+	/** Entries for each point, only created when the point is looked up */
+	private IEDMapEntry[] entries;
+	/** Relay elements included in IED Map, only created when all of them are asked for */
 	private TreeMap<String,IEDMapEntry> binaryOutputs;
+	/** Index used to find relay elements by part of their wordbit, built the first time it is needed */
+	private RelayElementIndex relayElementIndex;
 	
 	/**
 	 * Converts a data map file into an easily manipulatable Java object with helpful attributes
@@ -94,12 +106,7 @@ public class IEDMap {
 		String deviceName = workbook.getSheet("Control Points").getRow(2).getCell(3).getStringCellValue();
 		if (deviceName != null && !deviceName.equals("")) {
 			this.fullDeviceName = deviceName;
-			if (deviceName.startsWith("K") || deviceName.startsWith("L")) {
-				this.deviceName = deviceName.substring(1);
-			}
-			else {
-				this.deviceName = deviceName;
-			}
+			this.deviceName = deviceNameRule.normalize(deviceName);
 		}
 		else {
 			DialogBoxUI.infoBox("Device Name in IED Map is not in B3.", "");
@@ -107,6 +114,22 @@ public class IEDMap {
 		}
 	}
 
+	/**
+	 * Returns the rule used to normalize device names
+	 * @return the rule used to normalize device names
+	 */
+	public static DeviceNameRule getDeviceNameRule() {
+		return deviceNameRule;
+	}
+
+	/**
+	 * Sets the rule used to normalize device names
+	 * @param deviceNameRule - rule used to normalize device names
+	 */
+	public static void setDeviceNameRule(DeviceNameRule deviceNameRule) {
+		IEDMap.deviceNameRule = deviceNameRule;
+	}
+
 	/**
 	 * Returns the full name of the device listed in the data map
 	 * @return the full name of the device listed in the data map
@@ -279,16 +302,76 @@ public class IEDMap {
 	 * Returns a tree of entries in the data map
 	 * @return a tree of entries in the data map
 	 */
-	public TreeMap<String, IEDMapEntry> getBinaryOutputs() {
+	public synchronized TreeMap<String, IEDMapEntry> getBinaryOutputs() {
+		if (binaryOutputs == null) {
+			TreeMap<String, IEDMapEntry> binaryOutputs = new TreeMap<String, IEDMapEntry>();
+			for (int row : template.getRowsInWordbitOrder()) {
+				binaryOutputs.put(template.getWordbit(row), getEntry(row));
+			}
+			this.binaryOutputs = binaryOutputs;
+		}
 		return binaryOutputs;
 	}
 
 	/**
-	 * Adds entries in the data map to a tree map
+	 * Returns the points of the relay model that this IED Map shares with every other IED Map listing the same points
+	 * @return the points of the relay model
+	 */
+	public PointTemplate getTemplate() {
+		return template;
+	}
+
+	/**
+	 * Returns the entry for a point in the data map, creating it the first time it is asked for
+	 * @param row - position of the point in the data map
+	 * @return the entry for the point
+	 */
+	private synchronized IEDMapEntry getEntry(int row) {
+		if (entries[row] == null) {
+			entries[row] = new IEDMapEntry(fullDeviceName, template.getWordbit(row), hmiPointNames[row], "BO", template.getIndex(row), template.getDescription(row), template.isMarkedForSCADA(row));
+		}
+		return entries[row];
+	}
+
+	/**
+	 * Returns the index used to find relay elements by part of their wordbit
+	 * @return the index used to find relay elements by part of their wordbit
+	 */
+	public synchronized RelayElementIndex getRelayElementIndex() {
+		if (relayElementIndex == null) {
+			relayElementIndex = new RelayElementIndex(getBinaryOutputs());
+		}
+		return relayElementIndex;
+	}
+
+	/**
+	 * Returns the entry in the data map matching a wordbit from the SCADA map
+	 * @param wordbit - wordbit from the SCADA map
+	 * @param match - how the wordbit is matched to the relay elements in the data map
+	 * @return the matching entry, the first by wordbit if several match, or null if there is none
+	 */
+	public IEDMapEntry findEntry(String wordbit, WordbitMatch match) {
+		int row = template.getRow(wordbit);
+		if (row < 0 && match == WordbitMatch.PREFIX) {
+			row = template.getRowStartingWith(wordbit);
+		}
+		if (row >= 0) {
+			return getEntry(row);
+		}
+		return match == WordbitMatch.CONTAINS ? getRelayElementIndex().findFirstContaining(wordbit) : null;
+	}
+
+	/**
+	 * Reads the entries in the data map. The columns shared by every data map of the same relay model are kept in a shared template,
+	 * & only the HMI point names are kept for each data map
 	 */
 	public void setBinaryOutputs() {
 		XSSFSheet currentSheet = workbook.getSheet("Control Points");
-		binaryOutputs = new TreeMap<String, IEDMapEntry>();
+		List<String> wordbits = new ArrayList<String>();
+		List<String> hmiPointNames = new ArrayList<String>();
+		List<Double> indexes = new ArrayList<Double>();
+		List<String> descriptions = new ArrayList<String>();
+		List<Boolean> scadaMarks = new ArrayList<Boolean>();
 		int row = 5;
 		// Checks if data map is empty of wordbits
 		if (currentSheet != null && currentSheet.getRow(row) != null && currentSheet.getRow(row).getCell(wordbitColumn) != null) {
@@ -306,15 +389,16 @@ public class IEDMap {
 				if (currentSheet.getRow(row).getCell(scadaMarkColumn).getStringCellValue().equals("X")) {
 					scadaMark = true;
 				}
-				IEDMapEntry currentEntry;
+				wordbits.add(currentRelayElement);
 				if (currentSheet.getRow(row).getCell(hmiPointNameColumn) == null) {
-					currentEntry = new IEDMapEntry(fullDeviceName, currentRelayElement, "", "BO", currentSheet.getRow(row).getCell(indexColumn).getNumericCellValue(), currentSheet.getRow(row).getCell(descriptionColumn).getStringCellValue(), scadaMark);
+					hmiPointNames.add("");
 				}
 				else {
-					currentEntry = new IEDMapEntry(fullDeviceName, currentRelayElement, currentSheet.getRow(row).getCell(hmiPointNameColumn).getStringCellValue(), "BO", currentSheet.getRow(row).getCell(indexColumn).getNumericCellValue(), currentSheet.getRow(row).getCell(descriptionColumn).getStringCellValue(), scadaMark);
+					hmiPointNames.add(currentSheet.getRow(row).getCell(hmiPointNameColumn).getStringCellValue());
 				}
-				
-				binaryOutputs.put(currentRelayElement, currentEntry);
+				indexes.add(currentSheet.getRow(row).getCell(indexColumn).getNumericCellValue());
+				descriptions.add(currentSheet.getRow(row).getCell(descriptionColumn).getStringCellValue());
+				scadaMarks.add(scadaMark);
 				row++;
 				// If this was the last entry in the data map, the loop can end
 				if (row > currentSheet.getLastRowNum() || currentSheet.getRow(row) == null || currentSheet.getRow(row).getCell(wordbitColumn) == null) {
@@ -332,6 +416,16 @@ public class IEDMap {
 			DialogBoxUI.infoBox("IED Map could not be read.", "");
 			throw new IllegalArgumentException("IED Map could not be read.");
 		}
+		// Data maps for the same relay model share one template
+		double[] indexColumn = new double[indexes.size()];
+		boolean[] scadaMarkColumn = new boolean[scadaMarks.size()];
+		for (int i = 0; i < indexColumn.length; i++) {
+			indexColumn[i] = indexes.get(i);
+			scadaMarkColumn[i] = scadaMarks.get(i);
+		}
+		this.template = PointTemplate.intern(wordbits.toArray(new String[0]), indexColumn, descriptions.toArray(new String[0]), scadaMarkColumn);
+		this.hmiPointNames = hmiPointNames.toArray(new String[0]);
+		this.entries = new IEDMapEntry[this.hmiPointNames.length];
 		try {
 			workbook.close();
 		} catch (Exception e) {
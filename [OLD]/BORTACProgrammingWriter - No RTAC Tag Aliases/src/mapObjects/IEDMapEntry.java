@@ -5,6 +5,8 @@ package mapObjects;
  * @author Hannah Layton
  */
 public class IEDMapEntry {
+	/** Naming convention used to create RTAC point names */
+	private static RtacNameRule rtacNameRule = RtacNameRule.STANDARD;
 	/** Device Name */
 	private String deviceName;
 	/** Relay Element word bit */
@@ -19,8 +21,8 @@ public class IEDMapEntry {
 	private String description;
 	/** Marked for SCADA */
 	private boolean markedForSCADA;
-	/** RTAC Point Name */
-	private String rtacPointName = "";
+	/** RTAC Point Name, created the first time it is asked for */
+	private String rtacPointName;
 	
 	/**
 	 * Object that is representative of an entry in a data map
@@ -40,7 +42,6 @@ public class IEDMapEntry {
 		setIndex(index);
 		setDescription(description);
 		setMarkedForSCADA(scadaMark);
-		setRtacPointName();
 	}
 
 	/**
@@ -56,17 +57,8 @@ public class IEDMapEntry {
 	 * @param deviceName - the name of the device listed in the data map without modifications
 	 */
 	public void setDeviceName(String deviceName) {
-		if ((deviceName.contains("87TA") || deviceName.contains("74TA") || deviceName.contains("51TA") || deviceName.contains("90TA")) && Character.isDigit(deviceName.charAt(0))) {
-			char[] c = deviceName.toCharArray();
-			char temp = c[0];
-			c[0] = c[1];
-			c[1] = temp;
-			this.deviceName = new String(c);
-		}
-		else {
-			this.deviceName = deviceName;
-		}
-		this.deviceName = this.deviceName.split(" ")[0];
+		this.deviceName = DeviceNameRule.DATA_MAP_ENTRY_DEVICE.normalize(deviceName);
+		this.rtacPointName = null;
 	}
 
 	/**
@@ -99,6 +91,7 @@ public class IEDMapEntry {
 	 */
 	public void setHmiPointName(String hmiPointName) {
 		this.hmiPointName = hmiPointName;
+		this.rtacPointName = null;
 	}
 
 	/**
@@ -115,6 +108,7 @@ public class IEDMapEntry {
 	 */
 	public void setPointType(String pointType) {
 		this.pointType = pointType;
+		this.rtacPointName = null;
 	}
 
 	/**
@@ -131,6 +125,7 @@ public class IEDMapEntry {
 	 */
 	public void setIndex(double index) {
 		this.index = (int) index;
+		this.rtacPointName = null;
 	}
 
 	/**
@@ -163,13 +158,18 @@ public class IEDMapEntry {
 	 */
 	public void setMarkedForSCADA(boolean markedForSCADA) {
 		this.markedForSCADA = markedForSCADA;
+		this.rtacPointName = null;
 	}
 
 	/**
-	 * Returns the formulated RTAC point name that is created using other attributes in the data map entry
+	 * Returns the formulated RTAC point name that is created using other attributes in the data map entry.
+	 * The name is only created the first time it is asked for, so entries the SCADA map never references are never named
 	 * @return the formulated RTAC point name that is created using other attributes in the data map entry
 	 */
 	public String getRtacPointName() {
+		if (rtacPointName == null) {
+			setRtacPointName();
+		}
 		return rtacPointName;
 	}
 
@@ -178,30 +178,26 @@ public class IEDMapEntry {
 	 */
 	public void setRtacPointName() {
 		if (markedForSCADA) {
-			StringBuilder pointName = new StringBuilder();
-			// Adds first half of the RTAC point name including device name and point type (AI)
-			pointName.append(getDeviceName()).append("_DNP.").append(pointType).append("_");
-			if (getIndex() < 10) {
-				pointName.append("0000").append(getIndex());
-			}
-			else if (getIndex() < 100) {
-				pointName.append("000").append(getIndex());
-			}
-			else if (getIndex() < 1000) {
-				pointName.append("00").append(getIndex());
-			}
-			else if (getIndex() < 10000) {
-				pointName.append("0").append(getIndex());
-			}
-			else {
-				pointName.append(getIndex());
-			}
-			pointName.append("_");
-			// Adds the last half of the RTAC point name using the HMI point name
-			String endOfPointName = getHmiPointName().split(getDeviceName().split("_")[getDeviceName().split("_").length - 1])[getHmiPointName().split(getDeviceName().split("_")[getDeviceName().split("_").length - 1]).length - 1];
-			endOfPointName = endOfPointName.substring(1).replace(".", "_");
-			pointName.append(endOfPointName);
-			this.rtacPointName = pointName.toString();
+			this.rtacPointName = rtacNameRule.build(getDeviceName(), pointType, getIndex(), getHmiPointName());
 		}
+		else {
+			this.rtacPointName = "";
+		}
+	}
+
+	/**
+	 * Returns the naming convention used to create RTAC point names
+	 * @return the naming convention used to create RTAC point names
+	 */
+	public static RtacNameRule getRtacNameRule() {
+		return rtacNameRule;
+	}
+
+	/**
+	 * Sets the naming convention used to create RTAC point names for every data map entry
+	 * @param rtacNameRule - naming convention used to create RTAC point names
+	 */
+	public static void setRtacNameRule(RtacNameRule rtacNameRule) {
+		IEDMapEntry.rtacNameRule = rtacNameRule;
 	}
 }
@@ -0,0 +1,171 @@
+package mapObjects;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index over the relay elements (wordbits) of a data map that finds entries by part of their wordbit.
+ * Every wordbit is broken into overlapping pieces of three characters, & each piece keeps the list of entries it appears in.
+ * A search only checks the entries that contain every piece of the searched text instead of every entry in the data map
+ * @author Hannah Layton
+ */
+public class RelayElementIndex {
+	/** Number of characters in each indexed piece of a wordbit */
+	private static final int GRAM_LENGTH = 3;
+
+	/** Entries in the data map sorted by wordbit */
+	private final TreeMap<String, IEDMapEntry> points;
+	/** Wordbits in the data map, in the same order as the entries */
+	private final String[] wordbits;
+	/** Entries in the data map, in the same order as the wordbits */
+	private final IEDMapEntry[] entries;
+	/** Positions of the entries containing each piece of three characters, in ascending order */
+	private final Map<Long, int[]> postings = new HashMap<Long, int[]>();
+
+	/**
+	 * Builds the index over the entries of a data map
+	 * @param points - entries in the data map sorted by wordbit
+	 */
+	public RelayElementIndex(TreeMap<String, IEDMapEntry> points) {
+		this.points = points;
+		this.wordbits = points.keySet().toArray(new String[0]);
+		this.entries = points.values().toArray(new IEDMapEntry[0]);
+		Map<Long, List<Integer>> grouped = new HashMap<Long, List<Integer>>();
+		for (int i = 0; i < wordbits.length; i++) {
+			String wordbit = wordbits[i];
+			for (int start = 0; start + GRAM_LENGTH <= wordbit.length(); start++) {
+				Long gram = gram(wordbit, start);
+				List<Integer> positions = grouped.get(gram);
+				if (positions == null) {
+					positions = new ArrayList<Integer>();
+					grouped.put(gram, positions);
+				}
+				// The same piece can appear more than once in a wordbit
+				if (positions.isEmpty() || positions.get(positions.size() - 1) != i) {
+					positions.add(i);
+				}
+			}
+		}
+		for (Map.Entry<Long, List<Integer>> group : grouped.entrySet()) {
+			int[] positions = new int[group.getValue().size()];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = group.getValue().get(i);
+			}
+			postings.put(group.getKey(), positions);
+		}
+	}
+
+	/**
+	 * Packs three characters of a wordbit into a single key
+	 * @param text - text to take the characters from
+	 * @param start - position of the first character
+	 * @return key for the three characters
+	 */
+	private static Long gram(String text, int start) {
+		return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+	}
+
+	/**
+	 * Returns the number of entries in the index
+	 * @return the number of entries in the index
+	 */
+	public int size() {
+		return entries.length;
+	}
+
+	/**
+	 * Returns the entry with exactly the given wordbit
+	 * @param wordbit - wordbit to look for
+	 * @return the entry with the wordbit, or null if there is none
+	 */
+	public IEDMapEntry findExact(String wordbit) {
+		return points.get(wordbit);
+	}
+
+	/**
+	 * Returns every entry whose wordbit starts with the given text, sorted by wordbit
+	 * @param prefix - text the wordbit starts with
+	 * @return every entry whose wordbit starts with the text
+	 */
+	public List<IEDMapEntry> findStartingWith(String prefix) {
+		return new ArrayList<IEDMapEntry>(points.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values());
+	}
+
+	/**
+	 * Returns every entry whose wordbit contains the given text, sorted by wordbit
+	 * @param fragment - text the wordbit contains
+	 * @return every entry whose wordbit contains the text
+	 */
+	public List<IEDMapEntry> findContaining(String fragment) {
+		List<IEDMapEntry> found = new ArrayList<IEDMapEntry>();
+		// Text shorter than an indexed piece has to be checked against every wordbit
+		if (fragment.length() < GRAM_LENGTH) {
+			for (int i = 0; i < wordbits.length; i++) {
+				if (wordbits[i].contains(fragment)) {
+					found.add(entries[i]);
+				}
+			}
+			return found;
+		}
+		int[] candidates = null;
+		for (int start = 0; start + GRAM_LENGTH <= fragment.length(); start++) {
+			int[] positions = postings.get(gram(fragment, start));
+			if (positions == null) {
+				return found;
+			}
+			candidates = candidates == null ? positions : intersect(candidates, positions);
+			if (candidates.length == 0) {
+				return found;
+			}
+		}
+		// Every piece being present does not mean they are next to each other, so each candidate is confirmed
+		for (int position : candidates) {
+			if (wordbits[position].contains(fragment)) {
+				found.add(entries[position]);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the first entry, by wordbit, whose wordbit contains the given text
+	 * @param fragment - text the wordbit contains
+	 * @return the first entry whose wordbit contains the text, or null if there is none
+	 */
+	public IEDMapEntry findFirstContaining(String fragment) {
+		List<IEDMapEntry> found = findContaining(fragment);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	/**
+	 * Returns the positions found in both lists
+	 * @param first - positions in ascending order
+	 * @param second - positions in ascending order
+	 * @return the positions found in both lists, in ascending order
+	 */
+	private static int[] intersect(int[] first, int[] second) {
+		int[] both = new int[Math.min(first.length, second.length)];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < first.length && j < second.length) {
+			if (first[i] < second[j]) {
+				i++;
+			}
+			else if (first[i] > second[j]) {
+				j++;
+			}
+			else {
+				both[count++] = first[i];
+				i++;
+				j++;
+			}
+		}
+		int[] result = new int[count];
+		System.arraycopy(both, 0, result, 0, count);
+		return result;
+	}
+}
@@ -5,6 +5,8 @@ package mapObjects;
  * @author Hannah Layton
  */
 public class SCADAEntry {
+	/** Rule used to normalize Slave IED Devices so they match data map device names */
+	private static DeviceNameRule deviceNameRule = DeviceNameRule.SCADA_DEVICE;
 	/** Binary Output DNP Address of entry */
 	private double dnpAddress;
 	/** Slave IED Device of entry */
@@ -52,21 +54,11 @@ public class SCADAEntry {
 	}
 
 	/**
-	 * Sets the device of the entry in the SCADA map to an attribute of the Java object
+	 * Sets the device of the entry in the SCADA map to an attribute of the Java object, normalized so it matches data map device names
 	 * @param slaveIEDDevice - the device of the entry in the SCADA map
 	 */
 	public void setSlaveIEDDevice(String slaveIEDDevice) {
-		if ((slaveIEDDevice.contains("87TA") || slaveIEDDevice.contains("74TA") || slaveIEDDevice.contains("51TA") || slaveIEDDevice.contains("90TA")) && Character.isDigit(slaveIEDDevice.charAt(0))) {
-			char[] c = slaveIEDDevice.toCharArray();
-			char temp = c[0];
-			c[0] = c[1];
-			c[1] = temp;
-			this.slaveIEDDevice = new String(c);
-		}
-		else {
-			this.slaveIEDDevice = slaveIEDDevice;
-		}
-		this.slaveIEDDevice = this.slaveIEDDevice.split(" ")[0];
+		this.slaveIEDDevice = deviceNameRule.normalize(slaveIEDDevice);
 	}
 
 	/**
@@ -100,4 +92,20 @@ public class SCADAEntry {
 	public void setDescription(String description) {
 		this.description = description;
 	}
+
+	/**
+	 * Returns the rule used to normalize Slave IED Devices
+	 * @return the rule used to normalize Slave IED Devices
+	 */
+	public static DeviceNameRule getDeviceNameRule() {
+		return deviceNameRule;
+	}
+
+	/**
+	 * Sets the rule used to normalize Slave IED Devices
+	 * @param deviceNameRule - rule used to normalize Slave IED Devices
+	 */
+	public static void setDeviceNameRule(DeviceNameRule deviceNameRule) {
+		SCADAEntry.deviceNameRule = deviceNameRule;
+	}
 }
@@ -247,14 +247,11 @@ public class SCADAMap {
 						String[] wordbits = wordbit.split(":");
 						SCADAEntry scadaEntry1 = new SCADAEntry(address, currentSheet.getRow(rowCount).getCell(slaveIEDDeviceColumn).getStringCellValue(), wordbits[0], currentSheet.getRow(rowCount).getCell(descriptionColumn).getStringCellValue());
 						SCADAEntry scadaEntry2 = new SCADAEntry(address, currentSheet.getRow(rowCount).getCell(slaveIEDDeviceColumn).getStringCellValue(), wordbits[1], currentSheet.getRow(rowCount).getCell(descriptionColumn).getStringCellValue());
-						scadaEntry1.setSlaveIEDDevice(scadaEntry1.getSlaveIEDDevice().replace("-", "_").replace("/", "_"));
-						scadaEntry2.setSlaveIEDDevice(scadaEntry2.getSlaveIEDDevice().replace("-", "_").replace("/", "_"));
 						scadaEntries.add(scadaEntry1);
 						scadaEntries.add(scadaEntry2);
 					}
 					else {
 						SCADAEntry scadaEntry = new SCADAEntry(address, currentSheet.getRow(rowCount).getCell(slaveIEDDeviceColumn).getStringCellValue(), wordbit, currentSheet.getRow(rowCount).getCell(descriptionColumn).getStringCellValue());
-						scadaEntry.setSlaveIEDDevice(scadaEntry.getSlaveIEDDevice().replace("-", "_").replace("/", "_"));
 						scadaEntries.add(scadaEntry);
 					}
 				}
@@ -0,0 +1,14 @@
+package mapObjects;
+
+/**
+ * Ways a wordbit from the SCADA map can be matched to a relay element in a data map
+ * @author Hannah Layton
+ */
+public enum WordbitMatch {
+	/** Relay element has to be exactly the same as the wordbit */
+	EXACT,
+	/** Relay element has to start with the wordbit */
+	PREFIX,
+	/** Relay element has to contain the wordbit */
+	CONTAINS
+}
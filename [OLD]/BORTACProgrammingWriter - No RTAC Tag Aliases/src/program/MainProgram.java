@@ -8,12 +8,18 @@ import java.io.FileInputStream;
 import java.io.PrintWriter;
 import java.util.TreeMap;
 
+import io.LineTemplate;
 import io.TXTWriterIO;
+import mapObjects.DeviceNameRule;
+import mapObjects.SCADAEntry;
 import mapObjects.SCADAMap;
+import mapObjects.WordbitMatch;
 import ui.DialogBoxUI;
 import ui.FolderSelectionUI;
 import ui.MapSelectionUI;
 import mapObjects.IEDMap;
+import mapObjects.IEDMapEntry;
+import mapObjects.RtacNameRule;
 
 /**
  * Main class when running the program
@@ -26,6 +32,30 @@ public class MainProgram {
 	 * @throws Exception - any error that occurs when the program runs
 	 */
 	public static void main(String[] args) throws Exception {
+		// Projects with a different RTAC point naming convention can select it with -Drtac.nameRule=...
+		String nameRule = System.getProperty("rtac.nameRule");
+		if (nameRule != null) {
+			IEDMapEntry.setRtacNameRule(RtacNameRule.forName(nameRule));
+		}
+		// Device name normalization can be changed for both sides of the match with -Drtac.scadaDeviceRule=... & -Drtac.dataMapDeviceRule=...
+		String scadaDeviceRule = System.getProperty("rtac.scadaDeviceRule");
+		if (scadaDeviceRule != null) {
+			SCADAEntry.setDeviceNameRule(DeviceNameRule.compile(scadaDeviceRule));
+		}
+		String dataMapDeviceRule = System.getProperty("rtac.dataMapDeviceRule");
+		if (dataMapDeviceRule != null) {
+			IEDMap.setDeviceNameRule(DeviceNameRule.compile(dataMapDeviceRule));
+		}
+		// Wordbits can be matched by prefix or by containment instead of exactly with -Drtac.wordbitMatch=PREFIX or CONTAINS
+		String wordbitMatch = System.getProperty("rtac.wordbitMatch");
+		if (wordbitMatch != null) {
+			TXTWriterIO.setWordbitMatch(WordbitMatch.valueOf(wordbitMatch.toUpperCase()));
+		}
+		// Customers with a different structured text layout can select it with -Drtac.lineTemplate=...
+		String lineTemplate = System.getProperty("rtac.lineTemplate");
+		if (lineTemplate != null) {
+			TXTWriterIO.setLineTemplate(LineTemplate.forName(lineTemplate));
+		}
 		// Opens the file selection window to select the SCADA Map
 		MapSelectionUI scadaMapSelector = new MapSelectionUI("Please select your SCADA Map.");
 		File scadaPath = scadaMapSelector.getFilePath();
@@ -51,7 +81,14 @@ public class MainProgram {
 			iedMaps.put(deviceName, iedMap);
 			iedStream.close();
 		}
-		TXTWriterIO.structuredTextWriter(writer, iedMaps, scadaMap);
+		// Entries can be written by several threads at once with -Drtac.parallelism=...
+		int parallelism = Integer.getInteger("rtac.parallelism", 1);
+		if (parallelism > 1) {
+			TXTWriterIO.structuredTextWriter(writer, iedMaps, scadaMap, parallelism);
+		}
+		else {
+			TXTWriterIO.structuredTextWriter(writer, iedMaps, scadaMap);
+		}
 		writer.close();
 		// Opens the completion dialog box
 		DialogBoxUI.infoBox("Writing Complete!", "");